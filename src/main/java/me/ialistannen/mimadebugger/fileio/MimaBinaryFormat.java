@@ -1,19 +1,38 @@
 package me.ialistannen.mimadebugger.fileio;
 
 import java.io.ByteArrayOutputStream;
-import java.util.Map;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import me.ialistannen.mimadebugger.exceptions.NumberOverflowException;
 import me.ialistannen.mimadebugger.machine.ImmutableState;
+import me.ialistannen.mimadebugger.machine.MiMaRegister;
 import me.ialistannen.mimadebugger.machine.State;
-import me.ialistannen.mimadebugger.machine.memory.ImmutableRegisters;
 import me.ialistannen.mimadebugger.machine.memory.MainMemory;
-import me.ialistannen.mimadebugger.machine.memory.Registers;
+import me.ialistannen.mimadebugger.machine.memory.MemoryImage;
+import me.ialistannen.mimadebugger.machine.memory.RegisterFile;
+import me.ialistannen.mimadebugger.util.MemoryFormat;
 
 /**
  * A writer and reader for the MiMa binary format.
  */
 public class MimaBinaryFormat {
 
+  /**
+   * The registers at the start of the file, in order.
+   */
+  private static final MiMaRegister[] REGISTERS = {
+      MiMaRegister.INSTRUCTION_ADDRESS_REGISTER,
+      MiMaRegister.ACCUMULATOR,
+      MiMaRegister.RETURN_ADDRESS_REGISTER,
+      MiMaRegister.STACK_POINTER,
+      MiMaRegister.FRAME_POINTER
+  };
+
   /**
    * Saves the state to a byte array.
    *
@@ -22,20 +41,16 @@ public class MimaBinaryFormat {
    */
   public byte[] save(State state) {
     ByteArrayOutputStream out = new ByteArrayOutputStream();
-    writeInt(out, state.registers().instructionPointer());
-    writeInt(out, state.registers().accumulator());
-    writeInt(out, state.registers().returnAddress());
-    writeInt(out, state.registers().stackPointer());
-    writeInt(out, state.registers().framePointer());
-
-    Map<Integer, Integer> memory = state.memory().getMemory();
-    int maxAddress = memory.keySet().stream()
-        .mapToInt(Integer::intValue)
-        .max()
-        .orElse(0);
-
-    for (int i = 0; i <= maxAddress; i++) {
-      int value = memory.getOrDefault(i, 0);
+    for (MiMaRegister register : REGISTERS) {
+      writeInt(out, register.get(state.registers()));
+    }
+
+    MainMemory memory = state.memory();
+    // an empty memory is saved as a single zero word
+    int[] values = new int[Math.max(memory.highestInitializedAddress() + 1, 1)];
+    memory.copyRange(0, values.length, values);
+
+    for (int value : values) {
       writeInt(out, value);
     }
 
@@ -75,29 +90,79 @@ public class MimaBinaryFormat {
     if (data.length % 3 != 0) {
       throw new IllegalArgumentException("Invalid memory dump, not a multiple of 3");
     }
-    Registers registers = ImmutableRegisters.builder()
-        .instructionPointer(readInt(data, 0))
-        .accumulator(readInt(data, 3))
-        .returnAddress(readInt(data, 6))
-        .stackPointer(readInt(data, 9))
-        .framePointer(readInt(data, 12))
-        .build();
+    RegisterFile registers = new RegisterFile();
+    for (int i = 0; i < REGISTERS.length; i++) {
+      registers.set(REGISTERS[i], readInt(data, i * 3));
+    }
 
-    MainMemory memory = MainMemory.create();
-    int memoryDumpOffset = 5 * 3;
+    MainMemory.Builder memory = MainMemory.builder();
+    int memoryDumpOffset = REGISTERS.length * 3;
 
-    for (int i = 0; i < data.length / 3 - 5; i++) {
+    for (int i = 0; i < data.length / 3 - REGISTERS.length; i++) {
       int baseOffset = i * 3 + memoryDumpOffset;
       int instruction = readInt(data, baseOffset);
-      memory = memory.set(i, instruction);
+      memory.set(i, instruction);
     }
 
     return ImmutableState.builder()
-        .memory(memory)
-        .registers(registers)
+        .memory(memory.build())
+        .registers(registers.toRegisters())
         .build();
   }
 
+  /**
+   * Maps a memory dump file and creates a state from it.
+   *
+   * <p>The file is not read into an array first: the registers are read from the mapping and the
+   * memory words are decoded from it directly into the pages of a {@link MemoryImage}, which
+   * becomes the memory of the state. A page is only decoded when it is first accessed, so mapping
+   * the file does not read the words. Machines loading the state share these pages and copy them
+   * before writing.</p>
+   *
+   * @param file the file to map
+   * @return the loaded state
+   * @throws IOException if the file could not be mapped
+   * @throws IllegalArgumentException if the memory dump is not valid
+   */
+  public State map(Path file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      long size = channel.size();
+      int headerSize = REGISTERS.length * 3;
+
+      if (size % 3 != 0) {
+        throw new IllegalArgumentException("Invalid memory dump, not a multiple of 3");
+      }
+      if (size < headerSize) {
+        throw new IllegalArgumentException("Invalid memory dump, registers missing");
+      }
+      if (size / 3 - REGISTERS.length > 1 << MemoryFormat.ADDRESS_LENGTH) {
+        throw new IllegalArgumentException("Invalid memory dump, too many words");
+      }
+      MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY, 0, size);
+
+      RegisterFile registers = new RegisterFile();
+      for (int i = 0; i < REGISTERS.length; i++) {
+        registers.set(REGISTERS[i], readInt(buffer, i * 3));
+      }
+
+      int wordCount = (int) (size / 3) - REGISTERS.length;
+      MainMemory memory = wordCount == 0
+          ? MainMemory.create()
+          : MainMemory.fromImage(MemoryImage.ofPacked(buffer, headerSize, wordCount));
+
+      return ImmutableState.builder()
+          .memory(memory)
+          .registers(registers.toRegisters())
+          .build();
+    }
+  }
+
+  private int readInt(ByteBuffer data, int baseOffset) {
+    return (data.get(baseOffset) & 0xFF) << 16
+        | (data.get(baseOffset + 1) & 0xFF) << 8
+        | data.get(baseOffset + 2) & 0xFF;
+  }
+
   private int readInt(byte[] data, int baseOffset) {
     return (data[baseOffset] & 0xFF) << 16
         | (data[baseOffset + 1] & 0xFF) << 8
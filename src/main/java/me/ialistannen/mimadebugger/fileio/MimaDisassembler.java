@@ -1,13 +1,10 @@
 package me.ialistannen.mimadebugger.fileio;
 
-import static java.util.stream.Collectors.toList;
-
-import java.util.List;
-import java.util.Map.Entry;
-import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.StringJoiner;
 import me.ialistannen.mimadebugger.machine.MiMaRegister;
 import me.ialistannen.mimadebugger.machine.State;
+import me.ialistannen.mimadebugger.machine.instructions.DispatchTable;
+import me.ialistannen.mimadebugger.machine.instructions.Instruction;
 import me.ialistannen.mimadebugger.machine.instructions.InstructionCall;
 import me.ialistannen.mimadebugger.machine.instructions.InstructionSet;
 
@@ -25,24 +22,20 @@ public class MimaDisassembler {
       throws IllegalArgumentException {
     State state = new MimaBinaryFormat().load(input);
 
-    List<Integer> memoryBytes = state.memory().getMemory().entrySet().stream()
-        .sorted(Entry.comparingByKey())
-        .map(Entry::getValue)
-        .collect(toList());
+    DispatchTable dispatchTable = instructionSet.getDispatchTable();
+    StringJoiner lines = new StringJoiner("\n");
 
-    String result = memoryBytes.stream()
-        .map(encodedValue -> {
-          Optional<InstructionCall> instructionCall = instructionSet.forEncodedValue(
-              encodedValue
-          );
+    state.memory().forEach((address, encodedValue) -> {
+      Instruction instruction = dispatchTable.instruction(encodedValue);
 
-          if (!instructionCall.isPresent()) {
-            return String.valueOf(encodedValue.intValue());
-          }
+      if (instruction == null) {
+        lines.add(String.valueOf(encodedValue));
+      } else {
+        lines.add(disassemble(instruction, dispatchTable.argument(encodedValue)));
+      }
+    });
 
-          return disassembleInstructionCall(instructionCall.get());
-        })
-        .collect(Collectors.joining("\n"));
+    String result = lines.toString();
 
     for (MiMaRegister value : MiMaRegister.values()) {
       result =
@@ -53,13 +46,17 @@ public class MimaDisassembler {
   }
 
   public String disassembleInstructionCall(InstructionCall call) {
+    return disassemble(call.command(), call.argument());
+  }
+
+  private String disassemble(Instruction instruction, int argument) {
     // Treat all zeros as padding
-    if (call.command().opcode() == 0 && call.argument() == 0) {
+    if (instruction.opcode() == 0 && argument == 0) {
       return "0";
     }
-    if (!call.command().hasArgument() && call.argument() == 0) {
-      return call.command().name();
+    if (!instruction.hasArgument() && argument == 0) {
+      return instruction.name();
     }
-    return call.command().name() + " " + call.argument();
+    return instruction.name() + " " + argument;
   }
 }
@@ -1,12 +1,13 @@
 package me.ialistannen.mimadebugger.gui.execution;
 
 import com.jfoenix.controls.JFXComboBox;
+import com.jfoenix.controls.JFXSlider;
 import java.time.Duration;
 import java.time.Instant;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Consumer;
 import javafx.beans.binding.BooleanBinding;
 import javafx.beans.property.BooleanProperty;
@@ -19,6 +20,7 @@ import javafx.fxml.FXML;
 import javafx.scene.control.Alert;
 import javafx.scene.control.Alert.AlertType;
 import javafx.scene.control.Button;
+import javafx.scene.control.Label;
 import javafx.scene.layout.BorderPane;
 import javafx.util.Pair;
 import me.ialistannen.mimadebugger.exceptions.MiMaException;
@@ -59,6 +61,10 @@ public class ExecutionControls extends BorderPane {
   private Button resetButton;
   @FXML
   private JFXComboBox<ExecutionStrategy> executionStrategySelection;
+  @FXML
+  private JFXSlider timelineSlider;
+  @FXML
+  private Label timelineLabel;
 
   private InstructionSet instructionSet;
   private Consumer<State> stateConsumer;
@@ -74,6 +80,10 @@ public class ExecutionControls extends BorderPane {
 
   private Set<Integer> breakpoints;
   private Task<Void> executionTask;
+  /**
+   * Set while the timeline slider is moved to the runner's position, so it does not seek.
+   */
+  private boolean updatingTimeline;
 
   public ExecutionControls(InstructionSet instructionSet) {
     this.instructionSet = instructionSet;
@@ -87,7 +97,8 @@ public class ExecutionControls extends BorderPane {
     this.noCachedNextStep = new SimpleBooleanProperty(false);
     this.halted = new SimpleBooleanProperty(false);
     this.currentlyRunning = new SimpleBooleanProperty(false);
-    this.breakpoints = new HashSet<>();
+    // read by the execution thread
+    this.breakpoints = ConcurrentHashMap.newKeySet();
 
     FxmlUtil.loadWithRoot(this, "/gui/execution/ExecutionControls.fxml");
   }
@@ -112,6 +123,19 @@ public class ExecutionControls extends BorderPane {
             .or(halted.and(noCachedNextStep))
     );
     resetButton.disableProperty().bind(disableStepButtons);
+    timelineSlider.disableProperty().bind(disableStepButtons.or(currentlyRunning));
+
+    // seek once the user let go of the thumb or clicked somewhere on the track
+    timelineSlider.valueChangingProperty().addListener((observable, oldValue, changing) -> {
+      if (!changing) {
+        onSeek();
+      }
+    });
+    timelineSlider.valueProperty().addListener((observable, oldValue, newValue) -> {
+      if (!timelineSlider.isValueChanging()) {
+        onSeek();
+      }
+    });
 
     programTextProperty.addListener((observable, oldValue, newValue) -> programOutOfDate.set(true));
 
@@ -217,19 +241,23 @@ public class ExecutionControls extends BorderPane {
   private void setProgram(String program) throws MiMaSyntaxError, NumberOverflowException {
     Pair<List<MemoryValue>, Registers> programValues = parseOrThrow(program);
 
-    MainMemory memory = MainMemory.create();
+    MainMemory.Builder memory = MainMemory.builder();
 
     for (MemoryValue value : programValues.getKey()) {
-      memory = memory.set(value.address(), value.representation());
+      memory.set(value.address(), value.representation());
     }
 
     State initialState = ImmutableState.builder()
-        .memory(memory)
+        .memory(memory.build())
         .registers(programValues.getValue())
         .build();
 
     MiMa miMa = new MiMa(initialState, instructionSet);
 
+    if (runner.get() != null) {
+      // its states executed ahead belong to the old program
+      runner.get().close();
+    }
     runner.set(new MiMaRunner(miMa));
 
     programOutOfDate.set(false);
@@ -251,6 +279,20 @@ public class ExecutionControls extends BorderPane {
     afterStep();
   }
 
+  private void onSeek() {
+    if (updatingTimeline || runner.get() == null) {
+      return;
+    }
+    long step = Math.round(timelineSlider.getValue());
+    if (step == runner.get().currentStepIndex()) {
+      return;
+    }
+    stateConsumer.accept(runner.get().seek(step));
+    halted.set(runner.get().isFinished());
+
+    afterStep();
+  }
+
   @FXML
   private void onLoadProgram() {
     try {
@@ -269,6 +311,7 @@ public class ExecutionControls extends BorderPane {
     stateConsumer.accept(runner.get().reset());
     noPreviousStep.set(!runner.get().hasPreviousStep());
     halted.set(false);
+    updateTimeline();
   }
 
   @FXML
@@ -385,5 +428,21 @@ public class ExecutionControls extends BorderPane {
   private void afterStep() {
     noPreviousStep.set(!runner.get().hasPreviousStep());
     noCachedNextStep.set(!runner.get().hasCachedNextStep());
+    updateTimeline();
+  }
+
+  private void updateTimeline() {
+    long current = runner.get().currentStepIndex();
+    long recorded = runner.get().getRecordedStepCount();
+
+    updatingTimeline = true;
+    timelineSlider.setMax(recorded);
+    timelineSlider.setValue(current);
+    updatingTimeline = false;
+
+    timelineLabel.setText(String.format(
+        "Step %d / %d (history: %d KiB)",
+        current, recorded, runner.get().getHistoryFootprint() / 1024
+    ));
   }
 }
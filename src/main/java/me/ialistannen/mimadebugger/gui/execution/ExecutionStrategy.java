@@ -1,15 +1,29 @@
 package me.ialistannen.mimadebugger.gui.execution;
 
+import java.util.BitSet;
 import java.util.Optional;
 import java.util.Set;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
 import me.ialistannen.mimadebugger.exceptions.MiMaException;
+import me.ialistannen.mimadebugger.exceptions.ProgramHaltException;
 import me.ialistannen.mimadebugger.machine.MiMaRunner;
+import me.ialistannen.mimadebugger.machine.RunResult;
 import me.ialistannen.mimadebugger.machine.State;
+import me.ialistannen.mimadebugger.machine.StopCondition;
 
 abstract class ExecutionStrategy {
 
+  /**
+   * The number of steps executed in bulk, before the UI is updated and cancellation is checked.
+   */
+  private static final long STEPS_PER_CHUNK = 1 << 20;
+
+  /**
+   * Stops the execution when the accumulator holds 0xFFFF.
+   */
+  private static final StopCondition STOP_CONDITION = StopCondition.accumulatorEquals(0xFFFF);
+
   /**
    * Runs the program, reporting errors.
    *
@@ -33,7 +47,9 @@ abstract class ExecutionStrategy {
       throws MiMaException {
     State step = runner.nextStep();
 
-    if (step.registers().accumulator() == 0xFFFF) {
+    if (STOP_CONDITION.shouldStop(
+        step.registers().instructionPointer(), step.registers().accumulator()
+    )) {
       return Optional.empty();
     }
 
@@ -43,4 +59,45 @@ abstract class ExecutionStrategy {
 
     return Optional.of(step);
   }
+
+  /**
+   * Runs up to the given amount of steps in bulk, stopping at the same points
+   * {@link #singleStep(MiMaRunner, Set)} would.
+   *
+   * @param runner the runner to use
+   * @param breakpoints the breakpoints
+   * @param maxSteps the maximum amount of steps
+   * @param cancelledSupplier defines whether this execution was cancelled
+   * @param uiUpdater updates the UI
+   * @return true if the execution stopped at a breakpoint or the stop condition
+   * @throws MiMaException if an error occurs or the MiMa should halt (ProgramHaltException)
+   */
+  protected boolean runUntilStopped(MiMaRunner runner, Set<Integer> breakpoints, long maxSteps,
+      Supplier<Boolean> cancelledSupplier, Consumer<State> uiUpdater) throws MiMaException {
+    long remaining = maxSteps;
+
+    while (remaining > 0 && !cancelledSupplier.get()) {
+      BitSet breakpointBits = new BitSet();
+      breakpoints.forEach(breakpointBits::set);
+
+      RunResult result = runner.run(
+          Math.min(remaining, STEPS_PER_CHUNK), breakpointBits, STOP_CONDITION
+      );
+      remaining -= result.steps();
+      uiUpdater.accept(result.state());
+
+      switch (result.stopReason()) {
+        case HALTED:
+          throw new ProgramHaltException();
+        case FAULT:
+          throw result.fault().orElseThrow(IllegalStateException::new);
+        case BREAKPOINT:
+        case STOP_CONDITION:
+          return true;
+        default:
+          break;
+      }
+    }
+    return false;
+  }
 }
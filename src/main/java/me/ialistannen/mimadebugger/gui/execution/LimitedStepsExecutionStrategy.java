@@ -1,6 +1,5 @@
 package me.ialistannen.mimadebugger.gui.execution;
 
-import java.util.Optional;
 import java.util.Set;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
@@ -24,12 +23,8 @@ class LimitedStepsExecutionStrategy extends ExecutionStrategy {
   public void run(MiMaRunner runner, Set<Integer> breakpoints, Supplier<Boolean> cancelledSupplier,
       Consumer<State> uiUpdater)
       throws MiMaException {
-    for (int i = 0; i < maximumStepCount && !cancelledSupplier.get(); i++) {
-      Optional<State> state = singleStep(runner, breakpoints);
-      if (!state.isPresent()) {
-        return;
-      }
-      uiUpdater.accept(state.get());
+    if (runUntilStopped(runner, breakpoints, maximumStepCount, cancelledSupplier, uiUpdater)) {
+      return;
     }
     throw new NamedExecutionError(
         "Execution exceeded " + maximumStepCount + " steps!",
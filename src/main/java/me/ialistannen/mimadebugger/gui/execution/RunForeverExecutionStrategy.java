@@ -1,6 +1,5 @@
 package me.ialistannen.mimadebugger.gui.execution;
 
-import java.util.Optional;
 import java.util.Set;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
@@ -17,13 +16,7 @@ class RunForeverExecutionStrategy extends ExecutionStrategy {
   void run(MiMaRunner runner, Set<Integer> breakpoints, Supplier<Boolean> cancelledSupplier,
       Consumer<State> uiUpdater)
       throws MiMaException {
-    while (!cancelledSupplier.get()) {
-      Optional<State> step = singleStep(runner, breakpoints);
-      if (!step.isPresent()) {
-        return;
-      }
-      uiUpdater.accept(step.get());
-    }
+    runUntilStopped(runner, breakpoints, Long.MAX_VALUE, cancelledSupplier, uiUpdater);
   }
 
   @Override
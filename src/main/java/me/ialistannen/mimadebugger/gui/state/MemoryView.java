@@ -3,7 +3,8 @@ package me.ialistannen.mimadebugger.gui.state;
 import static me.ialistannen.mimadebugger.gui.util.TableHelper.cell;
 import static me.ialistannen.mimadebugger.gui.util.TableHelper.column;
 
-import java.util.Map.Entry;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.function.BiFunction;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
@@ -16,6 +17,7 @@ import me.ialistannen.mimadebugger.gui.highlighting.HighlightedMemoryValue;
 import me.ialistannen.mimadebugger.gui.util.FxmlUtil;
 import me.ialistannen.mimadebugger.machine.instructions.defaultinstructions.Special;
 import me.ialistannen.mimadebugger.machine.memory.MainMemory;
+import me.ialistannen.mimadebugger.parser.util.DoUnchecked;
 
 public class MemoryView extends BorderPane {
 
@@ -26,6 +28,10 @@ public class MemoryView extends BorderPane {
 
   private BiFunction<Integer, Integer, MemoryValue> memoryValueDecoder;
   private int instructionPointerAddress = -1;
+  /**
+   * The memory the rows were created from, null if the rows need to be rebuilt.
+   */
+  private MainMemory displayedMemory;
 
   public MemoryView() {
     this.memory = FXCollections.observableArrayList();
@@ -88,32 +94,82 @@ public class MemoryView extends BorderPane {
    */
   public void setMemoryValueDecoder(BiFunction<Integer, Integer, MemoryValue> decoder) {
     this.memoryValueDecoder = decoder;
+    this.displayedMemory = null;
   }
 
   /**
    * Sets the memory the pane displays.
    *
+   * <p>Only the rows of addresses that differ from the currently displayed memory are
+   * updated.</p>
+   *
    * @param memory the memory the pane displays
    */
   public void setMemory(MainMemory memory) {
-    this.memory.clear();
+    if (displayedMemory == null) {
+      List<MemoryValue> values = new ArrayList<>(memory.getInitializedCount());
+      memory.forEach((address, value) -> values.add(memoryValueDecoder.apply(address, value)));
+
+      this.memory.setAll(values);
+    } else {
+      displayedMemory.forEachDifference(memory, address -> updateRow(memory, address));
+    }
+    this.displayedMemory = memory;
+  }
 
-    for (Entry<Integer, Integer> memoryEntry : memory.getMemory().entrySet()) {
-      int address = memoryEntry.getKey();
-      int value = memoryEntry.getValue();
+  private void updateRow(MainMemory memory, int address) {
+    int index = rowIndex(address);
 
-      MemoryValue storedValue = memoryValueDecoder.apply(address, value);
+    if (!memory.isInitialized(address)) {
+      this.memory.remove(index);
+      return;
+    }
+    int value = DoUnchecked.doIt(() -> memory.get(address));
+    MemoryValue storedValue = memoryValueDecoder.apply(address, value);
 
-      this.memory.add(storedValue);
+    if (index >= 0) {
+      this.memory.set(index, storedValue);
+    } else {
+      this.memory.add(-index - 1, storedValue);
     }
   }
 
+  /**
+   * Finds the row of an address. The rows are sorted by address.
+   *
+   * @param address the address
+   * @return the index of the row or {@code -(insertion point) - 1}, if there is none
+   */
+  private int rowIndex(int address) {
+    int low = 0;
+    int high = memory.size() - 1;
+
+    while (low <= high) {
+      int middle = (low + high) >>> 1;
+      int middleAddress = memory.get(middle).address();
+
+      if (middleAddress < address) {
+        low = middle + 1;
+      } else if (middleAddress > address) {
+        high = middle - 1;
+      } else {
+        return middle;
+      }
+    }
+    return -(low + 1);
+  }
+
   /**
    * Sets the current address of the instruction pointer.
    *
    * @param address the current address of the instruction pointer
    */
   public void setCurrentInstructionPointerAddress(int address) {
+    if (address == instructionPointerAddress) {
+      return;
+    }
     this.instructionPointerAddress = address;
+    // the highlighted row changed, but its item might not have
+    memoryTable.refresh();
   }
 }
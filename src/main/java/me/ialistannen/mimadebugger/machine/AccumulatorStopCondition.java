@@ -0,0 +1,28 @@
+package me.ialistannen.mimadebugger.machine;
+
+/**
+ * Stops as soon as the accumulator holds a given value. The MiMa recognizes this condition and
+ * checks it without leaving its block execution, see {@link StopCondition#accumulatorEquals(int)}.
+ */
+final class AccumulatorStopCondition implements StopCondition {
+
+  private final int value;
+
+  AccumulatorStopCondition(int value) {
+    this.value = value;
+  }
+
+  /**
+   * Returns the accumulator value this condition stops at.
+   *
+   * @return the value
+   */
+  int getValue() {
+    return value;
+  }
+
+  @Override
+  public boolean shouldStop(int instructionPointer, int accumulator) {
+    return accumulator == value;
+  }
+}
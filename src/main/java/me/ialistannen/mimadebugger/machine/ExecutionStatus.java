@@ -0,0 +1,19 @@
+package me.ialistannen.mimadebugger.machine;
+
+/**
+ * The status of a machine after executing one or more steps.
+ */
+public enum ExecutionStatus {
+  /**
+   * The machine can continue executing.
+   */
+  RUNNING,
+  /**
+   * The program executed a HALT instruction.
+   */
+  HALTED,
+  /**
+   * An instruction could not be executed. The fault is described by a {@link FaultType}.
+   */
+  FAULT
+}
@@ -0,0 +1,35 @@
+package me.ialistannen.mimadebugger.machine;
+
+import me.ialistannen.mimadebugger.exceptions.InstructionNotFoundException;
+import me.ialistannen.mimadebugger.exceptions.MemoryNotInitializedException;
+import me.ialistannen.mimadebugger.exceptions.NumberOverflowException;
+
+/**
+ * The reason an instruction could not be executed.
+ */
+public enum FaultType {
+  /**
+   * The value at the instruction pointer does not encode a known instruction. The fault value is
+   * the encoded value.
+   *
+   * @see InstructionNotFoundException
+   */
+  INSTRUCTION_NOT_FOUND,
+  /**
+   * A read from an address that was never written to. The fault value is the address.
+   *
+   * @see MemoryNotInitializedException
+   */
+  MEMORY_NOT_INITIALIZED,
+  /**
+   * A number did not fit into the bits it was used as. The fault value is the number, the fault
+   * length the number of bits.
+   *
+   * @see NumberOverflowException
+   */
+  NUMBER_OVERFLOW,
+  /**
+   * A custom instruction threw an exception.
+   */
+  INSTRUCTION_ERROR
+}
@@ -1,17 +1,43 @@
 package me.ialistannen.mimadebugger.machine;
 
+import java.util.BitSet;
+import java.util.Optional;
+import java.util.OptionalInt;
 import me.ialistannen.mimadebugger.exceptions.InstructionNotFoundException;
-import me.ialistannen.mimadebugger.exceptions.MemoryNotInitializedException;
 import me.ialistannen.mimadebugger.exceptions.MiMaException;
-import me.ialistannen.mimadebugger.exceptions.NumberOverflowException;
-import me.ialistannen.mimadebugger.machine.instructions.InstructionCall;
+import me.ialistannen.mimadebugger.exceptions.ProgramHaltException;
+import me.ialistannen.mimadebugger.machine.fast.FastMiMa;
+import me.ialistannen.mimadebugger.machine.instructions.DispatchTable;
+import me.ialistannen.mimadebugger.machine.instructions.Instruction;
 import me.ialistannen.mimadebugger.machine.instructions.InstructionSet;
+import me.ialistannen.mimadebugger.machine.instructions.defaultinstructions.Special;
+import me.ialistannen.mimadebugger.machine.memory.RegisterFile;
+import me.ialistannen.mimadebugger.parser.util.DoUnchecked;
 
+/**
+ * The MiMa machine.
+ *
+ * <p>It runs on a mutable {@link FastMiMa}. The {@link State} is only created when it is
+ * requested through {@link #getCurrentState()} and shares its memory with the previous one.</p>
+ */
 public class MiMa {
 
+  /**
+   * The current state or null, if the machine was stepped since it was last created.
+   */
   private State currentState;
   private InstructionSet instructionSet;
 
+  /**
+   * The machine everything is executed on, created on first use.
+   */
+  private FastMiMa fastMiMa;
+  private DispatchTable fastMiMaDispatchTable;
+  /**
+   * Whether the {@link #fastMiMa} is in the current state.
+   */
+  private boolean fastMiMaCurrent;
+
   /**
    * Creates a new MiMa.
    *
@@ -29,43 +55,183 @@ public class MiMa {
    * @return the new state
    * @throws InstructionNotFoundException if an instruction was not found
    * @throws MiMaException if an instruction throws it
+   * @see #advance()
    */
   public State step() throws MiMaException {
-    currentState = fetchNextInstruction();
-    int currentInstruction = currentState.registers().instruction();
+    advance();
 
-    InstructionCall instructionCall = instructionSet.forEncodedValue(currentInstruction)
-        .orElseThrow(() -> new InstructionNotFoundException(currentInstruction));
+    return getCurrentState();
+  }
 
-    // Increment IP
-    currentState = fetchNextInstructionPointer();
+  /**
+   * Performs a single calculation step, without creating a {@link State} for it.
+   *
+   * <p>If the step throws an exception, the MiMa is left in the state the step reached.</p>
+   *
+   * @throws InstructionNotFoundException if an instruction was not found
+   * @throws MiMaException if an instruction throws it
+   */
+  public void advance() throws MiMaException {
+    FastMiMa machine = getFastMiMa();
+    currentState = null;
+    machine.step();
+  }
 
-    // Execute the current instruction (after incrementing the IP, so jumps work correctly)
-    currentState = instructionCall.command().apply(currentState, instructionCall.argument());
+  /**
+   * Executes up to the given amount of steps in a tight loop.
+   *
+   * @param maxSteps the maximum amount of steps to execute
+   * @param stopCondition the condition to check after every step
+   * @return the result of the run
+   * @see #run(long, BitSet, StopCondition)
+   */
+  public RunResult run(long maxSteps, StopCondition stopCondition) {
+    return run(maxSteps, new BitSet(), stopCondition);
+  }
 
-    return currentState;
+  /**
+   * Executes up to the given amount of steps in a tight loop.
+   *
+   * <p>Intermediate states are not created and the run stops without an exception, if the
+   * program halts or faults. Unlike {@link #step()}, this leaves the MiMa in the state after the
+   * last completed step in that case.</p>
+   *
+   * <p>Whole blocks of instructions are executed at once, checking the breakpoints and the stop
+   * condition without leaving them. This only works for {@link StopCondition#NEVER} and conditions
+   * created by {@link StopCondition#accumulatorEquals(int)}: any other condition is called after
+   * every step, executing the program a single instruction at a time.</p>
+   *
+   * @param maxSteps the maximum amount of steps to execute
+   * @param breakpoints the addresses to stop at, checked against the instruction pointer after
+   *     every step
+   * @param stopCondition the condition to check after every step
+   * @return the result of the run
+   */
+  public RunResult run(long maxSteps, BitSet breakpoints, StopCondition stopCondition) {
+    long start = System.nanoTime();
+    FastMiMa machine = getFastMiMa();
+    long stepsBefore = machine.getStepCount();
+    ExecutionStatus status = ExecutionStatus.RUNNING;
+    StopReason stopReason = StopReason.STEP_LIMIT;
+
+    if (stopCondition == StopCondition.NEVER
+        || stopCondition instanceof AccumulatorStopCondition) {
+      OptionalInt stopAccumulator = stopCondition == StopCondition.NEVER
+          ? OptionalInt.empty()
+          : OptionalInt.of(((AccumulatorStopCondition) stopCondition).getValue());
+      status = machine.tryRun(maxSteps, breakpoints, stopAccumulator);
+
+      if (status == ExecutionStatus.RUNNING && machine.getStepCount() > stepsBefore) {
+        int instructionPointer = machine.getInstructionPointer();
+        if (stopCondition.shouldStop(instructionPointer, machine.getAccumulator())) {
+          stopReason = StopReason.STOP_CONDITION;
+        } else if (instructionPointer >= 0 && breakpoints.get(instructionPointer)) {
+          stopReason = StopReason.BREAKPOINT;
+        }
+      }
+    } else {
+      for (long steps = 0; steps < maxSteps; steps++) {
+        status = machine.tryStep();
+        if (status != ExecutionStatus.RUNNING) {
+          break;
+        }
+        int instructionPointer = machine.getInstructionPointer();
+        if (stopCondition.shouldStop(instructionPointer, machine.getAccumulator())) {
+          stopReason = StopReason.STOP_CONDITION;
+          break;
+        }
+        if (instructionPointer >= 0 && breakpoints.get(instructionPointer)) {
+          stopReason = StopReason.BREAKPOINT;
+          break;
+        }
+      }
+    }
+
+    Optional<MiMaException> fault = Optional.empty();
+    if (status != ExecutionStatus.RUNNING) {
+      stopReason = status == ExecutionStatus.HALTED ? StopReason.HALTED : StopReason.FAULT;
+      if (status == ExecutionStatus.FAULT) {
+        fault = Optional.of(machine.createException());
+      }
+      machine.revertIncompleteStep();
+    }
+
+    currentState = null;
+
+    return ImmutableRunResult.builder()
+        .state(getCurrentState())
+        .steps(machine.getStepCount() - stepsBefore)
+        .stopReason(stopReason)
+        .elapsedNanos(System.nanoTime() - start)
+        .fault(fault)
+        .build();
   }
 
-  private State fetchNextInstructionPointer() {
-    return currentState.copy()
-        .withRegisters(
-            currentState.registers().copy()
-                .withInstructionPointer(currentState.registers().instructionPointer() + 1)
-                // Reset ALU
-                .withAluInputLeft(0)
-                .withAluInputRight(0)
-        );
+  private FastMiMa getFastMiMa() {
+    DispatchTable dispatchTable = instructionSet.getDispatchTable();
+
+    if (fastMiMa == null || fastMiMaDispatchTable != dispatchTable) {
+      fastMiMa = new FastMiMa(getCurrentState(), instructionSet);
+      fastMiMaDispatchTable = dispatchTable;
+    } else if (!fastMiMaCurrent) {
+      fastMiMa.load(currentState);
+    }
+    fastMiMaCurrent = true;
+    return fastMiMa;
   }
 
-  private State fetchNextInstruction()
-      throws NumberOverflowException, MemoryNotInitializedException {
-    return currentState.copy()
-        .withRegisters(
-            currentState.registers().copy()
-                .withInstruction(
-                    currentState.memory().get(currentState.registers().instructionPointer())
-                )
-        );
+  /**
+   * Checks whether the next step halts the program, without executing it.
+   *
+   * <p>Only custom instructions are executed (on a copy) to find out, as they might halt the
+   * program as well. No exception is created for the default instructions.</p>
+   *
+   * @return true if the next step halts the program
+   */
+  public boolean isHalting() {
+    State state = getCurrentState();
+    int instructionPointer = state.registers().instructionPointer();
+    if (!state.memory().isInitialized(instructionPointer)) {
+      return false;
+    }
+    int value = DoUnchecked.doIt(() -> state.memory().get(instructionPointer));
+
+    Instruction instruction = instructionSet.getDispatchTable().instruction(value);
+    if (instruction == null) {
+      return false;
+    }
+    if (instruction == Special.HALT) {
+      return true;
+    }
+    if (InstructionSet.isDefaultInstruction(instruction)) {
+      return false;
+    }
+
+    // Apply it to the state the step would pass it, without touching the machine
+    RegisterFile registers = new RegisterFile(state.registers());
+    registers.setInstruction(value);
+    registers.set(MiMaRegister.INSTRUCTION_ADDRESS_REGISTER, instructionPointer + 1);
+    registers.setAluInputLeft(0);
+    registers.setAluInputRight(0);
+    State beforeExecution = state.copy().withRegisters(registers.toRegisters());
+    try {
+      instruction.apply(beforeExecution, DispatchTable.argument(instruction.opcode(), value));
+      return false;
+    } catch (ProgramHaltException e) {
+      return true;
+    } catch (MiMaException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Checks whether executing this MiMa has no effects outside of it, see
+   * {@link InstructionSet#isSideEffectFree()}.
+   *
+   * @return true if no instruction has side effects
+   */
+  public boolean isSideEffectFree() {
+    return instructionSet.isSideEffectFree();
   }
 
   /**
@@ -74,9 +240,22 @@ public class MiMa {
    * @return the current {@link State} of the MiMa
    */
   public State getCurrentState() {
+    if (currentState == null) {
+      currentState = fastMiMa.toState();
+    }
     return currentState;
   }
 
+  /**
+   * Replaces the current state. The machine is reused and loads the state on the next step.
+   *
+   * @param state the new state
+   */
+  public void load(State state) {
+    currentState = state;
+    fastMiMaCurrent = false;
+  }
+
   /**
    * Returns a copy of this mima in the given state.
    *
@@ -1,27 +1,147 @@
 package me.ialistannen.mimadebugger.machine;
 
-import java.util.ArrayDeque;
-import java.util.Deque;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.BitSet;
+import java.util.Map.Entry;
 import me.ialistannen.mimadebugger.exceptions.InstructionNotFoundException;
 import me.ialistannen.mimadebugger.exceptions.MiMaException;
-import me.ialistannen.mimadebugger.exceptions.ProgramHaltException;
+import me.ialistannen.mimadebugger.machine.instructions.InstructionSet;
 
+/**
+ * Steps through a program on a {@link MiMa}, keeping a history to step back and forth.
+ *
+ * <p>Every history entry only stores what changed, see {@link StepHistory}. The history is
+ * limited by a byte budget instead of a number of entries: when it grows too large, its oldest
+ * part is thinned out to sparse checkpoints. Stepping back into that part works just the same,
+ * the states are re-executed from the checkpoints on demand.</p>
+ *
+ * <p>For long runs, the history can additionally be written to a trace file. Then nothing is
+ * thinned out, records evicted from memory are read back from the file when stepping back. The
+ * file can be {@link #resume(Path, InstructionSet, long) opened} again later, to continue
+ * inspecting the same run.</p>
+ *
+ * <p>Every state has a step index, the number of MiMa steps executed to reach it from the initial
+ * state. A {@link #run(long, BitSet, StopCondition) run} advances it by all of its steps at once.
+ * {@link #seek(long)} jumps to any step index, restoring the nearest checkpoint of the history and
+ * re-executing the rest.</p>
+ *
+ * <p>While the runner is at its newest state, the next {@value #DEFAULT_LOOKAHEAD} states are
+ * executed ahead of time on a background thread (see {@link #setLookahead(int)}), so stepping
+ * forward and {@link #isFinished()} usually do not have to execute anything. This is only enabled
+ * by default if {@link MiMa#isSideEffectFree() no instruction has side effects}, as e.g. a device
+ * window would otherwise talk to its device from the background thread and for discarded
+ * states.</p>
+ */
 public class MiMaRunner {
 
+  /**
+   * The default number of bytes the history may use.
+   */
+  public static final long DEFAULT_HISTORY_BUDGET = 64L * 1024 * 1024;
+  /**
+   * The default number of states executed ahead of time.
+   */
+  public static final int DEFAULT_LOOKAHEAD = 32;
+
   private MiMa miMa;
 
-  private Deque<State> previousStates;
-  private Deque<State> nextStates;
+  private final StepHistory history;
   private State current;
   private State initial;
+  /**
+   * The state at the cursor of the history, while the current state is a re-executed one from
+   * the evicted part of the history. Null otherwise.
+   */
+  private State historyState;
+  /**
+   * The step index of the current state, if {@link #historyState} is set.
+   */
+  private long replayedStep;
+  /**
+   * Re-executes the states in the evicted part of the history, created when it is first needed.
+   * Kept at the current state while {@link #historyState} is set.
+   */
+  private MiMa replayMiMa;
+
+  private int lookahead;
+  /**
+   * The states after the newest state executed ahead of time, null if there is none.
+   */
+  private Speculation speculation;
+  /**
+   * Executes the states ahead of time, created for the first speculation and reloaded by every
+   * following one.
+   */
+  private MiMa speculationMiMa;
+  private boolean closed;
 
   public MiMaRunner(MiMa miMa) {
+    this(miMa, DEFAULT_HISTORY_BUDGET);
+  }
+
+  /**
+   * Creates a new runner.
+   *
+   * @param miMa the MiMa to run
+   * @param historyBudget the number of bytes the history may use
+   * @throws IllegalArgumentException if the budget is not positive
+   */
+  public MiMaRunner(MiMa miMa, long historyBudget) {
+    this(miMa, new StepHistory(historyBudget));
+  }
+
+  /**
+   * Creates a new runner, which writes its history to a trace file.
+   *
+   * @param miMa the MiMa to run
+   * @param historyBudget the number of bytes the history may keep in memory
+   * @param traceFile the trace file to create. An existing file is overwritten
+   * @throws IOException if the trace file could not be created
+   * @throws IllegalArgumentException if the budget is not positive
+   */
+  public MiMaRunner(MiMa miMa, long historyBudget, Path traceFile) throws IOException {
+    this(
+        miMa,
+        new StepHistory(historyBudget, TraceFile.create(traceFile, miMa.getCurrentState()))
+    );
+  }
+
+  private MiMaRunner(MiMa miMa, StepHistory history) {
     this.miMa = miMa;
     this.current = miMa.getCurrentState();
     this.initial = miMa.getCurrentState();
 
-    this.nextStates = new ArrayDeque<>(500);
-    this.previousStates = new ArrayDeque<>(500);
+    this.history = history;
+    this.lookahead = miMa.isSideEffectFree() ? DEFAULT_LOOKAHEAD : 0;
+
+    speculate();
+  }
+
+  /**
+   * Opens a trace file written by a runner, to inspect the recorded run again. The new runner is
+   * at the last recorded state and continues writing to the trace file.
+   *
+   * @param traceFile the trace file
+   * @param instructionSet the instruction set of the recorded run
+   * @param historyBudget the number of bytes the history may keep in memory
+   * @return the runner
+   * @throws IOException if the trace file could not be read
+   * @throws IllegalArgumentException if the budget is not positive
+   */
+  public static MiMaRunner resume(Path traceFile, InstructionSet instructionSet,
+      long historyBudget) throws IOException {
+    TraceFile trace = TraceFile.open(traceFile);
+    MiMaRunner runner = new MiMaRunner(
+        new MiMa(trace.readInitialState(), instructionSet),
+        new StepHistory(historyBudget, trace)
+    );
+
+    runner.current = runner.history.restore(runner.initial);
+    runner.miMa.load(runner.current);
+    runner.speculate();
+
+    return runner;
   }
 
   /**
@@ -34,38 +154,269 @@ public class MiMaRunner {
    * @throws MiMaException if the instruction threw it
    */
   public State nextStep() throws MiMaException {
-    if (!nextStates.isEmpty()) {
-      previousStates.push(current);
-      current = nextStates.pop();
+    if (historyState != null) {
+      current = replayAt(current).step();
+      replayedStep++;
+      if (replayedStep == history.getStepIndex()) {
+        current = historyState;
+        historyState = null;
+      }
 
       return current;
     }
+    if (history.hasNext()) {
+      current = history.next(current);
 
-    State nextStep = miMa.step();
+      return current;
+    }
 
-    previousStates.push(current);
-    if (previousStates.size() > 1000) {
-      previousStates.pollLast();
+    boolean speculating = speculation != null && speculation.startsAt(current);
+    State nextStep = speculating ? speculation.take() : null;
+    if (nextStep == null) {
+      // The MiMa is ahead of the current state, if it was loaded with a state executed ahead
+      if (miMa.getCurrentState() != current) {
+        miMa.load(current);
+      }
+      nextStep = miMa.step();
+      // the worker is still computing it, keep the speculation unless it fell too far behind
+      if (speculating && !speculation.skip(nextStep)) {
+        cancelSpeculation();
+      }
+    } else {
+      miMa.load(nextStep);
     }
 
+    history.record(current, nextStep, 1);
+
     current = nextStep;
+    speculate();
+
+    return current;
+  }
+
+  /**
+   * Sets how many states after the newest one are executed ahead of time on a background
+   * thread. Enabling it for instructions with side effects is the caller's responsibility, they
+   * are executed on the background thread and for states that may be discarded.
+   *
+   * @param lookahead the number of states, 0 to disable it
+   * @throws IllegalArgumentException if the lookahead is negative
+   */
+  public void setLookahead(int lookahead) {
+    if (lookahead < 0) {
+      throw new IllegalArgumentException("Negative lookahead: " + lookahead);
+    }
+    this.lookahead = lookahead;
+    cancelSpeculation();
+    speculate();
+  }
+
+  /**
+   * Returns how many states after the newest one are executed ahead of time.
+   *
+   * @return the number of states, 0 if nothing is executed ahead
+   */
+  public int getLookahead() {
+    return lookahead;
+  }
+
+  /**
+   * Stops executing states ahead of time and closes the trace file, e.g. because the program was
+   * changed and the runner is no longer used. Without a trace file stepping still works, but only
+   * computes states on demand. A runner writing a trace file can not be used afterwards.
+   */
+  public void close() {
+    closed = true;
+    cancelSpeculation();
+    history.close();
+  }
+
+  /**
+   * Makes sure the states after the newest one are executed ahead of time, if the runner is at
+   * it.
+   */
+  private void speculate() {
+    if (closed || lookahead == 0 || historyState != null || history.hasNext()) {
+      return;
+    }
+    if (speculation != null && speculation.startsAt(current)) {
+      return;
+    }
+    cancelSpeculation();
+    if (speculationMiMa == null) {
+      speculationMiMa = miMa.copy(current);
+    }
+    speculation = new Speculation(speculationMiMa, current, lookahead);
+  }
+
+  private void cancelSpeculation() {
+    if (speculation != null) {
+      speculation.cancel();
+      speculation = null;
+    }
+  }
+
+  /**
+   * Executes up to the given amount of steps in bulk, see
+   * {@link MiMa#run(long, BitSet, StopCondition)}.
+   *
+   * <p>The intermediate states are not recorded, the whole run is a single step in the history.
+   * Cached next steps are discarded.</p>
+   *
+   * @param maxSteps the maximum amount of steps to execute
+   * @param breakpoints the addresses to stop at
+   * @param stopCondition the condition to check after every step
+   * @return the result of the run
+   */
+  public RunResult run(long maxSteps, BitSet breakpoints, StopCondition stopCondition) {
+    if (historyState != null) {
+      // the run follows the recorded history, so it is not recorded again
+      RunResult result = replayAt(current).run(maxSteps, breakpoints, stopCondition);
+      long reachedStep = replayedStep + result.steps();
+      if (reachedStep < history.getFirstStep()) {
+        current = result.state();
+        replayedStep = reachedStep;
+      } else {
+        seek(reachedStep);
+      }
+      return result;
+    }
+
+    history.truncate();
+    // The MiMa is ahead after stepping back or if the last step threw an exception
+    if (miMa.getCurrentState() != current) {
+      miMa.load(current);
+    }
+
+    RunResult result = miMa.run(maxSteps, breakpoints, stopCondition);
+
+    if (result.steps() > 0) {
+      history.record(current, result.state(), result.steps());
+      current = result.state();
+    }
+    speculate();
+
+    return result;
+  }
+
+  /**
+   * Moves to the state after the given number of steps.
+   *
+   * <p>Recorded states are restored from the history. A step inside a bulk
+   * {@link #run(long, BitSet, StopCondition) run} or after the newest recorded state is
+   * re-executed from the closest recorded state before it. As for a run, this discards all
+   * cached next steps. If the program stops before reaching the step, the runner stays at the
+   * last state it reached.</p>
+   *
+   * <p>A step in the evicted part of the history is re-executed from the closest checkpoint
+   * before it, without changing the history.</p>
+   *
+   * @param step the step index to move to
+   * @return the new current state
+   * @throws IllegalArgumentException if the step is negative
+   */
+  public State seek(long step) {
+    if (step < 0) {
+      throw new IllegalArgumentException("Negative step index: " + step);
+    }
+    if (step < history.getFirstStep()) {
+      return seekEvicted(step);
+    }
+    if (historyState != null) {
+      current = historyState;
+      historyState = null;
+    }
+    current = history.seek(current, Math.min(step, history.getRecordedSteps()));
+
+    long missingSteps = step - history.getStepIndex();
+    if (missingSteps > 0) {
+      run(missingSteps, new BitSet(), StopCondition.NEVER);
+    }
+    speculate();
 
     return current;
   }
 
+  private State seekEvicted(long step) {
+    Entry<Long, State> checkpoint = history.floorCheckpoint(step);
+    State start = checkpoint.getValue();
+    long startStep = checkpoint.getKey();
+
+    if (historyState == null) {
+      historyState = history.seek(current, history.getFirstStep());
+    } else if (replayedStep <= step && replayedStep >= startStep) {
+      start = current;
+      startStep = replayedStep;
+    }
+
+    if (step > startStep) {
+      start = replayAt(start).run(step - startStep, StopCondition.NEVER).state();
+    }
+    current = start;
+    replayedStep = step;
+
+    return current;
+  }
+
+  /**
+   * Returns the {@link #replayMiMa}, loaded with the given state unless it already is in it.
+   *
+   * @param state the state to replay from
+   * @return the replay MiMa
+   */
+  private MiMa replayAt(State state) {
+    if (replayMiMa == null) {
+      replayMiMa = miMa.copy(state);
+    } else if (replayMiMa.getCurrentState() != state) {
+      // it is ahead of the state after a seek or if the last step threw an exception
+      replayMiMa.load(state);
+    }
+    return replayMiMa;
+  }
+
+  /**
+   * Returns the number of steps executed to reach the current state from the initial one.
+   *
+   * @return the step index of the current state
+   */
+  public long currentStepIndex() {
+    return historyState != null ? replayedStep : history.getStepIndex();
+  }
+
+  /**
+   * Returns the estimated number of bytes used by the history.
+   *
+   * @return the size of the history in bytes
+   */
+  public long getHistoryFootprint() {
+    return history.getFootprint();
+  }
+
+  /**
+   * Returns the step index of the newest recorded state. All steps up to it can be restored
+   * without executing past it.
+   *
+   * @return the number of recorded steps
+   */
+  public long getRecordedStepCount() {
+    return history.getRecordedSteps();
+  }
+
   /**
    * Returns the previous step (or the current one, if there is no previous).
    *
    * @return the previous state
    */
   public State previousStep() {
-    if (!previousStates.isEmpty()) {
-      nextStates.push(current);
-
-      current = previousStates.pop();
+    if (historyState == null && history.hasPrevious()) {
+      current = history.previous(current);
 
       return current;
     }
+    if (currentStepIndex() > 0) {
+      // the previous state was evicted
+      return seek(currentStepIndex() - 1);
+    }
 
     // don't change things, there is no previous state
     return current;
@@ -77,7 +428,7 @@ public class MiMaRunner {
    * @return whether there is a previous step
    */
   public boolean hasPreviousStep() {
-    return !previousStates.isEmpty();
+    return currentStepIndex() > 0;
   }
 
   /**
@@ -86,7 +437,7 @@ public class MiMaRunner {
    * @return whether there is a cached next step
    */
   public boolean hasCachedNextStep() {
-    return !nextStates.isEmpty();
+    return historyState != null || history.hasNext();
   }
 
   /**
@@ -105,10 +456,11 @@ public class MiMaRunner {
    */
   public State reset() {
     current = initial;
-    previousStates.clear();
-    nextStates.clear();
+    historyState = null;
+    history.clear();
 
-    miMa = miMa.copy(current);
+    miMa.load(current);
+    speculate();
 
     return current;
   }
@@ -119,19 +471,20 @@ public class MiMaRunner {
    * @return true if the program has finished executing
    */
   public boolean isFinished() {
-    if (!nextStates.isEmpty()) {
+    if (hasCachedNextStep()) {
       return false;
     }
-
-    try {
-      miMa.step();
-      miMa = miMa.copy(current);
-      return false;
-    } catch (ProgramHaltException e) {
-      return true;
-    } catch (MiMaException e) {
-      return false;
+    if (speculation != null && speculation.startsAt(current)) {
+      if (speculation.isHalting(current)) {
+        return true;
+      }
+      if (speculation.hasNext()) {
+        return false;
+      }
     }
+
+    // Not executed ahead (yet), so check it here
+    return miMa.copy(current).isHalting();
   }
 
 }
@@ -0,0 +1,47 @@
+package me.ialistannen.mimadebugger.machine;
+
+import java.util.Optional;
+import me.ialistannen.mimadebugger.exceptions.MiMaException;
+import org.immutables.value.Value;
+
+/**
+ * The result of a bulk run of the MiMa{@literal .} Immutable.
+ */
+@Value.Immutable
+public abstract class RunResult {
+
+  /**
+   * The state after the last completed step.
+   *
+   * @return the state after the last completed step
+   */
+  public abstract State state();
+
+  /**
+   * The number of completed steps.
+   *
+   * @return the number of completed steps
+   */
+  public abstract long steps();
+
+  /**
+   * Why the run stopped.
+   *
+   * @return the reason the run stopped
+   */
+  public abstract StopReason stopReason();
+
+  /**
+   * The wall clock time the run took.
+   *
+   * @return the elapsed time in nanoseconds
+   */
+  public abstract long elapsedNanos();
+
+  /**
+   * The error of the instruction, that could not be executed.
+   *
+   * @return the error, present if the run stopped because of a {@link StopReason#FAULT}
+   */
+  public abstract Optional<MiMaException> fault();
+}
@@ -0,0 +1,181 @@
+package me.ialistannen.mimadebugger.machine;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import me.ialistannen.mimadebugger.exceptions.MiMaException;
+import me.ialistannen.mimadebugger.exceptions.ProgramHaltException;
+
+/**
+ * Executes the steps after a state ahead of time on a background thread, so a {@link MiMaRunner}
+ * can take them without computing them.
+ *
+ * <p>The steps are executed on a MiMa only the background thread touches. It is loaded with the
+ * start state by the worker, so successive speculations can reuse the same MiMa: the worker runs
+ * them one after another. At most {@code lookahead} states are kept, taking one lets the worker
+ * compute the next. The speculation stops at the first step that throws. If that is a
+ * {@link ProgramHaltException}, the state before it is known to be
+ * {@link #isHalting(State) halting}.</p>
+ *
+ * <p>If the owner is faster than the worker, it can compute a step itself and
+ * {@link #skip(State) skip} it, the speculation then drops the worker's copy of that state.</p>
+ */
+final class Speculation {
+
+  private static final ExecutorService WORKER = Executors.newSingleThreadExecutor(runnable -> {
+    Thread thread = new Thread(runnable, "MiMa speculation");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  private final MiMa machine;
+  private final State start;
+  private final int lookahead;
+  private final Queue<State> states;
+  private final AtomicInteger stateCount;
+  private final AtomicBoolean scheduled;
+
+  /**
+   * The state the next taken state follows. Only accessed by the owner.
+   */
+  private State head;
+  /**
+   * The number of states the owner computed itself, whose copies the worker still has to drop.
+   * Only accessed by the owner.
+   */
+  private int skipped;
+  /**
+   * The newest computed state, null until the machine was loaded. Only accessed by the worker.
+   */
+  private State newest;
+  private volatile State haltingState;
+  private volatile boolean stopped;
+
+  /**
+   * Starts speculating.
+   *
+   * @param machine the MiMa to execute the steps on. It is loaded with the start state and must
+   *     only be used by speculations from now on
+   * @param start the state to execute the steps after
+   * @param lookahead the maximum number of states to keep
+   */
+  Speculation(MiMa machine, State start, int lookahead) {
+    this.machine = machine;
+    this.lookahead = lookahead;
+    this.states = new ConcurrentLinkedQueue<>();
+    this.stateCount = new AtomicInteger();
+    this.scheduled = new AtomicBoolean();
+    this.head = start;
+    this.start = start;
+
+    schedule();
+  }
+
+  /**
+   * Checks whether this speculation is about the steps after a state.
+   *
+   * @param state the state
+   * @return true if the next taken state follows the given one
+   */
+  boolean startsAt(State state) {
+    return head.equals(state);
+  }
+
+  /**
+   * Takes the next state, if it was already computed.
+   *
+   * @return the state after the {@link #startsAt(State) head} or null, if it is not known yet
+   */
+  State take() {
+    State next;
+    while ((next = states.poll()) != null) {
+      stateCount.decrementAndGet();
+      if (skipped == 0) {
+        break;
+      }
+      skipped--;
+    }
+    if (next != null) {
+      head = next;
+    }
+    schedule();
+    return next;
+  }
+
+  /**
+   * Moves the head past a state the owner computed itself, as it was not computed yet.
+   *
+   * @param next the state after the {@link #startsAt(State) head}
+   * @return false if the worker is more than {@code lookahead} states behind, the speculation
+   *     should be restarted at the new head then
+   */
+  boolean skip(State next) {
+    head = next;
+    skipped++;
+    return skipped <= lookahead;
+  }
+
+  /**
+   * Checks whether the next state was already computed.
+   *
+   * @return true if {@link #take()} returns a state
+   */
+  boolean hasNext() {
+    return stateCount.get() > skipped;
+  }
+
+  /**
+   * Checks whether the program halts in the given state, without executing anything.
+   *
+   * @param state the state
+   * @return true if it is known to halt, false if it does not or it is not known yet
+   */
+  boolean isHalting(State state) {
+    State halting = haltingState;
+    return halting != null && halting.equals(state);
+  }
+
+  /**
+   * Stops the computation of further states.
+   */
+  void cancel() {
+    stopped = true;
+  }
+
+  private void schedule() {
+    if (!stopped && stateCount.get() < lookahead && scheduled.compareAndSet(false, true)) {
+      WORKER.execute(this::fill);
+    }
+  }
+
+  private void fill() {
+    try {
+      if (newest == null) {
+        machine.load(start);
+        newest = start;
+      }
+      while (!stopped && stateCount.get() < lookahead) {
+        try {
+          newest = machine.step();
+        } catch (ProgramHaltException e) {
+          haltingState = newest;
+          stopped = true;
+          return;
+        } catch (MiMaException | RuntimeException e) {
+          // the runner runs into it on its own and reports it
+          stopped = true;
+          return;
+        }
+        states.add(newest);
+        stateCount.incrementAndGet();
+      }
+    } finally {
+      scheduled.set(false);
+    }
+    // a state may have been taken after the loop ended
+    schedule();
+  }
+}
@@ -6,8 +6,12 @@ import org.immutables.value.Value;
 
 /**
  * The current state of the MiMa{@literal .} Immutable.
+ *
+ * <p>The hash code is computed once, on first use. This is cheap as the memory maintains its own
+ * hash code, except for a memory read from an image, which has to look at every address once.
+ * Creating a state never computes it.</p>
  */
-@Value.Immutable
+@Value.Immutable(lazyhash = true)
 public abstract class State {
 
   /**
@@ -0,0 +1,138 @@
+package me.ialistannen.mimadebugger.machine;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.function.IntConsumer;
+
+/**
+ * The changes between two {@link State}s.
+ *
+ * <p>Only the registers in {@link MiMaRegister} are compared. The changed memory addresses are
+ * found using the structure the memories share, so computing the difference between a state and
+ * one derived from it takes time proportional to the number of changed addresses.</p>
+ */
+public final class StateDiff {
+
+  private final State before;
+  private final State after;
+  private final Set<MiMaRegister> changedRegisters;
+  private final int[] changedAddresses;
+
+  private StateDiff(State before, State after, Set<MiMaRegister> changedRegisters,
+      int[] changedAddresses) {
+    this.before = before;
+    this.after = after;
+    this.changedRegisters = changedRegisters;
+    this.changedAddresses = changedAddresses;
+  }
+
+  /**
+   * Computes the changes between two states.
+   *
+   * @param before the earlier state
+   * @param after the later state
+   * @return the changes between them
+   */
+  public static StateDiff between(State before, State after) {
+    Set<MiMaRegister> changedRegisters = EnumSet.noneOf(MiMaRegister.class);
+    if (!before.registers().equals(after.registers())) {
+      for (MiMaRegister register : MiMaRegister.values()) {
+        if (register.get(before.registers()) != register.get(after.registers())) {
+          changedRegisters.add(register);
+        }
+      }
+    }
+
+    AddressCollector addresses = new AddressCollector();
+    before.memory().forEachDifference(after.memory(), addresses);
+
+    return new StateDiff(
+        before, after, Collections.unmodifiableSet(changedRegisters), addresses.toArray()
+    );
+  }
+
+  /**
+   * Returns the earlier state.
+   *
+   * @return the earlier state
+   */
+  public State getBefore() {
+    return before;
+  }
+
+  /**
+   * Returns the later state.
+   *
+   * @return the later state
+   */
+  public State getAfter() {
+    return after;
+  }
+
+  /**
+   * Returns the registers with a different value.
+   *
+   * @return the changed registers
+   */
+  public Set<MiMaRegister> getChangedRegisters() {
+    return changedRegisters;
+  }
+
+  /**
+   * Returns the memory addresses with a different value, in ascending order. This includes
+   * addresses only initialized in one of the states.
+   *
+   * @return the changed addresses
+   */
+  public int[] getChangedAddresses() {
+    return changedAddresses.clone();
+  }
+
+  /**
+   * Passes every changed memory address to the consumer, in ascending order.
+   *
+   * @param consumer the consumer
+   */
+  public void forEachChangedAddress(IntConsumer consumer) {
+    for (int address : changedAddresses) {
+      consumer.accept(address);
+    }
+  }
+
+  /**
+   * Checks whether nothing changed.
+   *
+   * @return true if no register and no address changed
+   */
+  public boolean isEmpty() {
+    return changedRegisters.isEmpty() && changedAddresses.length == 0;
+  }
+
+  @Override
+  public String toString() {
+    return "StateDiff{"
+        + "changedRegisters=" + changedRegisters
+        + ", changedAddresses=" + Arrays.toString(changedAddresses)
+        + '}';
+  }
+
+  private static final class AddressCollector implements IntConsumer {
+
+    private int[] addresses = new int[4];
+    private int size;
+
+    @Override
+    public void accept(int address) {
+      if (size == addresses.length) {
+        addresses = Arrays.copyOf(addresses, size * 2);
+      }
+      addresses[size++] = address;
+    }
+
+    private int[] toArray() {
+      return Arrays.copyOf(addresses, size);
+    }
+  }
+}
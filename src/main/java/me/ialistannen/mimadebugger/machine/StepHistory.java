@@ -0,0 +1,855 @@
+package me.ialistannen.mimadebugger.machine;
+
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.TreeMap;
+import me.ialistannen.mimadebugger.exceptions.MiMaException;
+import me.ialistannen.mimadebugger.exceptions.NumberOverflowException;
+import me.ialistannen.mimadebugger.machine.memory.MainMemory;
+import me.ialistannen.mimadebugger.machine.memory.RegisterFile;
+import me.ialistannen.mimadebugger.machine.memory.Registers;
+import me.ialistannen.mimadebugger.util.MemoryFormat;
+
+/**
+ * The history of a {@link MiMaRunner}, stored as one compact delta record per history entry.
+ *
+ * <p>A record holds the XOR of the old and new value of everything that changed, so applying it
+ * to the newer state yields the older one and vice versa. The records are packed into int
+ * chunks:</p>
+ * <pre>
+ *   header:    changed register slots (8 bits) | number of changed addresses (23 bits)
+ *              | {@link #MULTI_STEP} (1 bit)
+ *   steps:     only if {@link #MULTI_STEP} is set, the number of steps as two ints
+ *   registers: old ^ new, for every changed slot in ascending order
+ *   memory:    address (| {@link #TOGGLED} if it was initialized in only one state), old ^ new
+ * </pre>
+ *
+ * <p>An ordinary step changes a few registers and at most one word, so it takes about 20 bytes.
+ * The history has a cursor: records before it lead back to older states, records after it are
+ * the cached steps after stepping back.</p>
+ *
+ * <p>To {@link #seek(State, long) seek} to an arbitrary step without walking the whole history,
+ * full states are kept as checkpoints every {@value #CHECKPOINT_INTERVAL} records. Older
+ * checkpoints are thinned out: every {@value #CHECKPOINTS_PER_LEVEL} intervals further back the
+ * spacing doubles, so there are only logarithmically many, but the recent past stays dense.</p>
+ *
+ * <p>The history stays within a byte budget. Once its {@link #getFootprint() footprint} exceeds
+ * it, the oldest records are evicted up to the next checkpoint, until it fits again. The evicted
+ * part of the history then only consists of its sparse checkpoints, states in between have to be
+ * re-executed from them.</p>
+ *
+ * <p>With a {@link TraceFile}, every record is also written to the file and eviction only drops
+ * the in-memory copy. Evicted records are read back from the file when needed, so the whole
+ * history stays available. Their positions are found through a sparse index holding the position
+ * of every {@value #CHECKPOINT_INTERVAL}th record.</p>
+ *
+ * <p>A history {@link #restore(State) restored} from a trace file starts out without the
+ * checkpoints in between. {@link #seek(State, long) Seeking} adds the checkpoints it passes, so
+ * the history fills in where it is used.</p>
+ */
+final class StepHistory {
+
+  private static final int CHUNK_BITS = 16;
+  private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+  private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+  private static final int REGISTER_BITS = 8;
+  private static final int REGISTER_MASK = (1 << REGISTER_BITS) - 1;
+  /**
+   * Marks an address that is initialized in only one of the two states.
+   */
+  private static final int TOGGLED = 1 << 30;
+  private static final int ADDRESS_MASK = TOGGLED - 1;
+  /**
+   * Marks a record spanning more than one step.
+   */
+  private static final int MULTI_STEP = 1 << 31;
+  private static final int CHANGES_MASK = ~MULTI_STEP >>> REGISTER_BITS;
+  /**
+   * The size of the largest possible record: the header, the step count, every register and every
+   * address changed.
+   */
+  private static final int MAX_RECORD_INTS =
+      3 + RegisterFile.SLOT_COUNT + 2 * (1 << MemoryFormat.ADDRESS_LENGTH);
+
+  private static final int CHECKPOINT_INTERVAL = 256;
+  private static final int CHECKPOINTS_PER_LEVEL = 8;
+
+  /**
+   * The estimated size of a state without its memory, i.e. the state, its registers and the
+   * checkpoint.
+   */
+  private static final long STATE_BYTES = 128;
+  /**
+   * The estimated size of a memory trie leaf not shared with another state, including its share
+   * of the inner nodes above it.
+   */
+  private static final long LEAF_BYTES = 192;
+  private static final int LEAF_BITS = 4;
+
+  private final long budget;
+  private final TraceFile trace;
+
+  private int[][] chunks = new int[0][];
+  private int allocatedChunks;
+  /**
+   * The number of used ints.
+   */
+  private int length;
+  /**
+   * The position of every record, starting with the record {@link #offsetsBase}.
+   */
+  private int[] offsets = new int[64];
+  private int offsetsBase;
+  private int recordCount;
+  /**
+   * The position of every {@value #CHECKPOINT_INTERVAL}th record.
+   */
+  private int[] sparseOffsets = new int[16];
+  private int sparseCount;
+  /**
+   * The positions of the records in the sparse block {@link #decodedBlock}, computed from the
+   * sparse index.
+   */
+  private final int[] decodedOffsets = new int[CHECKPOINT_INTERVAL];
+  private int decodedBlock = -1;
+  /**
+   * The index of the oldest record that is still available.
+   */
+  private int firstRecord;
+  /**
+   * The step index at the start of {@link #firstRecord}.
+   */
+  private long firstStep;
+  /**
+   * The index of the oldest record that is held in memory.
+   */
+  private int windowRecord;
+  /**
+   * The step index at the start of {@link #windowRecord}.
+   */
+  private long windowStep;
+  /**
+   * The number of records before the current state.
+   */
+  private int cursor;
+  /**
+   * The number of steps before the current state.
+   */
+  private long stepIndex;
+  /**
+   * The number of steps covered by all records.
+   */
+  private long recordedSteps;
+  /**
+   * The checkpoints by their step index.
+   */
+  private final TreeMap<Long, Checkpoint> checkpoints = new TreeMap<>();
+  private long checkpointBytes;
+
+  /**
+   * Creates a new history.
+   *
+   * @param budget the number of bytes the history may use
+   * @throws IllegalArgumentException if the budget is not positive
+   */
+  StepHistory(long budget) {
+    this(budget, null);
+  }
+
+  /**
+   * Creates a new history writing its records to a trace file. Call {@link #restore(State)}
+   * before using it, if the trace file already holds records.
+   *
+   * @param budget the number of bytes the history may keep in memory
+   * @param trace the trace file or null, if evicted records should be discarded
+   * @throws IllegalArgumentException if the budget is not positive
+   */
+  StepHistory(long budget, TraceFile trace) {
+    if (budget <= 0) {
+      throw new IllegalArgumentException("The budget must be positive, was " + budget);
+    }
+    this.budget = budget;
+    this.trace = trace;
+  }
+
+  /**
+   * Reads the records already in the trace file and moves the cursor after the last one. The
+   * records stay on disk and are only scanned once: the sparse index is rebuilt from their
+   * headers and their deltas are combined into one, which is applied to the initial state. Only
+   * the checkpoint at the last interval boundary is built, the others are added when
+   * {@link #seek(State, long) seeking} past them.
+   *
+   * @param initial the state before the first record
+   * @return the state after the last record
+   * @throws IllegalStateException if the history has no trace file or is not empty
+   */
+  State restore(State initial) {
+    if (trace == null || recordCount != 0) {
+      throw new IllegalStateException("Only an empty history can be restored from a trace file");
+    }
+    length = trace.getLength();
+    chunks = new int[(length + CHUNK_MASK) >>> CHUNK_BITS][];
+
+    int[] registerDeltas = new int[RegisterFile.SLOT_COUNT];
+    Map<Integer, Integer> memoryDeltas = new HashMap<>();
+    BitSet toggled = new BitSet();
+    long steps = 0;
+    int position = 0;
+    while (position < length) {
+      if (recordCount % CHECKPOINT_INTERVAL == 0) {
+        addSparseOffset(position);
+      }
+      int header = get(position++);
+      int changes = header >>> REGISTER_BITS & CHANGES_MASK;
+      if ((header & MULTI_STEP) == 0) {
+        steps++;
+      } else {
+        steps += (long) get(position) << 32 | get(position + 1) & 0xFFFF_FFFFL;
+        position += 2;
+      }
+      for (int mask = header & REGISTER_MASK; mask != 0; mask &= mask - 1) {
+        registerDeltas[Integer.numberOfTrailingZeros(mask)] ^= get(position++);
+      }
+      for (int i = 0; i < changes; i++) {
+        int address = get(position++);
+        memoryDeltas.merge(address & ADDRESS_MASK, get(position++), (a, b) -> a ^ b);
+        if ((address & TOGGLED) != 0) {
+          toggled.flip(address & ADDRESS_MASK);
+        }
+      }
+      recordCount++;
+    }
+    State last = applyDeltas(initial, registerDeltas, memoryDeltas, toggled);
+
+    // the offsets of the restored records are only kept in the sparse index
+    offsetsBase = recordCount;
+    windowRecord = recordCount;
+    addCheckpoint(initial);
+
+    // recording continues from a checkpoint at the last interval boundary, as it did before
+    int boundary = recordCount - recordCount % CHECKPOINT_INTERVAL;
+    if (boundary > 0) {
+      cursor = recordCount;
+      stepIndex = steps;
+      State state = last;
+      while (cursor > boundary) {
+        state = previous(state);
+      }
+      addCheckpoint(state);
+    }
+    cursor = recordCount;
+    stepIndex = steps;
+    recordedSteps = steps;
+    windowStep = steps;
+
+    return last;
+  }
+
+  private static State applyDeltas(State state, int[] registerDeltas,
+      Map<Integer, Integer> memoryDeltas, BitSet toggled) {
+    RegisterFile registerFile = new RegisterFile(state.registers());
+    for (int slot = 0; slot < RegisterFile.SLOT_COUNT; slot++) {
+      registerFile.setSlot(slot, registerFile.getSlot(slot) ^ registerDeltas[slot]);
+    }
+
+    MainMemory memory = state.memory();
+    try {
+      for (Entry<Integer, Integer> delta : memoryDeltas.entrySet()) {
+        int address = delta.getKey();
+        // an address toggled an odd number of times flips its initialized state
+        if (toggled.get(address) && memory.isInitialized(address)) {
+          memory = memory.unset(address);
+        } else if (toggled.get(address) || delta.getValue() != 0) {
+          memory = memory.set(address, valueOrZero(memory, address) ^ delta.getValue());
+        }
+      }
+    } catch (NumberOverflowException e) {
+      throw new IllegalStateException("Recorded address out of range", e);
+    }
+
+    return ImmutableState.builder()
+        .registers(registerFile.toRegisters())
+        .memory(memory)
+        .build();
+  }
+
+  /**
+   * Records the transition from one state to the next one, discarding all records after the
+   * cursor.
+   *
+   * @param before the current state
+   * @param after the next state
+   * @param steps the number of steps between them, at least one
+   * @throws IllegalStateException if the positions of the records, which are ints, could overflow
+   *     with the new record
+   */
+  void record(State before, State after, long steps) {
+    truncate();
+    int capacity = trace == null ? Integer.MAX_VALUE : trace.getCapacity();
+    if (length > capacity - MAX_RECORD_INTS) {
+      throw new IllegalStateException("The history is full after " + recordCount + " records");
+    }
+    if (checkpoints.isEmpty()) {
+      addCheckpoint(before);
+    }
+
+    if (recordCount - offsetsBase == offsets.length) {
+      growOffsets();
+    }
+    offsets[recordCount - offsetsBase] = length;
+    if (recordCount % CHECKPOINT_INTERVAL == 0) {
+      addSparseOffset(length);
+    }
+
+    int headerPosition = length;
+    append(0);
+    if (steps != 1) {
+      append((int) (steps >>> 32));
+      append((int) steps);
+    }
+
+    RegisterFile oldRegisters = new RegisterFile(before.registers());
+    RegisterFile newRegisters = new RegisterFile(after.registers());
+    int registerMask = 0;
+    for (int slot = 0; slot < RegisterFile.SLOT_COUNT; slot++) {
+      int delta = oldRegisters.getSlot(slot) ^ newRegisters.getSlot(slot);
+      if (delta != 0) {
+        registerMask |= 1 << slot;
+        append(delta);
+      }
+    }
+
+    MainMemory oldMemory = before.memory();
+    MainMemory newMemory = after.memory();
+    int[] changes = new int[1];
+    oldMemory.forEachDifference(newMemory, address -> {
+      boolean wasInitialized = oldMemory.isInitialized(address);
+      boolean isInitialized = newMemory.isInitialized(address);
+
+      append(wasInitialized == isInitialized ? address : address | TOGGLED);
+      append(valueOrZero(oldMemory, address) ^ valueOrZero(newMemory, address));
+      changes[0]++;
+    });
+
+    int multiStep = steps == 1 ? 0 : MULTI_STEP;
+    set(headerPosition, registerMask | changes[0] << REGISTER_BITS | multiStep);
+    if (trace != null) {
+      for (int position = headerPosition; position < length; position++) {
+        trace.set(position, get(position));
+      }
+      trace.commit(length);
+    }
+    recordCount++;
+    cursor++;
+    stepIndex += steps;
+    recordedSteps = stepIndex;
+
+    if (cursor % CHECKPOINT_INTERVAL == 0) {
+      addCheckpoint(after);
+      thinCheckpoints();
+    }
+    evict();
+  }
+
+  private void addSparseOffset(int position) {
+    if (sparseCount == sparseOffsets.length) {
+      sparseOffsets = Arrays.copyOf(sparseOffsets, sparseCount * 2);
+    }
+    sparseOffsets[sparseCount++] = position;
+  }
+
+  private void addCheckpoint(State state) {
+    Entry<Long, Checkpoint> newest = checkpoints.lastEntry();
+    if (newest != null) {
+      resize(newest.getValue(), state);
+    }
+    Checkpoint checkpoint = new Checkpoint(cursor, state);
+    checkpoint.size = STATE_BYTES;
+    checkpointBytes += checkpoint.size;
+    Checkpoint replaced = checkpoints.put(stepIndex, checkpoint);
+    if (replaced != null) {
+      checkpointBytes -= replaced.size;
+    }
+  }
+
+  /**
+   * Removes the checkpoints that are no longer needed, as their distance to the newest record
+   * grew. A checkpoint survives if its record index is a multiple of the spacing for its
+   * distance, so a removed one would never have been kept later on.
+   */
+  private void thinCheckpoints() {
+    Checkpoint lastKept = null;
+    boolean lastKeptChanged = false;
+
+    for (Iterator<Checkpoint> iterator = checkpoints.values().iterator(); iterator.hasNext(); ) {
+      Checkpoint checkpoint = iterator.next();
+
+      if (!keepsCheckpoint(checkpoint.record)) {
+        iterator.remove();
+        checkpointBytes -= checkpoint.size;
+        lastKeptChanged = true;
+        continue;
+      }
+      // its memory is now compared against a later checkpoint
+      if (lastKept != null && lastKeptChanged) {
+        resize(lastKept, checkpoint.state);
+      }
+      lastKept = checkpoint;
+      lastKeptChanged = false;
+    }
+  }
+
+  private boolean keepsCheckpoint(int record) {
+    int distance = recordCount - record;
+    int level = 31 - Integer.numberOfLeadingZeros(
+        1 + distance / (CHECKPOINT_INTERVAL * CHECKPOINTS_PER_LEVEL)
+    );
+    return record % (CHECKPOINT_INTERVAL << level) == 0;
+  }
+
+  /**
+   * Adds the checkpoint at the cursor, if it is missing although it would have been kept. Only a
+   * restored history is missing checkpoints.
+   *
+   * @param state the state at the cursor
+   */
+  private void fillCheckpoint(State state) {
+    if (cursor % CHECKPOINT_INTERVAL != 0 || checkpoints.containsKey(stepIndex)
+        || !keepsCheckpoint(cursor)) {
+      return;
+    }
+    Checkpoint checkpoint = new Checkpoint(cursor, state);
+    checkpoint.size = STATE_BYTES;
+    checkpointBytes += checkpoint.size;
+    checkpoints.put(stepIndex, checkpoint);
+
+    Entry<Long, Checkpoint> newer = checkpoints.higherEntry(stepIndex);
+    if (newer != null) {
+      resize(checkpoint, newer.getValue().state);
+    }
+    Entry<Long, Checkpoint> older = checkpoints.lowerEntry(stepIndex);
+    if (older != null) {
+      resize(older.getValue(), state);
+    }
+  }
+
+  /**
+   * Estimates the size of a checkpoint as the memory it does not share with the next newer one.
+   * Leaves are only counted once, even if multiple of their addresses differ.
+   *
+   * @param checkpoint the checkpoint to estimate
+   * @param newer the state of the next newer checkpoint
+   */
+  private void resize(Checkpoint checkpoint, State newer) {
+    long[] leaves = new long[1];
+    int[] lastLeaf = {-1};
+    checkpoint.state.memory().forEachDifference(newer.memory(), address -> {
+      if (address >>> LEAF_BITS != lastLeaf[0]) {
+        lastLeaf[0] = address >>> LEAF_BITS;
+        leaves[0]++;
+      }
+    });
+
+    checkpointBytes -= checkpoint.size;
+    checkpoint.size = STATE_BYTES + leaves[0] * LEAF_BYTES;
+    checkpointBytes += checkpoint.size;
+  }
+
+  /**
+   * Evicts the oldest records in memory up to the next checkpoint until the history fits into its
+   * budget. The records after the last checkpoint before the cursor are never evicted, so a
+   * history only consisting of those can exceed the budget.
+   */
+  private void evict() {
+    while (getFootprint() > budget) {
+      Entry<Long, Checkpoint> boundary = checkpoints.higherEntry(windowStep);
+      if (boundary == null || boundary.getValue().record >= cursor) {
+        return;
+      }
+      int record = boundary.getValue().record;
+
+      int freeUntil = offset(record) >>> CHUNK_BITS;
+      for (int chunk = offset(windowRecord) >>> CHUNK_BITS; chunk < freeUntil; chunk++) {
+        if (chunks[chunk] != null) {
+          chunks[chunk] = null;
+          allocatedChunks--;
+        }
+      }
+      windowRecord = record;
+      windowStep = boundary.getKey();
+      if (trace == null) {
+        firstRecord = record;
+        firstStep = windowStep;
+      }
+    }
+  }
+
+  private void growOffsets() {
+    int used = recordCount - windowRecord;
+    if (used <= offsets.length / 2) {
+      // most of the offsets belong to evicted records
+      System.arraycopy(offsets, windowRecord - offsetsBase, offsets, 0, used);
+    } else {
+      int[] grown = new int[offsets.length * 2];
+      System.arraycopy(offsets, windowRecord - offsetsBase, grown, 0, used);
+      offsets = grown;
+    }
+    offsetsBase = windowRecord;
+  }
+
+  /**
+   * Returns the estimated number of bytes used by the history. This includes the records and the
+   * parts of the checkpoints' memory that are not shared with newer checkpoints.
+   *
+   * @return the estimated size of the history in bytes
+   */
+  long getFootprint() {
+    return (long) allocatedChunks * CHUNK_SIZE * Integer.BYTES
+        + (long) (offsets.length + sparseOffsets.length) * Integer.BYTES
+        + checkpointBytes;
+  }
+
+  /**
+   * Checks whether there is a record before the cursor.
+   *
+   * @return true if the state before the current one is known
+   */
+  boolean hasPrevious() {
+    return cursor > firstRecord;
+  }
+
+  /**
+   * Checks whether there is a record after the cursor.
+   *
+   * @return true if the state after the current one is known
+   */
+  boolean hasNext() {
+    return cursor < recordCount;
+  }
+
+  /**
+   * Moves the cursor back by one record.
+   *
+   * @param current the current state
+   * @return the state before it
+   * @throws IllegalStateException if there is no previous record
+   */
+  State previous(State current) {
+    if (!hasPrevious()) {
+      throw new IllegalStateException("No previous state recorded");
+    }
+    cursor--;
+    stepIndex -= steps(cursor);
+    return apply(current, cursor);
+  }
+
+  /**
+   * Moves the cursor forward by one record.
+   *
+   * @param current the current state
+   * @return the state after it
+   * @throws IllegalStateException if there is no next record
+   */
+  State next(State current) {
+    if (!hasNext()) {
+      throw new IllegalStateException("No next state recorded");
+    }
+    State result = apply(current, cursor);
+    stepIndex += steps(cursor);
+    cursor++;
+    return result;
+  }
+
+  /**
+   * Moves the cursor to the last record boundary at or before the given step. This is either
+   * reached from the current state or from the closest checkpoint before the step, whichever is
+   * nearer. The step can lie inside a record spanning multiple steps, then the result is the
+   * state at the start of that record and {@link #getStepIndex()} is smaller than the step.
+   * Missing checkpoints passed on the way are added.
+   *
+   * @param current the current state
+   * @param step the step index to move to
+   * @return the state at the new cursor position
+   * @throws IllegalArgumentException if the step is evicted or after the last record
+   */
+  State seek(State current, long step) {
+    if (step < firstStep || step > recordedSteps) {
+      throw new IllegalArgumentException(
+          "Step " + step + " is not in the recorded range [" + firstStep + ", " + recordedSteps
+              + "]"
+      );
+    }
+
+    Entry<Long, Checkpoint> checkpoint = checkpoints.subMap(firstStep, true, step, true)
+        .lastEntry();
+    boolean checkpointCloser = checkpoint != null && (stepIndex > step
+        ? step - checkpoint.getKey() < stepIndex - step
+        : checkpoint.getKey() > stepIndex);
+
+    State state = current;
+    if (checkpointCloser) {
+      cursor = checkpoint.getValue().record;
+      stepIndex = checkpoint.getKey();
+      state = checkpoint.getValue().state;
+    }
+
+    while (stepIndex > step) {
+      state = previous(state);
+      fillCheckpoint(state);
+    }
+    while (hasNext() && stepIndex + steps(cursor) <= step) {
+      state = next(state);
+      fillCheckpoint(state);
+    }
+    return state;
+  }
+
+  /**
+   * Returns the closest checkpoint at or before a step. Use this to restore steps whose records
+   * were evicted.
+   *
+   * @param step the step index
+   * @return the step index and state of the checkpoint or null, if nothing was recorded yet
+   */
+  Entry<Long, State> floorCheckpoint(long step) {
+    Entry<Long, Checkpoint> checkpoint = checkpoints.floorEntry(step);
+    if (checkpoint == null) {
+      return null;
+    }
+    return new SimpleImmutableEntry<>(checkpoint.getKey(), checkpoint.getValue().state);
+  }
+
+  /**
+   * Returns the number of steps before the current state.
+   *
+   * @return the step index of the current state
+   */
+  long getStepIndex() {
+    return stepIndex;
+  }
+
+  /**
+   * Returns the step index of the oldest state that can be restored from the records. Older
+   * states were evicted.
+   *
+   * @return the step index of the oldest recorded state
+   */
+  long getFirstStep() {
+    return firstStep;
+  }
+
+  /**
+   * Returns the number of steps covered by all records, i.e. the index of the newest state.
+   *
+   * @return the number of recorded steps
+   */
+  long getRecordedSteps() {
+    return recordedSteps;
+  }
+
+  /**
+   * Discards all records after the cursor.
+   */
+  void truncate() {
+    if (cursor < recordCount) {
+      length = offset(cursor);
+      recordCount = cursor;
+      chunks = Arrays.copyOf(chunks, (length + CHUNK_MASK) >>> CHUNK_BITS);
+      allocatedChunks = (int) Arrays.stream(chunks).filter(Objects::nonNull).count();
+      recordedSteps = stepIndex;
+      sparseCount = (recordCount + CHECKPOINT_INTERVAL - 1) / CHECKPOINT_INTERVAL;
+      decodedBlock = -1;
+      if (windowRecord > cursor) {
+        // the cursor was moved back into the records only held by the trace file
+        windowRecord = cursor;
+        windowStep = stepIndex;
+        offsetsBase = cursor;
+      }
+      if (trace != null) {
+        trace.commit(length);
+      }
+
+      checkpoints.tailMap(stepIndex, false).clear();
+      checkpointBytes = 0;
+      for (Checkpoint checkpoint : checkpoints.values()) {
+        checkpointBytes += checkpoint.size;
+      }
+    }
+  }
+
+  /**
+   * Closes the trace file, if there is one. A history with a trace file can not be used
+   * afterwards.
+   */
+  void close() {
+    if (trace != null) {
+      trace.close();
+    }
+  }
+
+  /**
+   * Discards all records.
+   */
+  void clear() {
+    chunks = new int[0][];
+    allocatedChunks = 0;
+    length = 0;
+    offsets = new int[64];
+    offsetsBase = 0;
+    sparseOffsets = new int[16];
+    sparseCount = 0;
+    decodedBlock = -1;
+    recordCount = 0;
+    firstRecord = 0;
+    firstStep = 0;
+    windowRecord = 0;
+    windowStep = 0;
+    cursor = 0;
+    stepIndex = 0;
+    recordedSteps = 0;
+    checkpoints.clear();
+    checkpointBytes = 0;
+    if (trace != null) {
+      trace.commit(0);
+    }
+  }
+
+  private int offset(int record) {
+    if (record >= offsetsBase) {
+      return offsets[record - offsetsBase];
+    }
+    int block = record / CHECKPOINT_INTERVAL;
+    if (block != decodedBlock) {
+      int position = sparseOffsets[block];
+      int count = Math.min(CHECKPOINT_INTERVAL, recordCount - block * CHECKPOINT_INTERVAL);
+      for (int i = 0; i < count; i++) {
+        decodedOffsets[i] = position;
+        position += recordLength(position);
+      }
+      decodedBlock = block;
+    }
+    return decodedOffsets[record % CHECKPOINT_INTERVAL];
+  }
+
+  private int recordLength(int position) {
+    int header = get(position);
+    int stepInts = (header & MULTI_STEP) == 0 ? 0 : 2;
+    int changes = header >>> REGISTER_BITS & CHANGES_MASK;
+    return 1 + stepInts + Integer.bitCount(header & REGISTER_MASK) + changes * 2;
+  }
+
+  private long steps(int record) {
+    int position = offset(record);
+    if ((get(position) & MULTI_STEP) == 0) {
+      return 1;
+    }
+    return (long) get(position + 1) << 32 | get(position + 2) & 0xFFFF_FFFFL;
+  }
+
+  private State apply(State state, int record) {
+    int position = offset(record);
+    int header = get(position++);
+    int registerMask = header & REGISTER_MASK;
+    int changes = header >>> REGISTER_BITS & CHANGES_MASK;
+    if ((header & MULTI_STEP) != 0) {
+      position += 2;
+    }
+
+    Registers registers = state.registers();
+    if (registerMask != 0) {
+      RegisterFile registerFile = new RegisterFile(registers);
+      for (int mask = registerMask; mask != 0; mask &= mask - 1) {
+        int slot = Integer.numberOfTrailingZeros(mask);
+        registerFile.setSlot(slot, registerFile.getSlot(slot) ^ get(position++));
+      }
+      registers = registerFile.toRegisters();
+    }
+
+    MainMemory memory = state.memory();
+    try {
+      for (int i = 0; i < changes; i++) {
+        int address = get(position++);
+        int delta = get(position++);
+        int plainAddress = address & ADDRESS_MASK;
+
+        if ((address & TOGGLED) != 0 && memory.isInitialized(plainAddress)) {
+          memory = memory.unset(plainAddress);
+        } else {
+          memory = memory.set(plainAddress, valueOrZero(memory, plainAddress) ^ delta);
+        }
+      }
+    } catch (NumberOverflowException e) {
+      throw new IllegalStateException("Recorded address out of range", e);
+    }
+
+    return ImmutableState.builder()
+        .registers(registers)
+        .memory(memory)
+        .build();
+  }
+
+  private static int valueOrZero(MainMemory memory, int address) {
+    if (!memory.isInitialized(address)) {
+      return 0;
+    }
+    try {
+      return memory.get(address);
+    } catch (MiMaException e) {
+      throw new IllegalStateException("Initialized address not readable", e);
+    }
+  }
+
+  /**
+   * A full state at a record boundary.
+   */
+  private static final class Checkpoint {
+
+    private final int record;
+    private final State state;
+    /**
+     * The estimated number of bytes only this checkpoint holds on to.
+     */
+    private long size;
+
+    private Checkpoint(int record, State state) {
+      this.record = record;
+      this.state = state;
+    }
+  }
+
+  private void append(int value) {
+    int chunk = length >>> CHUNK_BITS;
+    if (chunk == chunks.length) {
+      chunks = Arrays.copyOf(chunks, chunk + 1);
+    }
+    if (chunks[chunk] == null) {
+      chunks[chunk] = new int[CHUNK_SIZE];
+      allocatedChunks++;
+      if (trace != null) {
+        // the start of the chunk may have been evicted before
+        trace.get(chunk << CHUNK_BITS, chunks[chunk], length & CHUNK_MASK);
+      }
+    }
+    chunks[chunk][length & CHUNK_MASK] = value;
+    length++;
+  }
+
+  private void set(int position, int value) {
+    chunks[position >>> CHUNK_BITS][position & CHUNK_MASK] = value;
+  }
+
+  private int get(int position) {
+    int[] chunk = chunks[position >>> CHUNK_BITS];
+    if (chunk == null) {
+      return trace.get(position);
+    }
+    return chunk[position & CHUNK_MASK];
+  }
+}
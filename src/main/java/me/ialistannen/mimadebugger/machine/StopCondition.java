@@ -0,0 +1,37 @@
+package me.ialistannen.mimadebugger.machine;
+
+/**
+ * Decides whether a bulk run of the MiMa should stop, checked after every step.
+ *
+ * <p>A run executes whole blocks of instructions at once only for {@link #NEVER} and conditions
+ * created by {@link #accumulatorEquals(int)}. Any other condition, even an equivalent one, has to
+ * be called after every single step and makes the run a lot slower.</p>
+ */
+@FunctionalInterface
+public interface StopCondition {
+
+  /**
+   * A condition that never stops the execution.
+   */
+  StopCondition NEVER = (instructionPointer, accumulator) -> false;
+
+  /**
+   * Creates a condition stopping as soon as the accumulator holds a value. A run checks it
+   * without executing the program a single step at a time.
+   *
+   * @param value the accumulator value to stop at
+   * @return the condition
+   */
+  static StopCondition accumulatorEquals(int value) {
+    return new AccumulatorStopCondition(value);
+  }
+
+  /**
+   * Checks whether the execution should stop.
+   *
+   * @param instructionPointer the instruction pointer after the step
+   * @param accumulator the accumulator after the step
+   * @return true if the execution should stop
+   */
+  boolean shouldStop(int instructionPointer, int accumulator);
+}
@@ -0,0 +1,27 @@
+package me.ialistannen.mimadebugger.machine;
+
+/**
+ * The reason a bulk run of the MiMa stopped.
+ */
+public enum StopReason {
+  /**
+   * The program executed a HALT instruction.
+   */
+  HALTED,
+  /**
+   * An instruction could not be executed.
+   */
+  FAULT,
+  /**
+   * The instruction pointer reached a breakpoint.
+   */
+  BREAKPOINT,
+  /**
+   * The {@link StopCondition} was met.
+   */
+  STOP_CONDITION,
+  /**
+   * The maximum amount of steps was executed.
+   */
+  STEP_LIMIT
+}
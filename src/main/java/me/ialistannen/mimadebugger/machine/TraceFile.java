@@ -0,0 +1,275 @@
+package me.ialistannen.mimadebugger.machine;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import me.ialistannen.mimadebugger.exceptions.NumberOverflowException;
+import me.ialistannen.mimadebugger.machine.memory.MainMemory;
+import me.ialistannen.mimadebugger.machine.memory.RegisterFile;
+
+/**
+ * A memory mapped file holding the records of a {@link StepHistory}, so they do not have to stay
+ * on the heap.
+ *
+ * <p>The file consists of big endian ints:</p>
+ * <pre>
+ *   0: magic  {@value #MAGIC}
+ *   1: version
+ *   2: the number of ints in the record log
+ *   3: the number of ints of the initial state
+ *   4: the initial state: all {@link RegisterFile} slots, the number of initialized addresses
+ *      and every address followed by its value
+ *   then the record log, in the format of {@link StepHistory}
+ * </pre>
+ *
+ * <p>Records are only ever appended, except when the history discards the records after its
+ * cursor. The length in the header is updated after every record, so the file always holds a
+ * complete history, which can be opened again after the run. The file is mapped in segments as
+ * it grows, the mapped pages are written back by the operating system and forced to the disk
+ * when the file is {@link #close() closed}. As positions in the file are ints, the record log
+ * holds at most {@link #getCapacity()} ints.</p>
+ */
+final class TraceFile {
+
+  private static final int MAGIC = 0x4D545243;
+  private static final int VERSION = 1;
+
+  private static final int LENGTH_POSITION = 2;
+  private static final int STATE_LENGTH_POSITION = 3;
+  private static final int HEADER_INTS = 4;
+
+  private static final int SEGMENT_BITS = 22;
+  private static final int SEGMENT_MASK = (1 << SEGMENT_BITS) - 1;
+
+  private final Path path;
+  private MappedByteBuffer[] mappedSegments = new MappedByteBuffer[0];
+  private IntBuffer[] segments = new IntBuffer[0];
+  private boolean closed;
+  private int logStart;
+  private int length;
+
+  private TraceFile(Path path) {
+    this.path = path;
+  }
+
+  /**
+   * Creates a new, empty trace file, overwriting an existing one.
+   *
+   * @param path the path of the file
+   * @param initialState the state before the first record
+   * @return the trace file
+   * @throws IOException if the file could not be created
+   */
+  static TraceFile create(Path path, State initialState) throws IOException {
+    Files.deleteIfExists(path);
+    TraceFile traceFile = new TraceFile(path);
+
+    RegisterFile registers = new RegisterFile(initialState.registers());
+    MainMemory memory = initialState.memory();
+    int[] state = new int[RegisterFile.SLOT_COUNT + 1 + memory.getInitializedCount() * 2];
+    for (int slot = 0; slot < RegisterFile.SLOT_COUNT; slot++) {
+      state[slot] = registers.getSlot(slot);
+    }
+    state[RegisterFile.SLOT_COUNT] = memory.getInitializedCount();
+    int[] position = {RegisterFile.SLOT_COUNT + 1};
+    memory.forEach((address, value) -> {
+      state[position[0]++] = address;
+      state[position[0]++] = value;
+    });
+
+    traceFile.put(0, MAGIC);
+    traceFile.put(1, VERSION);
+    traceFile.put(LENGTH_POSITION, 0);
+    traceFile.put(STATE_LENGTH_POSITION, state.length);
+    for (int i = 0; i < state.length; i++) {
+      traceFile.put(HEADER_INTS + i, state[i]);
+    }
+    traceFile.logStart = HEADER_INTS + state.length;
+
+    return traceFile;
+  }
+
+  /**
+   * Opens an existing trace file to continue it.
+   *
+   * @param path the path of the file
+   * @return the trace file
+   * @throws IOException if the file could not be read or is no trace file
+   */
+  static TraceFile open(Path path) throws IOException {
+    long size = Files.size(path);
+    if (size < HEADER_INTS * Integer.BYTES) {
+      throw new IOException("Not a trace file: " + path);
+    }
+    TraceFile traceFile = new TraceFile(path);
+    if (traceFile.read(0) != MAGIC) {
+      throw new IOException("Not a trace file: " + path);
+    }
+    if (traceFile.read(1) != VERSION) {
+      throw new IOException("Unsupported trace file version " + traceFile.read(1));
+    }
+    traceFile.logStart = HEADER_INTS + traceFile.read(STATE_LENGTH_POSITION);
+    traceFile.length = traceFile.read(LENGTH_POSITION);
+    if (traceFile.logStart < HEADER_INTS || traceFile.length < 0
+        || (traceFile.logStart + (long) traceFile.length) * Integer.BYTES > size) {
+      throw new IOException("Truncated trace file: " + path);
+    }
+    return traceFile;
+  }
+
+  /**
+   * Reads the state before the first record.
+   *
+   * @return the initial state
+   * @throws IOException if the stored state is invalid
+   */
+  State readInitialState() throws IOException {
+    RegisterFile registers = new RegisterFile();
+    for (int slot = 0; slot < RegisterFile.SLOT_COUNT; slot++) {
+      registers.setSlot(slot, read(HEADER_INTS + slot));
+    }
+
+    int count = read(HEADER_INTS + RegisterFile.SLOT_COUNT);
+    if (count < 0 || RegisterFile.SLOT_COUNT + 1 + count * 2L != logStart - HEADER_INTS) {
+      throw new IOException("Invalid initial state in trace file: " + path);
+    }
+    MainMemory.Builder memory = MainMemory.builder();
+    int position = HEADER_INTS + RegisterFile.SLOT_COUNT + 1;
+    try {
+      for (int i = 0; i < count; i++) {
+        memory.set(read(position), read(position + 1));
+        position += 2;
+      }
+    } catch (NumberOverflowException e) {
+      throw new IOException("Invalid address in trace file: " + path, e);
+    }
+
+    return ImmutableState.builder()
+        .registers(registers.toRegisters())
+        .memory(memory.build())
+        .build();
+  }
+
+  /**
+   * Returns the number of ints in the record log.
+   *
+   * @return the length of the record log
+   */
+  int getLength() {
+    return length;
+  }
+
+  /**
+   * Returns the maximum number of ints the record log can hold.
+   *
+   * @return the capacity of the record log
+   */
+  int getCapacity() {
+    return Integer.MAX_VALUE - logStart;
+  }
+
+  /**
+   * Reads an int of the record log.
+   *
+   * @param position the position in the log
+   * @return the int at that position
+   */
+  int get(int position) {
+    return read(logStart + position);
+  }
+
+  /**
+   * Reads a range of the record log.
+   *
+   * @param position the position in the log
+   * @param target the array to read into, starting at index 0
+   * @param count the number of ints to read
+   */
+  void get(int position, int[] target, int count) {
+    for (int i = 0; i < count; i++) {
+      target[i] = get(position + i);
+    }
+  }
+
+  /**
+   * Writes an int of the record log. It becomes part of the history with the next
+   * {@link #commit(int)}.
+   *
+   * @param position the position in the log
+   * @param value the value to write
+   */
+  void set(int position, int value) {
+    put(logStart + position, value);
+  }
+
+  /**
+   * Sets the length of the record log, either after records were appended or to discard records
+   * at its end.
+   *
+   * @param length the new number of ints in the record log
+   */
+  void commit(int length) {
+    this.length = length;
+    put(LENGTH_POSITION, length);
+  }
+
+  /**
+   * Writes all changes to the disk and releases the mapped segments. The mappings are unmapped
+   * once they are garbage collected, the file can not be accessed afterwards.
+   */
+  void close() {
+    if (closed) {
+      return;
+    }
+    for (MappedByteBuffer segment : mappedSegments) {
+      if (segment != null) {
+        segment.force();
+      }
+    }
+    closed = true;
+    mappedSegments = new MappedByteBuffer[0];
+    segments = new IntBuffer[0];
+  }
+
+  private int read(int index) {
+    return segment(index >>> SEGMENT_BITS).get(index & SEGMENT_MASK);
+  }
+
+  private void put(int index, int value) {
+    segment(index >>> SEGMENT_BITS).put(index & SEGMENT_MASK, value);
+  }
+
+  private IntBuffer segment(int segment) {
+    if (segment < segments.length && segments[segment] != null) {
+      return segments[segment];
+    }
+    if (closed) {
+      throw new IllegalStateException("Trace file " + path + " is closed");
+    }
+    if (segment >= segments.length) {
+      segments = Arrays.copyOf(segments, segment + 1);
+      mappedSegments = Arrays.copyOf(mappedSegments, segment + 1);
+    }
+
+    long segmentBytes = (long) Integer.BYTES << SEGMENT_BITS;
+    // mapping extends the file, the channel is not needed afterwards
+    try (FileChannel channel = FileChannel.open(
+        path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE
+    )) {
+      mappedSegments[segment] = channel.map(
+          MapMode.READ_WRITE, segment * segmentBytes, segmentBytes
+      );
+      segments[segment] = mappedSegments[segment].asIntBuffer();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return segments[segment];
+  }
+}
@@ -0,0 +1,197 @@
+package me.ialistannen.mimadebugger.machine.device;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.concurrent.locks.LockSupport;
+import me.ialistannen.mimadebugger.exceptions.MemoryNotInitializedException;
+import me.ialistannen.mimadebugger.exceptions.MiMaException;
+import me.ialistannen.mimadebugger.exceptions.NamedExecutionError;
+import me.ialistannen.mimadebugger.machine.instructions.ImmutableInstruction;
+import me.ialistannen.mimadebugger.machine.instructions.Instruction;
+import me.ialistannen.mimadebugger.machine.instructions.MachineContext;
+import me.ialistannen.mimadebugger.util.MemoryFormat;
+
+/**
+ * A range of the memory of a machine, shared with another process through a memory mapped file.
+ *
+ * <p>The file starts with a header of big endian values, followed by one big endian int per word
+ * of the window:</p>
+ * <pre>
+ *   offset  0: long  doorbell  - incremented by the machine after it wrote the words
+ *   offset  8: long  answer    - set to the doorbell value by the peer after it processed them
+ *   offset 16: int   the first address of the window
+ *   offset 20: int   the number of words in the window
+ *   offset 24: int[] the words, sign extended {@value MemoryFormat#VALUE_LENGTH} bit values
+ * </pre>
+ *
+ * <p>The words are owned by the side that has to act next. An {@link #exchange(MachineContext)}
+ * writes the window into the file and rings the doorbell. The peer then reads and modifies the
+ * words and answers. Once the answer arrives, the machine copies the words back into its memory.
+ * The counters are accessed with release and acquire semantics, so the words are visible to the
+ * other side once it sees the new counter value.</p>
+ */
+public final class DeviceWindow {
+
+  private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(
+      long[].class, ByteOrder.BIG_ENDIAN
+  );
+
+  static final int DOORBELL_OFFSET = 0;
+  static final int ANSWER_OFFSET = 8;
+  static final int BASE_ADDRESS_OFFSET = 16;
+  static final int LENGTH_OFFSET = 20;
+  static final int WORDS_OFFSET = 24;
+
+  /**
+   * How long to spin before parking while waiting for an answer.
+   */
+  private static final int SPIN_ITERATIONS = 10_000;
+
+  private final MappedByteBuffer buffer;
+  private final int baseAddress;
+  private final int length;
+  private final long timeoutNanos;
+  private long doorbell;
+
+  private DeviceWindow(MappedByteBuffer buffer, int baseAddress, int length, Duration timeout) {
+    this.buffer = buffer;
+    this.baseAddress = baseAddress;
+    this.length = length;
+    this.timeoutNanos = timeout.toNanos();
+    this.doorbell = (long) LONGS.getAcquire(buffer, DOORBELL_OFFSET);
+  }
+
+  /**
+   * Maps a window of the memory onto a file, creating the file if needed.
+   *
+   * @param file the file to share with the peer
+   * @param baseAddress the first address of the window
+   * @param length the number of words in the window
+   * @param timeout how long to wait for the peer to answer
+   * @return the window
+   * @throws IOException if the file could not be mapped
+   * @throws IllegalArgumentException if the window does not fit into the address space
+   */
+  public static DeviceWindow open(Path file, int baseAddress, int length, Duration timeout)
+      throws IOException {
+    if (baseAddress < 0 || length <= 0
+        || (long) baseAddress + length > 1 << MemoryFormat.ADDRESS_LENGTH) {
+      throw new IllegalArgumentException(
+          "Invalid window: " + length + " words at " + baseAddress
+      );
+    }
+
+    try (FileChannel channel = FileChannel.open(
+        file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE
+    )) {
+      // the mapping stays valid after the channel is closed
+      MappedByteBuffer buffer = channel.map(
+          MapMode.READ_WRITE, 0, WORDS_OFFSET + (long) length * Integer.BYTES
+      );
+      buffer.putInt(BASE_ADDRESS_OFFSET, baseAddress);
+      buffer.putInt(LENGTH_OFFSET, length);
+
+      return new DeviceWindow(buffer, baseAddress, length, timeout);
+    }
+  }
+
+  /**
+   * Returns the first address of the window.
+   *
+   * @return the first address of the window
+   */
+  public int getBaseAddress() {
+    return baseAddress;
+  }
+
+  /**
+   * Returns the number of words in the window.
+   *
+   * @return the number of words in the window
+   */
+  public int getLength() {
+    return length;
+  }
+
+  /**
+   * Hands the window to the peer and waits for its answer.
+   *
+   * <p>Uninitialized words are passed as 0. After the answer arrived, every word of the window is
+   * initialized with the value the peer left in the file.</p>
+   *
+   * @param context the machine owning the memory
+   * @throws MiMaException if the peer did not answer in time or the thread was interrupted
+   */
+  public void exchange(MachineContext context) throws MiMaException {
+    for (int i = 0; i < length; i++) {
+      int value;
+      try {
+        value = context.getMemory(baseAddress + i);
+      } catch (MemoryNotInitializedException e) {
+        value = 0;
+      }
+      buffer.putInt(WORDS_OFFSET + i * Integer.BYTES, value);
+    }
+
+    doorbell++;
+    LONGS.setRelease(buffer, DOORBELL_OFFSET, doorbell);
+
+    awaitAnswer();
+
+    for (int i = 0; i < length; i++) {
+      context.setMemory(baseAddress + i, buffer.getInt(WORDS_OFFSET + i * Integer.BYTES));
+    }
+  }
+
+  private void awaitAnswer() throws MiMaException {
+    long deadline = System.nanoTime() + timeoutNanos;
+
+    for (int iteration = 0; (long) LONGS.getAcquire(buffer, ANSWER_OFFSET) != doorbell;
+        iteration++) {
+      if (System.nanoTime() - deadline > 0) {
+        throw new NamedExecutionError(
+            "The device did not answer doorbell " + doorbell, "Device timeout"
+        );
+      }
+      if (Thread.currentThread().isInterrupted()) {
+        throw new NamedExecutionError("Interrupted waiting for the device", "Device interrupted");
+      }
+      if (iteration < SPIN_ITERATIONS) {
+        Thread.onSpinWait();
+      } else {
+        LockSupport.parkNanos(50_000);
+      }
+    }
+  }
+
+  /**
+   * Creates an instruction without an argument, that {@link #exchange(MachineContext) exchanges}
+   * the window with the peer. Register it in an
+   * {@link me.ialistannen.mimadebugger.machine.instructions.InstructionSet} to let programs talk to
+   * the device.
+   *
+   * @param name the name of the instruction
+   * @param opcode the opcode of the instruction
+   * @return the instruction
+   */
+  public Instruction createInstruction(String name, int opcode) {
+    return ImmutableInstruction.builder()
+        .name(name)
+        .opcode(opcode)
+        .hasArgument(false)
+        .description(
+            "Hands the words " + baseAddress + " to " + (baseAddress + length - 1)
+                + " to the device and waits for its answer"
+        )
+        .machineAction((context, argument) -> exchange(context))
+        .build();
+  }
+}
@@ -0,0 +1,236 @@
+package me.ialistannen.mimadebugger.machine.fast;
+
+import java.util.Arrays;
+import me.ialistannen.mimadebugger.machine.instructions.DispatchTable;
+import me.ialistannen.mimadebugger.machine.memory.MemoryImage;
+import me.ialistannen.mimadebugger.util.MemoryFormat;
+
+/**
+ * A straight-line sequence of instructions, that {@link FastMiMa} executes as a whole.
+ *
+ * <p>A block ends after a jump, call or return, or before an instruction that is not compiled
+ * (HALT, custom instructions and anything that can not be decoded). Common instruction sequences
+ * are fused into a single superinstruction.</p>
+ *
+ * <p>A block is only valid as long as the memory it was compiled from is unchanged.</p>
+ */
+final class BasicBlock {
+
+  /**
+   * The maximum number of instructions in a single block.
+   */
+  static final int MAX_LENGTH = 64;
+
+  /**
+   * {@code LDV x; ADD y; STV z}.
+   */
+  static final int LOAD_ADD_STORE = 0x100;
+  /**
+   * {@code LDC c; ADD y; STV z}.
+   */
+  static final int LOAD_CONSTANT_ADD_STORE = 0x101;
+  /**
+   * {@code LDV x; EQL y; JMN target}.
+   */
+  static final int LOAD_EQUAL_JUMP_NEGATIVE = 0x102;
+  /**
+   * {@code LDV x; JMN target}.
+   */
+  static final int LOAD_JUMP_NEGATIVE = 0x103;
+
+  /**
+   * Marks an address, at which no block can be compiled.
+   */
+  static final BasicBlock NOT_COMPILABLE = new BasicBlock(
+      -1, new int[0], new int[0], new int[0], 0
+  );
+
+  private static final int LOAD_CONSTANT = 0x0;
+  private static final int LOAD = 0x1;
+  private static final int STORE = 0x2;
+  private static final int ADD = 0x3;
+  private static final int EQUAL = 0x7;
+  private static final int JUMP = 0x8;
+  private static final int JUMP_IF_NEGATIVE = 0x9;
+  private static final int CALL = 0xC;
+  private static final int ADD_CONSTANT = 0xD;
+  private static final int HALT = 0xF0;
+  private static final int RETURN = 0xF3;
+
+  /**
+   * The address of the first instruction.
+   */
+  final int start;
+  /**
+   * The number of instructions in this block.
+   */
+  final int length;
+  /**
+   * The number of operations (instructions or superinstructions).
+   */
+  final int operationCount;
+  final int[] operations;
+  /**
+   * The offset of the first instruction of an operation, relative to {@link #start}.
+   */
+  final int[] offsets;
+  final int[] firstArguments;
+  final int[] secondArguments;
+  final int[] thirdArguments;
+  /**
+   * The encoded instructions, indexed by their offset.
+   */
+  final int[] words;
+  /**
+   * The opcodes of the (unfused) instructions, indexed by their offset.
+   */
+  final int[] opcodes;
+  /**
+   * The arguments of the (unfused) instructions, indexed by their offset.
+   */
+  final int[] arguments;
+
+  boolean valid;
+  /**
+   * How often this block was executed by the block interpreter.
+   */
+  int executions;
+  /**
+   * The compiled code for this block or null if it was not compiled (yet).
+   */
+  CompiledBlock compiled;
+
+  private BasicBlock(int start, int[] opcodes, int[] arguments, int[] words, int length) {
+    this.start = start;
+    this.length = length;
+    this.words = Arrays.copyOf(words, length);
+    this.opcodes = Arrays.copyOf(opcodes, length);
+    this.arguments = Arrays.copyOf(arguments, length);
+    this.operations = new int[length];
+    this.offsets = new int[length];
+    this.firstArguments = new int[length];
+    this.secondArguments = new int[length];
+    this.thirdArguments = new int[length];
+    this.valid = true;
+
+    int count = 0;
+    int offset = 0;
+    while (offset < length) {
+      int fused = fuse(opcodes, offset, length);
+      int fusedLength = fused == LOAD_JUMP_NEGATIVE ? 2 : 3;
+
+      offsets[count] = offset;
+      firstArguments[count] = arguments[offset];
+
+      if (fused < 0) {
+        operations[count] = opcodes[offset];
+        offset++;
+      } else {
+        operations[count] = fused;
+        secondArguments[count] = arguments[offset + 1];
+        if (fusedLength > 2) {
+          thirdArguments[count] = arguments[offset + 2];
+        }
+        offset += fusedLength;
+      }
+      count++;
+    }
+    this.operationCount = count;
+  }
+
+  private static int fuse(int[] opcodes, int offset, int length) {
+    int first = opcodes[offset];
+    int second = offset + 1 < length ? opcodes[offset + 1] : -1;
+    int third = offset + 2 < length ? opcodes[offset + 2] : -1;
+
+    if (first == LOAD && second == ADD && third == STORE) {
+      return LOAD_ADD_STORE;
+    }
+    if (first == LOAD_CONSTANT && second == ADD && third == STORE) {
+      return LOAD_CONSTANT_ADD_STORE;
+    }
+    if (first == LOAD && second == EQUAL && third == JUMP_IF_NEGATIVE) {
+      return LOAD_EQUAL_JUMP_NEGATIVE;
+    }
+    if (first == LOAD && second == JUMP_IF_NEGATIVE) {
+      return LOAD_JUMP_NEGATIVE;
+    }
+    return -1;
+  }
+
+  /**
+   * Checks whether the given address is part of this block.
+   *
+   * @param address the address
+   * @return true if the address is part of this block
+   */
+  boolean contains(int address) {
+    return address >= start && address < start + length;
+  }
+
+  /**
+   * Compiles the block starting at the given address.
+   *
+   * @param start the address of the first instruction
+   * @param memory the memory pages
+   * @param initialized whether an address in the memory is initialized, in pages
+   * @param opcodes the builtin opcode for each large opcode or a negative value, if the
+   *     instruction is not builtin
+   * @return the compiled block or {@link #NOT_COMPILABLE} if the first instruction can not be
+   *     compiled
+   */
+  static BasicBlock compile(int start, int[][] memory, boolean[][] initialized,
+      int[] opcodes) {
+    int[] blockOpcodes = new int[MAX_LENGTH];
+    int[] blockArguments = new int[MAX_LENGTH];
+    int[] blockWords = new int[MAX_LENGTH];
+
+    int length = 0;
+    // The last address is never compiled, as falling through it overflows the instruction pointer
+    int lastAddress = (1 << MemoryFormat.ADDRESS_LENGTH) - 1;
+
+    for (int address = start; length < MAX_LENGTH && address < lastAddress; address++) {
+      int page = address >>> MemoryImage.PAGE_BITS;
+      int offset = address & MemoryImage.PAGE_MASK;
+      if (!initialized[page][offset]) {
+        break;
+      }
+      int word = memory[page][offset];
+      int opcode = opcodes[MemoryFormat.extractLargeOpcode(word)];
+      int argument = DispatchTable.argument(opcode, word);
+
+      if (opcode < 0 || opcode == HALT) {
+        break;
+      }
+      // always overflows, let the interpreter report it
+      if (opcode == ADD_CONSTANT && argument > Short.MAX_VALUE) {
+        break;
+      }
+
+      blockOpcodes[length] = opcode;
+      blockArguments[length] = argument;
+      blockWords[length] = word;
+      length++;
+
+      if (isTerminator(opcode)) {
+        break;
+      }
+    }
+
+    if (length == 0) {
+      return NOT_COMPILABLE;
+    }
+
+    return new BasicBlock(start, blockOpcodes, blockArguments, blockWords, length);
+  }
+
+  /**
+   * Checks whether an instruction ends a block.
+   *
+   * @param opcode the opcode of the instruction
+   * @return true if the instruction changes the control flow
+   */
+  static boolean isTerminator(int opcode) {
+    return opcode == JUMP || opcode == JUMP_IF_NEGATIVE || opcode == CALL || opcode == RETURN;
+  }
+}
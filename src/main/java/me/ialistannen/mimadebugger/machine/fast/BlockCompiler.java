@@ -0,0 +1,904 @@
+package me.ialistannen.mimadebugger.machine.fast;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodHandles.Lookup;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import me.ialistannen.mimadebugger.machine.memory.MemoryImage;
+
+/**
+ * Compiles {@link BasicBlock}s to JVM classes, so the JIT of the JVM can optimize hot MiMa code.
+ *
+ * <p>The registers are kept in local variables. Every instruction checks all conditions that would
+ * make it fail before changing anything and hands the instruction to the interpreter if one does
+ * not hold. Blocks jumping back to their own start are compiled to a real loop. An instruction
+ * setting the accumulator to the stop value of a run leaves the block right after it.</p>
+ *
+ * <p>The classes are written by hand (class file version 49, so no stack map frames are needed)
+ * and defined in this package with {@link Lookup#defineClass(byte[])}. As they can not be
+ * unloaded, at most {@link #MAX_GENERATED_CLASSES} classes are generated. The code of a block only
+ * depends on its address and instructions, so a class is generated once for every distinct block
+ * and shared by all machines executing it, even after they are reloaded.</p>
+ */
+final class BlockCompiler {
+
+  /**
+   * The maximum number of classes generated by this JVM.
+   */
+  static final int MAX_GENERATED_CLASSES = 8192;
+
+  private static final AtomicInteger GENERATED_CLASSES = new AtomicInteger();
+
+  /**
+   * The constructors of the generated classes, by the block they were compiled from.
+   */
+  private static final Map<BlockKey, MethodHandle> CONSTRUCTORS = new ConcurrentHashMap<>();
+
+  private static final String PACKAGE = "me/ialistannen/mimadebugger/machine/fast/";
+  private static final String COMPILED_BLOCK = PACKAGE + "CompiledBlock";
+  private static final String BASIC_BLOCK = PACKAGE + "BasicBlock";
+  private static final String FAST_MIMA = PACKAGE + "FastMiMa";
+  private static final String MEMORY_FORMAT = "me/ialistannen/mimadebugger/util/MemoryFormat";
+  private static final String LOGICAL
+      = "me/ialistannen/mimadebugger/machine/instructions/defaultinstructions/Logical";
+  private static final String OTHER
+      = "me/ialistannen/mimadebugger/machine/instructions/defaultinstructions/Other";
+
+  private static final String CONSTRUCTOR_DESCRIPTOR = "(L" + BASIC_BLOCK + ";)V";
+  private static final String EXECUTE_DESCRIPTOR = "(L" + FAST_MIMA + ";[[I[[Z[IJ)J";
+
+  private static final int ADDRESS_MASK = (1 << 20) - 1;
+
+  // local variables of the execute method
+  private static final int THIS = 0;
+  private static final int MACHINE = 1;
+  private static final int MEMORY = 2;
+  private static final int INITIALIZED = 3;
+  private static final int REGISTERS = 4;
+  private static final int MAX_STEPS = 5;
+  private static final int ACCUMULATOR = 7;
+  private static final int ALU_INPUT_LEFT = 8;
+  private static final int ALU_INPUT_RIGHT = 9;
+  private static final int INSTRUCTION = 10;
+  private static final int INSTRUCTION_POINTER = 11;
+  private static final int RETURN_ADDRESS = 12;
+  private static final int STACK_POINTER = 13;
+  private static final int FRAME_POINTER = 14;
+  private static final int EXECUTED = 15;
+  private static final int TEMP = 17;
+  private static final int STOP_ACCUMULATOR = 18;
+  private static final int LOCAL_COUNT = 19;
+
+  private static final int[][] REGISTER_LOCALS = {
+      {CompiledBlock.ACCUMULATOR, ACCUMULATOR},
+      {CompiledBlock.ALU_INPUT_LEFT, ALU_INPUT_LEFT},
+      {CompiledBlock.ALU_INPUT_RIGHT, ALU_INPUT_RIGHT},
+      {CompiledBlock.INSTRUCTION, INSTRUCTION},
+      {CompiledBlock.INSTRUCTION_POINTER, INSTRUCTION_POINTER},
+      {CompiledBlock.RETURN_ADDRESS, RETURN_ADDRESS},
+      {CompiledBlock.STACK_POINTER, STACK_POINTER},
+      {CompiledBlock.FRAME_POINTER, FRAME_POINTER},
+  };
+
+  // JVM opcodes
+  private static final int ICONST_0 = 0x03;
+  private static final int LCONST_0 = 0x09;
+  private static final int BIPUSH = 0x10;
+  private static final int SIPUSH = 0x11;
+  private static final int LDC_W = 0x13;
+  private static final int LDC2_W = 0x14;
+  private static final int ILOAD = 0x15;
+  private static final int LLOAD = 0x16;
+  private static final int ALOAD = 0x19;
+  private static final int IALOAD = 0x2e;
+  private static final int AALOAD = 0x32;
+  private static final int BALOAD = 0x33;
+  private static final int ISTORE = 0x36;
+  private static final int LSTORE = 0x37;
+  private static final int IASTORE = 0x4f;
+  private static final int IADD = 0x60;
+  private static final int LADD = 0x61;
+  private static final int LSUB = 0x65;
+  private static final int IUSHR = 0x7c;
+  private static final int IAND = 0x7e;
+  private static final int IOR = 0x80;
+  private static final int IXOR = 0x82;
+  private static final int LXOR = 0x83;
+  private static final int LCMP = 0x94;
+  private static final int IFEQ = 0x99;
+  private static final int IFNE = 0x9a;
+  private static final int IFLT = 0x9b;
+  private static final int IFGE = 0x9c;
+  private static final int IF_ICMPEQ = 0x9f;
+  private static final int IF_ICMPNE = 0xa0;
+  private static final int GOTO = 0xa7;
+  private static final int LRETURN = 0xad;
+  private static final int RETURN = 0xb1;
+  private static final int GETFIELD = 0xb4;
+  private static final int INVOKEVIRTUAL = 0xb6;
+  private static final int INVOKESPECIAL = 0xb7;
+  private static final int INVOKESTATIC = 0xb8;
+
+  private final BasicBlock block;
+  private final ConstantPool constantPool;
+  private final Code code;
+  private final Map<Integer, Label> bailouts;
+  /**
+   * Leave the block after the instruction at an offset, as a write invalidated the block or the
+   * accumulator reached the stop value.
+   */
+  private final Map<Integer, Label> earlyExits;
+  private boolean aluDirty;
+
+  private BlockCompiler(BasicBlock block) {
+    this.block = block;
+    this.constantPool = new ConstantPool();
+    this.code = new Code();
+    this.bailouts = new HashMap<>();
+    this.earlyExits = new HashMap<>();
+  }
+
+  /**
+   * Compiles the given block.
+   *
+   * @param block the block to compile
+   * @return the compiled block or null if no more classes can be generated
+   */
+  static CompiledBlock compile(BasicBlock block) {
+    BlockKey key = new BlockKey(block);
+    MethodHandle constructor = CONSTRUCTORS.get(key);
+    if (constructor == null) {
+      constructor = CONSTRUCTORS.computeIfAbsent(key, ignored -> defineClass(block));
+    }
+    if (constructor == null) {
+      return null;
+    }
+
+    try {
+      return (CompiledBlock) constructor.invoke(block);
+    } catch (Error e) {
+      throw e;
+    } catch (Throwable e) {
+      throw new IllegalStateException("Could not create compiled block", e);
+    }
+  }
+
+  private static MethodHandle defineClass(BasicBlock block) {
+    int id = GENERATED_CLASSES.getAndIncrement();
+    if (id >= MAX_GENERATED_CLASSES) {
+      return null;
+    }
+
+    String className = PACKAGE + "GeneratedBlock" + id;
+    byte[] classFile = new BlockCompiler(block).writeClass(className);
+
+    try {
+      Lookup lookup = MethodHandles.lookup();
+      Class<?> generated = lookup.defineClass(classFile);
+
+      return lookup.findConstructor(
+          generated, MethodType.methodType(void.class, BasicBlock.class)
+      );
+    } catch (ReflectiveOperationException e) {
+      throw new IllegalStateException("Could not define compiled block " + className, e);
+    }
+  }
+
+  /**
+   * Identifies the code generated for a block: its address and the instructions in it.
+   */
+  private static final class BlockKey {
+
+    private final int start;
+    private final int[] words;
+    private final int[] opcodes;
+    private final int hash;
+
+    private BlockKey(BasicBlock block) {
+      this.start = block.start;
+      this.words = block.words;
+      this.opcodes = block.opcodes;
+      this.hash = 31 * (31 * start + Arrays.hashCode(words)) + Arrays.hashCode(opcodes);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      BlockKey blockKey = (BlockKey) o;
+      return start == blockKey.start
+          && Arrays.equals(words, blockKey.words)
+          && Arrays.equals(opcodes, blockKey.opcodes);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+  }
+
+  private byte[] writeClass(String className) {
+    int thisClass = constantPool.classReference(className);
+    int superClass = constantPool.classReference(COMPILED_BLOCK);
+    int codeName = constantPool.utf8("Code");
+
+    List<byte[]> methods = new ArrayList<>();
+    methods.add(writeMethod("<init>", CONSTRUCTOR_DESCRIPTOR, codeName, writeConstructor(), 2, 2));
+    methods.add(
+        writeMethod("execute", EXECUTE_DESCRIPTOR, codeName, writeExecute(), 6, LOCAL_COUNT)
+    );
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(bytes)) {
+      out.writeInt(0xCAFEBABE);
+      out.writeShort(0);
+      out.writeShort(49);
+      constantPool.writeTo(out);
+      // ACC_FINAL | ACC_SUPER
+      out.writeShort(0x0030);
+      out.writeShort(thisClass);
+      out.writeShort(superClass);
+      // interfaces and fields
+      out.writeShort(0);
+      out.writeShort(0);
+      out.writeShort(methods.size());
+      for (byte[] method : methods) {
+        out.write(method);
+      }
+      // attributes
+      out.writeShort(0);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return bytes.toByteArray();
+  }
+
+  private byte[] writeMethod(String name, String descriptor, int codeName, byte[] code,
+      int maxStack, int maxLocals) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(bytes)) {
+      // package private, so it can override the package private method
+      out.writeShort(0);
+      out.writeShort(constantPool.utf8(name));
+      out.writeShort(constantPool.utf8(descriptor));
+      out.writeShort(1);
+
+      out.writeShort(codeName);
+      out.writeInt(12 + code.length);
+      out.writeShort(maxStack);
+      out.writeShort(maxLocals);
+      out.writeInt(code.length);
+      out.write(code);
+      // exception table and attributes
+      out.writeShort(0);
+      out.writeShort(0);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return bytes.toByteArray();
+  }
+
+  private byte[] writeConstructor() {
+    Code constructor = new Code();
+    constructor.variable(ALOAD, 0);
+    constructor.variable(ALOAD, 1);
+    constructor.op(INVOKESPECIAL);
+    constructor.u2(constantPool.methodReference(COMPILED_BLOCK, "<init>", CONSTRUCTOR_DESCRIPTOR));
+    constructor.op(RETURN);
+    return constructor.toByteArray();
+  }
+
+  private byte[] writeExecute() {
+    for (int[] register : REGISTER_LOCALS) {
+      code.variable(ALOAD, REGISTERS);
+      pushInt(register[0]);
+      code.op(IALOAD);
+      code.variable(ISTORE, register[1]);
+    }
+    code.variable(ALOAD, REGISTERS);
+    pushInt(CompiledBlock.STOP_ACCUMULATOR);
+    code.op(IALOAD);
+    code.variable(ISTORE, STOP_ACCUMULATOR);
+    code.op(LCONST_0);
+    code.variable(LSTORE, EXECUTED);
+
+    Label top = new Label();
+    Label exit = new Label();
+    code.mark(top);
+    aluDirty = true;
+
+    for (int offset = 0; offset < block.length; offset++) {
+      writeInstruction(offset);
+      // The end of the block is checked by the machine and terminators do not set it
+      if (offset < block.length - 1 && setsAccumulator(block.opcodes[offset])) {
+        code.variable(ILOAD, ACCUMULATOR);
+        code.variable(ILOAD, STOP_ACCUMULATOR);
+        code.jump(IF_ICMPEQ, earlyExits.computeIfAbsent(offset, ignored -> new Label()));
+      }
+    }
+
+    int last = block.opcodes[block.length - 1];
+    if (!BasicBlock.isTerminator(last)) {
+      pushInt(block.start + block.length);
+      code.variable(ISTORE, INSTRUCTION_POINTER);
+    }
+    addExecuted(block.length);
+    pushInt(block.words[block.length - 1]);
+    code.variable(ISTORE, INSTRUCTION);
+
+    if (BasicBlock.isTerminator(last)) {
+      // ip == start && maxSteps - executed >= length
+      code.variable(ILOAD, INSTRUCTION_POINTER);
+      pushInt(block.start);
+      code.jump(IF_ICMPNE, exit);
+      code.variable(LLOAD, MAX_STEPS);
+      code.variable(LLOAD, EXECUTED);
+      code.op(LSUB);
+      pushLong(block.length);
+      code.op(LCMP);
+      code.jump(IFLT, exit);
+      code.jump(GOTO, top);
+    }
+
+    code.mark(exit);
+    writeExit(false);
+
+    for (Map.Entry<Integer, Label> entry : bailouts.entrySet()) {
+      int offset = entry.getKey();
+      code.mark(entry.getValue());
+      pushInt(block.start + offset);
+      code.variable(ISTORE, INSTRUCTION_POINTER);
+      if (offset > 0) {
+        addExecuted(offset);
+        pushInt(block.words[offset - 1]);
+        code.variable(ISTORE, INSTRUCTION);
+      }
+      writeExit(true);
+    }
+
+    for (Map.Entry<Integer, Label> entry : earlyExits.entrySet()) {
+      int offset = entry.getKey();
+      code.mark(entry.getValue());
+      pushInt(block.start + offset + 1);
+      code.variable(ISTORE, INSTRUCTION_POINTER);
+      addExecuted(offset + 1);
+      pushInt(block.words[offset]);
+      code.variable(ISTORE, INSTRUCTION);
+      code.jump(GOTO, exit);
+    }
+
+    return code.toByteArray();
+  }
+
+  private void writeExit(boolean bailout) {
+    for (int[] register : REGISTER_LOCALS) {
+      code.variable(ALOAD, REGISTERS);
+      pushInt(register[0]);
+      code.variable(ILOAD, register[1]);
+      code.op(IASTORE);
+    }
+    code.variable(LLOAD, EXECUTED);
+    if (bailout) {
+      pushLong(-1);
+      code.op(LXOR);
+    }
+    code.op(LRETURN);
+  }
+
+  private void writeInstruction(int offset) {
+    int opcode = block.opcodes[offset];
+    int argument = block.arguments[offset];
+    int address = block.start + offset;
+
+    switch (opcode) {
+      case 0x0:
+        resetAlu();
+        pushInt(argument);
+        code.variable(ISTORE, ACCUMULATOR);
+        break;
+      case 0x1:
+        guardInitialized(offset, argument);
+        resetAlu();
+        loadMemory(argument);
+        code.variable(ISTORE, ACCUMULATOR);
+        break;
+      case 0x2:
+        resetAlu();
+        pushInt(argument);
+        code.variable(ISTORE, TEMP);
+        store(offset);
+        break;
+      case 0x3:
+        guardInitialized(offset, argument);
+        loadMemory(argument);
+        code.variable(ISTORE, TEMP);
+        code.variable(ILOAD, ACCUMULATOR);
+        code.variable(ISTORE, ALU_INPUT_LEFT);
+        code.variable(ILOAD, TEMP);
+        code.variable(ISTORE, ALU_INPUT_RIGHT);
+        code.variable(ILOAD, ACCUMULATOR);
+        code.variable(ILOAD, TEMP);
+        code.op(IADD);
+        coerceToValue();
+        code.variable(ISTORE, ACCUMULATOR);
+        aluDirty = true;
+        break;
+      case 0x4:
+        writeLogical(offset, argument, IAND);
+        break;
+      case 0x5:
+        writeLogical(offset, argument, IOR);
+        break;
+      case 0x6:
+        writeLogical(offset, argument, IXOR);
+        break;
+      case 0x7: {
+        guardInitialized(offset, argument);
+        resetAlu();
+        Label notEqual = new Label();
+        Label done = new Label();
+        code.variable(ILOAD, ACCUMULATOR);
+        loadMemory(argument);
+        code.jump(IF_ICMPNE, notEqual);
+        pushInt(-1);
+        code.variable(ISTORE, ACCUMULATOR);
+        code.jump(GOTO, done);
+        code.mark(notEqual);
+        pushInt(0);
+        code.variable(ISTORE, ACCUMULATOR);
+        code.mark(done);
+        break;
+      }
+      case 0x8:
+        resetAlu();
+        pushInt(argument);
+        code.variable(ISTORE, INSTRUCTION_POINTER);
+        break;
+      case 0x9: {
+        resetAlu();
+        Label notTaken = new Label();
+        Label done = new Label();
+        code.variable(ILOAD, ACCUMULATOR);
+        code.jump(IFGE, notTaken);
+        pushInt(argument);
+        code.variable(ISTORE, INSTRUCTION_POINTER);
+        code.jump(GOTO, done);
+        code.mark(notTaken);
+        pushInt(address + 1);
+        code.variable(ISTORE, INSTRUCTION_POINTER);
+        code.mark(done);
+        break;
+      }
+      case 0xA:
+        guardInitialized(offset, argument);
+        loadMemory(argument);
+        code.variable(ISTORE, TEMP);
+        guardAddress(offset, TEMP);
+        guardVariableInitialized(offset, TEMP);
+        resetAlu();
+        loadVariableMemory(TEMP);
+        code.variable(ISTORE, ACCUMULATOR);
+        break;
+      case 0xB:
+        guardInitialized(offset, argument);
+        loadMemory(argument);
+        code.variable(ISTORE, TEMP);
+        guardAddress(offset, TEMP);
+        resetAlu();
+        store(offset);
+        break;
+      case 0xC:
+        resetAlu();
+        pushInt(address + 1);
+        code.variable(ISTORE, RETURN_ADDRESS);
+        pushInt(argument);
+        code.variable(ISTORE, INSTRUCTION_POINTER);
+        break;
+      case 0xD:
+        // the block compiler only accepts arguments in range
+        resetAlu();
+        code.variable(ILOAD, ACCUMULATOR);
+        pushInt(argument);
+        code.op(IADD);
+        code.variable(ISTORE, ACCUMULATOR);
+        break;
+      case 0xF1:
+        resetAlu();
+        code.variable(ILOAD, ACCUMULATOR);
+        code.op(INVOKESTATIC);
+        code.u2(constantPool.methodReference(LOGICAL, "not", "(I)I"));
+        code.variable(ISTORE, ACCUMULATOR);
+        break;
+      case 0xF2:
+        resetAlu();
+        code.variable(ILOAD, ACCUMULATOR);
+        code.op(INVOKESTATIC);
+        code.u2(constantPool.methodReference(OTHER, "rotateRight", "(I)I"));
+        code.variable(ISTORE, ACCUMULATOR);
+        break;
+      case 0xF3:
+        guardAddress(offset, RETURN_ADDRESS);
+        resetAlu();
+        code.variable(ILOAD, RETURN_ADDRESS);
+        code.variable(ISTORE, INSTRUCTION_POINTER);
+        break;
+      case 0xF4:
+        copyRegister(RETURN_ADDRESS, ACCUMULATOR);
+        break;
+      case 0xF5:
+        guardAddress(offset, ACCUMULATOR);
+        copyRegister(ACCUMULATOR, RETURN_ADDRESS);
+        break;
+      case 0xF6:
+        copyRegister(STACK_POINTER, ACCUMULATOR);
+        break;
+      case 0xF7:
+        guardAddress(offset, ACCUMULATOR);
+        copyRegister(ACCUMULATOR, STACK_POINTER);
+        break;
+      case 0xF8:
+        copyRegister(FRAME_POINTER, ACCUMULATOR);
+        break;
+      case 0xF9:
+        guardAddress(offset, ACCUMULATOR);
+        copyRegister(ACCUMULATOR, FRAME_POINTER);
+        break;
+      // The frame relative instructions address relative to the stack pointer as well
+      case 0xFA:
+      case 0xFC:
+        stackAddress(argument);
+        guardAddress(offset, TEMP);
+        guardVariableInitialized(offset, TEMP);
+        resetAlu();
+        loadVariableMemory(TEMP);
+        code.variable(ISTORE, ACCUMULATOR);
+        break;
+      case 0xFB:
+      case 0xFD:
+        stackAddress(argument);
+        guardAddress(offset, TEMP);
+        resetAlu();
+        store(offset);
+        break;
+      default:
+        throw new IllegalArgumentException("Can not compile opcode " + opcode);
+    }
+  }
+
+  private static boolean setsAccumulator(int opcode) {
+    switch (opcode) {
+      case 0x2:
+      case 0x8:
+      case 0x9:
+      case 0xB:
+      case 0xC:
+      case 0xF3:
+      case 0xF5:
+      case 0xF7:
+      case 0xF9:
+      case 0xFB:
+      case 0xFD:
+        return false;
+      default:
+        return true;
+    }
+  }
+
+  private void writeLogical(int offset, int argument, int operation) {
+    guardInitialized(offset, argument);
+    resetAlu();
+    code.variable(ILOAD, ACCUMULATOR);
+    loadMemory(argument);
+    code.op(operation);
+    coerceToValue();
+    code.variable(ISTORE, ACCUMULATOR);
+  }
+
+  private void copyRegister(int from, int to) {
+    resetAlu();
+    code.variable(ILOAD, from);
+    code.variable(ISTORE, to);
+  }
+
+  private void stackAddress(int argument) {
+    code.variable(ILOAD, STACK_POINTER);
+    pushInt(argument);
+    code.op(IADD);
+    code.variable(ISTORE, TEMP);
+  }
+
+  /**
+   * Stores the accumulator at the address in {@link #TEMP} and leaves the block if it was
+   * overwritten.
+   */
+  private void store(int offset) {
+    code.variable(ALOAD, MACHINE);
+    code.variable(ILOAD, TEMP);
+    code.variable(ILOAD, ACCUMULATOR);
+    code.op(INVOKEVIRTUAL);
+    code.u2(constantPool.methodReference(FAST_MIMA, "storeWord", "(II)V"));
+
+    code.variable(ALOAD, THIS);
+    code.op(GETFIELD);
+    code.u2(constantPool.fieldReference(COMPILED_BLOCK, "block", "L" + BASIC_BLOCK + ";"));
+    code.op(GETFIELD);
+    code.u2(constantPool.fieldReference(BASIC_BLOCK, "valid", "Z"));
+    code.jump(IFEQ, earlyExits.computeIfAbsent(offset, ignored -> new Label()));
+  }
+
+  private void guardInitialized(int offset, int address) {
+    code.variable(ALOAD, INITIALIZED);
+    pushInt(address >>> MemoryImage.PAGE_BITS);
+    code.op(AALOAD);
+    pushInt(address & MemoryImage.PAGE_MASK);
+    code.op(BALOAD);
+    code.jump(IFEQ, bailout(offset));
+  }
+
+  private void guardVariableInitialized(int offset, int addressVariable) {
+    code.variable(ALOAD, INITIALIZED);
+    pushPage(addressVariable);
+    code.op(BALOAD);
+    code.jump(IFEQ, bailout(offset));
+  }
+
+  /**
+   * Selects the page of a variable address from the page table on the stack and pushes the offset
+   * into it.
+   */
+  private void pushPage(int addressVariable) {
+    code.variable(ILOAD, addressVariable);
+    pushInt(MemoryImage.PAGE_BITS);
+    code.op(IUSHR);
+    code.op(AALOAD);
+    code.variable(ILOAD, addressVariable);
+    pushInt(MemoryImage.PAGE_MASK);
+    code.op(IAND);
+  }
+
+  private void guardAddress(int offset, int variable) {
+    code.variable(ILOAD, variable);
+    pushInt(~ADDRESS_MASK);
+    code.op(IAND);
+    code.jump(IFNE, bailout(offset));
+  }
+
+  private Label bailout(int offset) {
+    return bailouts.computeIfAbsent(offset, ignored -> new Label());
+  }
+
+  private void loadMemory(int address) {
+    code.variable(ALOAD, MEMORY);
+    pushInt(address >>> MemoryImage.PAGE_BITS);
+    code.op(AALOAD);
+    pushInt(address & MemoryImage.PAGE_MASK);
+    code.op(IALOAD);
+  }
+
+  private void loadVariableMemory(int addressVariable) {
+    code.variable(ALOAD, MEMORY);
+    pushPage(addressVariable);
+    code.op(IALOAD);
+  }
+
+  private void coerceToValue() {
+    code.op(INVOKESTATIC);
+    code.u2(constantPool.methodReference(MEMORY_FORMAT, "coerceToValue", "(I)I"));
+  }
+
+  private void resetAlu() {
+    if (!aluDirty) {
+      return;
+    }
+    pushInt(0);
+    code.variable(ISTORE, ALU_INPUT_LEFT);
+    pushInt(0);
+    code.variable(ISTORE, ALU_INPUT_RIGHT);
+    aluDirty = false;
+  }
+
+  private void addExecuted(int steps) {
+    code.variable(LLOAD, EXECUTED);
+    pushLong(steps);
+    code.op(LADD);
+    code.variable(LSTORE, EXECUTED);
+  }
+
+  private void pushInt(int value) {
+    if (value >= -1 && value <= 5) {
+      code.op(ICONST_0 + value);
+    } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+      code.op(BIPUSH);
+      code.u1(value);
+    } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+      code.op(SIPUSH);
+      code.u2(value);
+    } else {
+      code.op(LDC_W);
+      code.u2(constantPool.integer(value));
+    }
+  }
+
+  private void pushLong(long value) {
+    if (value == 0 || value == 1) {
+      code.op(LCONST_0 + (int) value);
+    } else {
+      code.op(LDC2_W);
+      code.u2(constantPool.longValue(value));
+    }
+  }
+
+  /**
+   * A position in the code, that can be jumped to before it is known.
+   */
+  private static final class Label {
+
+    private int position = -1;
+    private final List<Integer> jumps = new ArrayList<>();
+  }
+
+  /**
+   * The bytecode of a single method.
+   */
+  private static final class Code {
+
+    private byte[] bytes = new byte[256];
+    private int size;
+    private final List<Label> labels = new ArrayList<>();
+
+    void op(int opcode) {
+      u1(opcode);
+    }
+
+    void variable(int opcode, int index) {
+      u1(opcode);
+      u1(index);
+    }
+
+    void jump(int opcode, Label label) {
+      if (label.jumps.isEmpty()) {
+        labels.add(label);
+      }
+      label.jumps.add(size);
+      u1(opcode);
+      u2(0);
+    }
+
+    void mark(Label label) {
+      label.position = size;
+    }
+
+    void u1(int value) {
+      if (size == bytes.length) {
+        bytes = Arrays.copyOf(bytes, bytes.length * 2);
+      }
+      bytes[size++] = (byte) value;
+    }
+
+    void u2(int value) {
+      u1(value >>> 8);
+      u1(value);
+    }
+
+    byte[] toByteArray() {
+      for (Label label : labels) {
+        for (int jump : label.jumps) {
+          int delta = label.position - jump;
+          if (label.position < 0 || delta != (short) delta) {
+            throw new IllegalStateException("Can not resolve jump at " + jump);
+          }
+          bytes[jump + 1] = (byte) (delta >>> 8);
+          bytes[jump + 2] = (byte) delta;
+        }
+      }
+      return Arrays.copyOf(bytes, size);
+    }
+  }
+
+  /**
+   * The constant pool of a class file, reusing equal entries.
+   */
+  private static final class ConstantPool {
+
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    private final DataOutputStream out = new DataOutputStream(bytes);
+    private final Map<String, Integer> indices = new HashMap<>();
+    private int count = 1;
+
+    int utf8(String value) {
+      return entry("utf8:" + value, 1, () -> {
+        out.writeByte(1);
+        out.writeUTF(value);
+      });
+    }
+
+    int integer(int value) {
+      return entry("int:" + value, 1, () -> {
+        out.writeByte(3);
+        out.writeInt(value);
+      });
+    }
+
+    int longValue(long value) {
+      return entry("long:" + value, 2, () -> {
+        out.writeByte(5);
+        out.writeLong(value);
+      });
+    }
+
+    int classReference(String internalName) {
+      int name = utf8(internalName);
+      return entry("class:" + internalName, 1, () -> {
+        out.writeByte(7);
+        out.writeShort(name);
+      });
+    }
+
+    int fieldReference(String owner, String name, String descriptor) {
+      return memberReference(9, owner, name, descriptor);
+    }
+
+    int methodReference(String owner, String name, String descriptor) {
+      return memberReference(10, owner, name, descriptor);
+    }
+
+    private int memberReference(int tag, String owner, String name, String descriptor) {
+      int ownerClass = classReference(owner);
+      int nameIndex = utf8(name);
+      int descriptorIndex = utf8(descriptor);
+      int nameAndType = entry("nat:" + name + ":" + descriptor, 1, () -> {
+        out.writeByte(12);
+        out.writeShort(nameIndex);
+        out.writeShort(descriptorIndex);
+      });
+
+      return entry(tag + ":" + owner + "." + name + ":" + descriptor, 1, () -> {
+        out.writeByte(tag);
+        out.writeShort(ownerClass);
+        out.writeShort(nameAndType);
+      });
+    }
+
+    private int entry(String key, int slots, Writer writer) {
+      Integer existing = indices.get(key);
+      if (existing != null) {
+        return existing;
+      }
+      try {
+        writer.write();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      int index = count;
+      count += slots;
+      indices.put(key, index);
+      return index;
+    }
+
+    void writeTo(DataOutputStream target) throws IOException {
+      out.flush();
+      target.writeShort(count);
+      bytes.writeTo(target);
+    }
+
+    private interface Writer {
+
+      void write() throws IOException;
+    }
+  }
+}
@@ -0,0 +1,48 @@
+package me.ialistannen.mimadebugger.machine.fast;
+
+/**
+ * A {@link BasicBlock}, that was compiled to JVM bytecode by the {@link BlockCompiler}.
+ */
+abstract class CompiledBlock {
+
+  static final int ACCUMULATOR = 0;
+  static final int ALU_INPUT_LEFT = 1;
+  static final int ALU_INPUT_RIGHT = 2;
+  static final int INSTRUCTION = 3;
+  static final int INSTRUCTION_POINTER = 4;
+  static final int RETURN_ADDRESS = 5;
+  static final int STACK_POINTER = 6;
+  static final int FRAME_POINTER = 7;
+  /**
+   * Not a register: the code leaves the block after an instruction setting the accumulator to
+   * this value.
+   */
+  static final int STOP_ACCUMULATOR = 8;
+  static final int SLOT_COUNT = 9;
+
+  /**
+   * The block this code was compiled from. The code stops as soon as it is no longer valid.
+   */
+  final BasicBlock block;
+
+  CompiledBlock(BasicBlock block) {
+    this.block = block;
+  }
+
+  /**
+   * Executes the block. If it jumps back to its own start, it is repeated as long as the step
+   * budget allows it.
+   *
+   * @param machine the machine to write memory through
+   * @param memory the memory pages of the machine
+   * @param initialized whether an address in the memory is initialized, in pages
+   * @param registers the registers and the {@link #STOP_ACCUMULATOR}, indexed by the constants in
+   *     this class. Read before and written after executing
+   * @param maxSteps the maximum amount of steps to execute, at least the length of the block
+   * @return the number of executed steps or its bitwise complement, if the next instruction can
+   *     not be executed by the compiled code and must be handed to the interpreter. Fewer steps
+   *     than possible are executed, if an instruction set the accumulator to the stop value
+   */
+  abstract long execute(FastMiMa machine, int[][] memory, boolean[][] initialized,
+      int[] registers, long maxSteps);
+}
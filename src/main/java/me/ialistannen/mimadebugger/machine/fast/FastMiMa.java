@@ -0,0 +1,1472 @@
+package me.ialistannen.mimadebugger.machine.fast;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.OptionalInt;
+import me.ialistannen.mimadebugger.exceptions.InstructionNotFoundException;
+import me.ialistannen.mimadebugger.exceptions.MemoryNotInitializedException;
+import me.ialistannen.mimadebugger.exceptions.MiMaException;
+import me.ialistannen.mimadebugger.exceptions.NumberOverflowException;
+import me.ialistannen.mimadebugger.exceptions.ProgramHaltException;
+import me.ialistannen.mimadebugger.machine.ExecutionStatus;
+import me.ialistannen.mimadebugger.machine.FaultType;
+import me.ialistannen.mimadebugger.machine.ImmutableState;
+import me.ialistannen.mimadebugger.machine.MiMa;
+import me.ialistannen.mimadebugger.machine.State;
+import me.ialistannen.mimadebugger.machine.instructions.DispatchTable;
+import me.ialistannen.mimadebugger.machine.instructions.Instruction;
+import me.ialistannen.mimadebugger.machine.instructions.InstructionSet;
+import me.ialistannen.mimadebugger.machine.instructions.MachineContext;
+import me.ialistannen.mimadebugger.machine.instructions.defaultinstructions.Logical;
+import me.ialistannen.mimadebugger.machine.instructions.defaultinstructions.Other;
+import me.ialistannen.mimadebugger.machine.memory.ImmutableRegisters;
+import me.ialistannen.mimadebugger.machine.memory.MainMemory;
+import me.ialistannen.mimadebugger.machine.memory.MemoryImage;
+import me.ialistannen.mimadebugger.util.MemoryFormat;
+
+/**
+ * A mutable MiMa, that keeps its registers in primitive fields and its memory in flat pages.
+ *
+ * <p>It is the engine behind {@link MiMa} and does not allocate anything while stepping. A
+ * {@link State} is only created when {@link #toState()} is called.</p>
+ *
+ * <p>Instructions from the default instruction set are executed directly, all others are executed
+ * through a {@link MachineContext}. Decoded instructions are cached per address until the address
+ * is written to, so self-modifying programs work as expected.</p>
+ */
+public class FastMiMa {
+
+  private static final int MEMORY_SIZE = 1 << MemoryFormat.ADDRESS_LENGTH;
+  private static final int OPCODE_COUNT = 256;
+
+  private static final int NO_INSTRUCTION = -1;
+  private static final int CUSTOM_INSTRUCTION = -2;
+  private static final int NOT_DECODED = -1;
+  private static final int ADDRESS_MASK = MEMORY_SIZE - 1;
+  private static final int NO_JUMP = -1;
+
+  private static final int BITMAP_PAGE_SIZE = MemoryImage.PAGE_SIZE / Long.SIZE;
+
+  /**
+   * How often a block is executed by the block interpreter before it is compiled to bytecode.
+   */
+  private static final int DEFAULT_COMPILE_THRESHOLD = 1000;
+
+  private static final Instruction[] BUILTIN_INSTRUCTIONS = builtinInstructions();
+
+  private final InstructionSet instructionSet;
+  private final int[] opcodes;
+  private final Instruction[] instructions;
+
+  /**
+   * The memory in pages of {@link MemoryImage#PAGE_SIZE} words. Pages are shared with the
+   * {@link MemoryImage} of the loaded state and copied before they are first written to.
+   */
+  private final int[][] memory;
+  private final boolean[][] initialized;
+  /**
+   * Whether a page of {@link #memory} and {@link #initialized} was copied by this MiMa.
+   */
+  private final boolean[] ownedPages;
+  /**
+   * The decoded instruction ({@code opcode << 20 | argument}) for every address, filled lazily
+   * when it is executed and cleared when it is written to. Pages are allocated on first use.
+   */
+  private final int[][] decoded;
+
+  /**
+   * The compiled {@link BasicBlock}s by their start address, in lazily allocated pages.
+   */
+  private final BasicBlock[][] blocks;
+  /**
+   * One bit per address, set if the address might be part of a compiled block. The bitmap of a
+   * page is allocated when the first block covering it is compiled.
+   */
+  private final long[][] blockAddresses;
+  private final int compileThreshold;
+  private final int[] compiledRegisters;
+  /**
+   * Exposes this machine to custom instructions, without copying it into a {@link State}.
+   */
+  private final MachineContext context = new Context();
+
+  /**
+   * The memory of the last loaded or created {@link State}, which new snapshots are derived from.
+   */
+  private MainMemory snapshotMemory;
+  /**
+   * One bit per address, set if it was written since {@link #snapshotMemory} was taken. The bitmap
+   * of a page is allocated on the first write to it.
+   */
+  private final long[][] dirtyAddresses;
+  private int[] dirtyList;
+  private int dirtyCount;
+  /**
+   * The pages with anything allocated or owned in the tables above, as a list and as one bit per
+   * page. Only these have to be reset when a new image is loaded.
+   */
+  private final long[] usedPageBits;
+  private int[] usedPages;
+  private int usedPageCount;
+
+  private long stepCount;
+
+  /**
+   * Describes the last HALT or fault, see {@link #createException()}.
+   */
+  private FaultType faultType;
+  private int faultValue;
+  private int faultLength;
+  private MiMaException instructionError;
+
+  /**
+   * The registers changed by a step, as they were before the last step that did not complete.
+   */
+  private int incompleteStepInstruction;
+  private int incompleteStepInstructionPointer;
+  private int incompleteStepAluInputLeft;
+  private int incompleteStepAluInputRight;
+  /**
+   * The memory writes of custom instructions in the current step, as triples of address, previous
+   * value and whether it was initialized, so {@link #revertIncompleteStep()} can undo them.
+   */
+  private int[] undoLog;
+  private int undoCount;
+
+  private int accumulator;
+  private int aluInputLeft;
+  private int aluInputRight;
+  private int instruction;
+  private int instructionPointer;
+  private int returnAddress;
+  private int stackPointer;
+  private int framePointer;
+
+  /**
+   * Creates a new FastMiMa.
+   *
+   * @param initialState the initial state
+   * @param instructionSet the {@link InstructionSet} to use. Instructions registered after this
+   *     call are not known to this MiMa
+   */
+  public FastMiMa(State initialState, InstructionSet instructionSet) {
+    this(initialState, instructionSet, DEFAULT_COMPILE_THRESHOLD);
+  }
+
+  /**
+   * Creates a new FastMiMa.
+   *
+   * @param initialState the initial state
+   * @param instructionSet the {@link InstructionSet} to use
+   * @param compileThreshold how often a block is executed before it is compiled to bytecode
+   */
+  FastMiMa(State initialState, InstructionSet instructionSet, int compileThreshold) {
+    this.compileThreshold = compileThreshold;
+    this.compiledRegisters = new int[CompiledBlock.SLOT_COUNT];
+    this.instructionSet = instructionSet;
+    this.opcodes = new int[OPCODE_COUNT];
+    this.instructions = new Instruction[OPCODE_COUNT];
+    this.memory = new int[MemoryImage.PAGE_COUNT][];
+    this.initialized = new boolean[MemoryImage.PAGE_COUNT][];
+    this.ownedPages = new boolean[MemoryImage.PAGE_COUNT];
+    this.decoded = new int[MemoryImage.PAGE_COUNT][];
+    this.blocks = new BasicBlock[MemoryImage.PAGE_COUNT][];
+    this.blockAddresses = new long[MemoryImage.PAGE_COUNT][];
+    this.dirtyAddresses = new long[MemoryImage.PAGE_COUNT][];
+    this.dirtyList = new int[64];
+    this.usedPageBits = new long[MemoryImage.PAGE_COUNT / Long.SIZE];
+    this.usedPages = new int[16];
+    this.undoLog = new int[3 * 8];
+
+    buildOpcodeTable();
+    load(initialState);
+  }
+
+  private void buildOpcodeTable() {
+    DispatchTable dispatchTable = instructionSet.getDispatchTable();
+
+    for (int largeOpcode = 0; largeOpcode < OPCODE_COUNT; largeOpcode++) {
+      Instruction found = dispatchTable.instruction(largeOpcode << 16);
+
+      instructions[largeOpcode] = found;
+
+      if (found == null) {
+        opcodes[largeOpcode] = NO_INSTRUCTION;
+      } else if (BUILTIN_INSTRUCTIONS[found.opcode()] == found) {
+        opcodes[largeOpcode] = found.opcode();
+      } else {
+        opcodes[largeOpcode] = CUSTOM_INSTRUCTION;
+      }
+    }
+  }
+
+  /**
+   * Performs a single calculation step.
+   *
+   * <p>If this method throws an exception, the machine is left in the same state a {@link MiMa}
+   * would be in.</p>
+   *
+   * @throws InstructionNotFoundException if an instruction was not found
+   * @throws MiMaException if an instruction throws it
+   */
+  public void step() throws MiMaException {
+    if (tryStep() != ExecutionStatus.RUNNING) {
+      throw createException();
+    }
+  }
+
+  /**
+   * Performs a single calculation step, reporting a HALT or a fault as a status instead of
+   * throwing an exception.
+   *
+   * <p>If the step did not complete, the machine is left in the same state a {@link MiMa} would
+   * be in after throwing. The fault is described by {@link #getFaultType()},
+   * {@link #getFaultValue()} and {@link #getFaultLength()}.</p>
+   *
+   * @return the status after the step
+   */
+  public ExecutionStatus tryStep() {
+    int address = instructionPointer;
+    int previousInstruction = instruction;
+    int previousAluInputLeft = aluInputLeft;
+    int previousAluInputRight = aluInputRight;
+    ExecutionStatus status;
+    undoCount = 0;
+
+    if ((address & ~ADDRESS_MASK) != 0) {
+      status = fault(FaultType.NUMBER_OVERFLOW, address, MemoryFormat.ADDRESS_LENGTH);
+    } else if (decodedAt(address) == NOT_DECODED) {
+      status = stepUncached(address);
+    } else {
+      int decodedInstruction = decodedAt(address);
+      instruction = read(address);
+
+      // Increment IP and reset ALU, before executing so jumps work correctly
+      instructionPointer++;
+      aluInputLeft = 0;
+      aluInputRight = 0;
+
+      status = execute(decodedInstruction >>> 20, decodedInstruction & 0xfffff);
+    }
+
+    if (status == ExecutionStatus.RUNNING) {
+      stepCount++;
+    } else {
+      incompleteStepInstruction = previousInstruction;
+      incompleteStepInstructionPointer = address;
+      incompleteStepAluInputLeft = previousAluInputLeft;
+      incompleteStepAluInputRight = previousAluInputRight;
+    }
+    return status;
+  }
+
+  /**
+   * Reverts the changes of the last step, that did not complete.
+   *
+   * <p>A step that halts or faults leaves the machine in the same state a {@link MiMa} would be
+   * in, i.e. with the instruction fetched and the instruction pointer incremented. This restores
+   * the state after the last completed step instead. Memory written by a custom instruction
+   * before it failed is restored as well.</p>
+   *
+   * <p>Must only be called directly after {@link #tryStep()} or {@link #tryRun(long)} did not
+   * return {@link ExecutionStatus#RUNNING}.</p>
+   */
+  public void revertIncompleteStep() {
+    instruction = incompleteStepInstruction;
+    instructionPointer = incompleteStepInstructionPointer;
+    aluInputLeft = incompleteStepAluInputLeft;
+    aluInputRight = incompleteStepAluInputRight;
+
+    for (int i = undoCount - 3; i >= 0; i -= 3) {
+      int address = undoLog[i];
+      storeWord(address, undoLog[i + 1]);
+      if (undoLog[i + 2] == 0) {
+        initialized[address >>> MemoryImage.PAGE_BITS][address & MemoryImage.PAGE_MASK] = false;
+      }
+    }
+    undoCount = 0;
+  }
+
+  /**
+   * Executes up to the given amount of steps.
+   *
+   * <p>Straight-line code is compiled to {@link BasicBlock}s on first execution and then executed
+   * a block at a time. Hot blocks are compiled to bytecode by the {@link BlockCompiler}. The result
+   * is the same as calling {@link #step()} repeatedly.</p>
+   *
+   * @param maxSteps the maximum amount of steps to execute
+   * @throws MiMaException if a step throws one. The machine is left in the same state
+   *     {@link #step()} would leave it in
+   */
+  public void run(long maxSteps) throws MiMaException {
+    if (tryRun(maxSteps) != ExecutionStatus.RUNNING) {
+      throw createException();
+    }
+  }
+
+  /**
+   * Executes up to the given amount of steps, stopping early if the program halts or faults.
+   *
+   * <p>Like {@link #tryStep()}, this method reports a HALT or a fault as a status.</p>
+   *
+   * @param maxSteps the maximum amount of steps to execute
+   * @return the status after the last executed step
+   * @see #run(long)
+   */
+  public ExecutionStatus tryRun(long maxSteps) {
+    return tryRun(maxSteps, null, OptionalInt.empty());
+  }
+
+  /**
+   * Executes up to the given amount of steps, stopping early if the program halts or faults, or
+   * after a step reaching a breakpoint or setting the accumulator to a given value.
+   *
+   * <p>Blocks are still executed as a whole, unless a breakpoint is inside of them. They are left
+   * early if an instruction sets the accumulator to the stop value. The result is the same as
+   * calling {@link #tryStep()} repeatedly and checking both after every step, the state before
+   * the first step is not checked.</p>
+   *
+   * @param maxSteps the maximum amount of steps to execute
+   * @param breakpoints the addresses to stop at, checked against the instruction pointer after
+   *     every step, or null if there are none
+   * @param stopAccumulator the accumulator value to stop at, if any
+   * @return the status after the last executed step. {@link ExecutionStatus#RUNNING} if the run
+   *     stopped at a breakpoint, the stop value or after the maximum amount of steps
+   */
+  public ExecutionStatus tryRun(long maxSteps, BitSet breakpoints, OptionalInt stopAccumulator) {
+    BitSet activeBreakpoints = breakpoints == null || breakpoints.isEmpty() ? null : breakpoints;
+    boolean stopOnAccumulator = stopAccumulator.isPresent();
+    // Any value works if there is none, a compiled block leaving early only costs a bit of time
+    compiledRegisters[CompiledBlock.STOP_ACCUMULATOR] = stopAccumulator.orElse(Integer.MIN_VALUE);
+    long remaining = maxSteps;
+
+    while (remaining > 0) {
+      BasicBlock block = blockAt(instructionPointer);
+
+      // Only the first step can start with the stop value, blocks only check after instructions
+      if (block == null || block.length > remaining
+          || stopOnAccumulator && accumulator == stopAccumulator.getAsInt()
+          || activeBreakpoints != null && containsBreakpoint(block, activeBreakpoints)) {
+        ExecutionStatus status = tryStep();
+        if (status != ExecutionStatus.RUNNING) {
+          return status;
+        }
+        remaining--;
+        if (shouldStop(activeBreakpoints, stopAccumulator)) {
+          return ExecutionStatus.RUNNING;
+        }
+        continue;
+      }
+
+      // A loop must not jump back to a breakpoint at its start without stopping
+      long blockSteps = activeBreakpoints != null && activeBreakpoints.get(block.start)
+          ? block.length
+          : remaining;
+      long executed;
+      boolean bailedOut;
+      if (compiledBlock(block) != null) {
+        long result = executeCompiled(block.compiled, blockSteps);
+        bailedOut = result < 0;
+        executed = bailedOut ? ~result : result;
+      } else {
+        executed = executeBlock(block, stopAccumulator);
+        bailedOut = executed < block.length && block.valid;
+      }
+      remaining -= executed;
+      if (shouldStop(activeBreakpoints, stopAccumulator)) {
+        return ExecutionStatus.RUNNING;
+      }
+
+      // A guard failed, let the interpreter handle the instruction (and report its error)
+      if (bailedOut && remaining > 0) {
+        ExecutionStatus status = tryStep();
+        if (status != ExecutionStatus.RUNNING) {
+          return status;
+        }
+        remaining--;
+        if (shouldStop(activeBreakpoints, stopAccumulator)) {
+          return ExecutionStatus.RUNNING;
+        }
+      }
+    }
+    return ExecutionStatus.RUNNING;
+  }
+
+  private boolean shouldStop(BitSet breakpoints, OptionalInt stopAccumulator) {
+    if (stopAccumulator.isPresent() && accumulator == stopAccumulator.getAsInt()) {
+      return true;
+    }
+    return breakpoints != null && instructionPointer >= 0 && breakpoints.get(instructionPointer);
+  }
+
+  /**
+   * Checks whether a step inside a block, i.e. not the last one, ends at a breakpoint.
+   */
+  private static boolean containsBreakpoint(BasicBlock block, BitSet breakpoints) {
+    int next = breakpoints.nextSetBit(block.start + 1);
+    return next >= 0 && next < block.start + block.length;
+  }
+
+  private BasicBlock blockAt(int address) {
+    if ((address & ~ADDRESS_MASK) != 0) {
+      return null;
+    }
+    BasicBlock[] page = blocks[address >>> MemoryImage.PAGE_BITS];
+    if (page == null) {
+      page = new BasicBlock[MemoryImage.PAGE_SIZE];
+      blocks[address >>> MemoryImage.PAGE_BITS] = page;
+      markUsed(address >>> MemoryImage.PAGE_BITS);
+    }
+
+    BasicBlock block = page[address & MemoryImage.PAGE_MASK];
+    if (block == null) {
+      block = BasicBlock.compile(address, memory, initialized, opcodes);
+      page[address & MemoryImage.PAGE_MASK] = block;
+
+      // Also marks the start of uncompilable blocks, so they are retried after a write
+      int end = Math.max(block.start + block.length, address + 1);
+      for (int i = address; i < end; i++) {
+        long[] bitmap = blockAddresses[i >>> MemoryImage.PAGE_BITS];
+        if (bitmap == null) {
+          bitmap = new long[BITMAP_PAGE_SIZE];
+          blockAddresses[i >>> MemoryImage.PAGE_BITS] = bitmap;
+          markUsed(i >>> MemoryImage.PAGE_BITS);
+        }
+        bitmap[(i & MemoryImage.PAGE_MASK) >>> 6] |= 1L << i;
+      }
+    }
+    return block == BasicBlock.NOT_COMPILABLE ? null : block;
+  }
+
+  /**
+   * Checks whether the block starting at an address is compiled to bytecode.
+   *
+   * @param address the start of the block
+   * @return true if the block at the address was compiled
+   */
+  boolean isCompiled(int address) {
+    BasicBlock[] page = blocks[address >>> MemoryImage.PAGE_BITS];
+    BasicBlock block = page == null ? null : page[address & MemoryImage.PAGE_MASK];
+    return block != null && block.compiled != null;
+  }
+
+  private CompiledBlock compiledBlock(BasicBlock block) {
+    if (block.compiled == null && block.executions++ == compileThreshold) {
+      block.compiled = BlockCompiler.compile(block);
+    }
+    return block.compiled;
+  }
+
+  private long executeCompiled(CompiledBlock compiled, long maxSteps) {
+    int[] registers = compiledRegisters;
+    registers[CompiledBlock.ACCUMULATOR] = accumulator;
+    registers[CompiledBlock.ALU_INPUT_LEFT] = aluInputLeft;
+    registers[CompiledBlock.ALU_INPUT_RIGHT] = aluInputRight;
+    registers[CompiledBlock.INSTRUCTION] = instruction;
+    registers[CompiledBlock.INSTRUCTION_POINTER] = instructionPointer;
+    registers[CompiledBlock.RETURN_ADDRESS] = returnAddress;
+    registers[CompiledBlock.STACK_POINTER] = stackPointer;
+    registers[CompiledBlock.FRAME_POINTER] = framePointer;
+
+    long result = compiled.execute(this, memory, initialized, registers, maxSteps);
+
+    accumulator = registers[CompiledBlock.ACCUMULATOR];
+    aluInputLeft = registers[CompiledBlock.ALU_INPUT_LEFT];
+    aluInputRight = registers[CompiledBlock.ALU_INPUT_RIGHT];
+    instruction = registers[CompiledBlock.INSTRUCTION];
+    instructionPointer = registers[CompiledBlock.INSTRUCTION_POINTER];
+    returnAddress = registers[CompiledBlock.RETURN_ADDRESS];
+    stackPointer = registers[CompiledBlock.STACK_POINTER];
+    framePointer = registers[CompiledBlock.FRAME_POINTER];
+    stepCount += result < 0 ? ~result : result;
+
+    return result;
+  }
+
+  /**
+   * Invalidates all blocks containing the given address.
+   *
+   * @param address the written address
+   */
+  private void invalidateBlocks(int address) {
+    int firstStart = Math.max(0, address - BasicBlock.MAX_LENGTH + 1);
+
+    for (int start = firstStart; start <= address; start++) {
+      BasicBlock[] page = blocks[start >>> MemoryImage.PAGE_BITS];
+      if (page == null) {
+        continue;
+      }
+      BasicBlock block = page[start & MemoryImage.PAGE_MASK];
+      if (block == BasicBlock.NOT_COMPILABLE && start == address) {
+        page[start & MemoryImage.PAGE_MASK] = null;
+      } else if (block != null && block.contains(address)) {
+        block.valid = false;
+        page[start & MemoryImage.PAGE_MASK] = null;
+      }
+    }
+    blockAddresses[address >>> MemoryImage.PAGE_BITS][(address & MemoryImage.PAGE_MASK) >>> 6]
+        &= ~(1L << address);
+  }
+
+  /**
+   * Executes a block, keeping the registers in local variables.
+   *
+   * <p>Every operation checks all conditions that would make it fail before changing anything.
+   * If one does not hold, the block is left before that operation, so the interpreter can execute
+   * it and report the error. The block is also left after a write invalidated it and after an
+   * instruction set the accumulator to the stop value. A superinstruction passing the stop value
+   * is not executed, so the interpreter executes its instructions one at a time.</p>
+   *
+   * @param block the block to execute
+   * @param stopAccumulator the accumulator value to stop at, if any
+   * @return the number of executed instructions
+   */
+  private int executeBlock(BasicBlock block, OptionalInt stopAccumulator) {
+    int[] operations = block.operations;
+    int[] offsets = block.offsets;
+    int[] firstArguments = block.firstArguments;
+    int[] secondArguments = block.secondArguments;
+    int[] thirdArguments = block.thirdArguments;
+    int start = block.start;
+    boolean stopOnAccumulator = stopAccumulator.isPresent();
+    int stop = stopAccumulator.orElse(0);
+
+    int ip = instructionPointer;
+    int word = instruction;
+    int acc = accumulator;
+    int aluLeft = aluInputLeft;
+    int aluRight = aluInputRight;
+    int ra = returnAddress;
+    int sp = stackPointer;
+    int fp = framePointer;
+    int executed = 0;
+
+    operations:
+    for (int index = 0; index < block.operationCount; index++) {
+      int offset = offsets[index];
+      int a = firstArguments[index];
+      int address = start + offset;
+      int next = NO_JUMP;
+      int length = 1;
+      int newAluLeft = 0;
+      int newAluRight = 0;
+      boolean wrote = false;
+
+      switch (operations[index]) {
+        case 0x0:
+          acc = a;
+          break;
+        case 0x1:
+          if (!isInitialized(a)) {
+            break operations;
+          }
+          acc = read(a);
+          break;
+        case 0x2:
+          storeWord(a, acc);
+          wrote = true;
+          break;
+        case 0x3: {
+          if (!isInitialized(a)) {
+            break operations;
+          }
+          int value = read(a);
+          newAluLeft = acc;
+          newAluRight = value;
+          acc = MemoryFormat.coerceToValue(acc + value);
+          break;
+        }
+        case 0x4:
+          if (!isInitialized(a)) {
+            break operations;
+          }
+          acc = MemoryFormat.coerceToValue(acc & read(a));
+          break;
+        case 0x5:
+          if (!isInitialized(a)) {
+            break operations;
+          }
+          acc = MemoryFormat.coerceToValue(acc | read(a));
+          break;
+        case 0x6:
+          if (!isInitialized(a)) {
+            break operations;
+          }
+          acc = MemoryFormat.coerceToValue(acc ^ read(a));
+          break;
+        case 0x7:
+          if (!isInitialized(a)) {
+            break operations;
+          }
+          acc = acc == read(a) ? -1 : 0;
+          break;
+        case 0x8:
+          next = a;
+          break;
+        case 0x9:
+          next = acc < 0 ? a : NO_JUMP;
+          break;
+        case 0xA: {
+          if (!isInitialized(a)) {
+            break operations;
+          }
+          int pointer = read(a);
+          if ((pointer & ~ADDRESS_MASK) != 0 || !isInitialized(pointer)) {
+            break operations;
+          }
+          acc = read(pointer);
+          break;
+        }
+        case 0xB: {
+          if (!isInitialized(a)) {
+            break operations;
+          }
+          int pointer = read(a);
+          if ((pointer & ~ADDRESS_MASK) != 0) {
+            break operations;
+          }
+          storeWord(pointer, acc);
+          wrote = true;
+          break;
+        }
+        case 0xC:
+          ra = address + 1;
+          next = a;
+          break;
+        case 0xD:
+          // the compiler only accepts arguments in range
+          acc = acc + a;
+          break;
+        case 0xF1:
+          acc = Logical.not(acc);
+          break;
+        case 0xF2:
+          acc = Other.rotateRight(acc);
+          break;
+        case 0xF3:
+          if ((ra & ~ADDRESS_MASK) != 0) {
+            break operations;
+          }
+          next = ra;
+          break;
+        case 0xF4:
+          acc = ra;
+          break;
+        case 0xF5:
+          if ((acc & ~ADDRESS_MASK) != 0) {
+            break operations;
+          }
+          ra = acc;
+          break;
+        case 0xF6:
+          acc = sp;
+          break;
+        case 0xF7:
+          if ((acc & ~ADDRESS_MASK) != 0) {
+            break operations;
+          }
+          sp = acc;
+          break;
+        case 0xF8:
+          acc = fp;
+          break;
+        case 0xF9:
+          if ((acc & ~ADDRESS_MASK) != 0) {
+            break operations;
+          }
+          fp = acc;
+          break;
+        case 0xFA:
+        case 0xFC: {
+          int target = sp + a;
+          if ((target & ~ADDRESS_MASK) != 0 || !isInitialized(target)) {
+            break operations;
+          }
+          acc = read(target);
+          break;
+        }
+        case 0xFB:
+        case 0xFD: {
+          int target = sp + a;
+          if ((target & ~ADDRESS_MASK) != 0) {
+            break operations;
+          }
+          storeWord(target, acc);
+          wrote = true;
+          break;
+        }
+        case BasicBlock.LOAD_ADD_STORE: {
+          if (!isInitialized(a) || !isInitialized(secondArguments[index])) {
+            break operations;
+          }
+          int loaded = read(a);
+          int sum = MemoryFormat.coerceToValue(loaded + read(secondArguments[index]));
+          if (stopOnAccumulator && (loaded == stop || sum == stop)) {
+            break operations;
+          }
+          acc = sum;
+          storeWord(thirdArguments[index], acc);
+          wrote = true;
+          length = 3;
+          break;
+        }
+        case BasicBlock.LOAD_CONSTANT_ADD_STORE: {
+          if (!isInitialized(secondArguments[index])) {
+            break operations;
+          }
+          int sum = MemoryFormat.coerceToValue(a + read(secondArguments[index]));
+          if (stopOnAccumulator && (a == stop || sum == stop)) {
+            break operations;
+          }
+          acc = sum;
+          storeWord(thirdArguments[index], acc);
+          wrote = true;
+          length = 3;
+          break;
+        }
+        case BasicBlock.LOAD_EQUAL_JUMP_NEGATIVE: {
+          if (!isInitialized(a) || !isInitialized(secondArguments[index])) {
+            break operations;
+          }
+          int loaded = read(a);
+          int equal = loaded == read(secondArguments[index]) ? -1 : 0;
+          if (stopOnAccumulator && (loaded == stop || equal == stop)) {
+            break operations;
+          }
+          acc = equal;
+          next = acc < 0 ? thirdArguments[index] : NO_JUMP;
+          length = 3;
+          break;
+        }
+        case BasicBlock.LOAD_JUMP_NEGATIVE:
+          if (!isInitialized(a)) {
+            break operations;
+          }
+          if (stopOnAccumulator && read(a) == stop) {
+            break operations;
+          }
+          acc = read(a);
+          next = acc < 0 ? secondArguments[index] : NO_JUMP;
+          length = 2;
+          break;
+        default:
+          throw new IllegalStateException("Unhandled block operation " + operations[index]);
+      }
+
+      ip = next == NO_JUMP ? address + length : next;
+      word = block.words[offset + length - 1];
+      aluLeft = newAluLeft;
+      aluRight = newAluRight;
+      executed += length;
+
+      if (wrote && !block.valid || stopOnAccumulator && acc == stop) {
+        break;
+      }
+    }
+
+    instructionPointer = ip;
+    instruction = word;
+    accumulator = acc;
+    aluInputLeft = aluLeft;
+    aluInputRight = aluRight;
+    returnAddress = ra;
+    stackPointer = sp;
+    framePointer = fp;
+    stepCount += executed;
+
+    return executed;
+  }
+
+  private int decodedAt(int address) {
+    int[] page = decoded[address >>> MemoryImage.PAGE_BITS];
+    return page == null ? NOT_DECODED : page[address & MemoryImage.PAGE_MASK];
+  }
+
+  private int read(int address) {
+    return memory[address >>> MemoryImage.PAGE_BITS][address & MemoryImage.PAGE_MASK];
+  }
+
+  private boolean isInitialized(int address) {
+    return initialized[address >>> MemoryImage.PAGE_BITS][address & MemoryImage.PAGE_MASK];
+  }
+
+  private ExecutionStatus stepUncached(int address) {
+    if (!isInitialized(address)) {
+      return fault(FaultType.MEMORY_NOT_INITIALIZED, address, 0);
+    }
+    int word = read(address);
+    instruction = word;
+
+    int largeOpcode = MemoryFormat.extractLargeOpcode(word);
+    int opcode = opcodes[largeOpcode];
+
+    if (opcode == NO_INSTRUCTION) {
+      return fault(FaultType.INSTRUCTION_NOT_FOUND, word, 0);
+    }
+
+    instructionPointer++;
+    aluInputLeft = 0;
+    aluInputRight = 0;
+
+    if (opcode == CUSTOM_INSTRUCTION) {
+      return executeCustom(instructions[largeOpcode], word);
+    }
+
+    int argument = DispatchTable.argument(opcode, word);
+    int[] decodedPage = decoded[address >>> MemoryImage.PAGE_BITS];
+    if (decodedPage == null) {
+      decodedPage = new int[MemoryImage.PAGE_SIZE];
+      Arrays.fill(decodedPage, NOT_DECODED);
+      decoded[address >>> MemoryImage.PAGE_BITS] = decodedPage;
+      markUsed(address >>> MemoryImage.PAGE_BITS);
+    }
+    decodedPage[address & MemoryImage.PAGE_MASK] = opcode << 20 | argument;
+
+    return execute(opcode, argument);
+  }
+
+  private ExecutionStatus execute(int opcode, int argument) {
+    switch (opcode) {
+      case 0x0:
+        accumulator = argument;
+        break;
+      case 0x1:
+        if (!isReadable(argument)) {
+          return readFault(argument);
+        }
+        accumulator = read(argument);
+        break;
+      case 0x2:
+        storeWord(argument, accumulator);
+        break;
+      case 0x3: {
+        if (!isReadable(argument)) {
+          return readFault(argument);
+        }
+        int value = read(argument);
+        aluInputLeft = accumulator;
+        aluInputRight = value;
+        accumulator = MemoryFormat.coerceToValue(accumulator + value);
+        break;
+      }
+      case 0x4:
+        if (!isReadable(argument)) {
+          return readFault(argument);
+        }
+        accumulator = MemoryFormat.coerceToValue(accumulator & read(argument));
+        break;
+      case 0x5:
+        if (!isReadable(argument)) {
+          return readFault(argument);
+        }
+        accumulator = MemoryFormat.coerceToValue(accumulator | read(argument));
+        break;
+      case 0x6:
+        if (!isReadable(argument)) {
+          return readFault(argument);
+        }
+        accumulator = MemoryFormat.coerceToValue(accumulator ^ read(argument));
+        break;
+      case 0x7:
+        if (!isReadable(argument)) {
+          return readFault(argument);
+        }
+        accumulator = accumulator == read(argument) ? -1 : 0;
+        break;
+      case 0x8:
+        instructionPointer = argument;
+        break;
+      case 0x9: {
+        int target = accumulator < 0 ? argument : instructionPointer;
+        if (!isAddress(target)) {
+          return addressFault(target);
+        }
+        instructionPointer = target;
+        break;
+      }
+      case 0xA: {
+        if (!isReadable(argument)) {
+          return readFault(argument);
+        }
+        int pointer = read(argument);
+        if (!isReadable(pointer)) {
+          return readFault(pointer);
+        }
+        accumulator = read(pointer);
+        break;
+      }
+      case 0xB: {
+        if (!isReadable(argument)) {
+          return readFault(argument);
+        }
+        int pointer = read(argument);
+        if (!isAddress(pointer)) {
+          return addressFault(pointer);
+        }
+        storeWord(pointer, accumulator);
+        break;
+      }
+      case 0xC:
+        returnAddress = instructionPointer;
+        instructionPointer = argument;
+        break;
+      case 0xD:
+        if (argument > Short.MAX_VALUE) {
+          return fault(FaultType.NUMBER_OVERFLOW, argument, Short.SIZE);
+        }
+        accumulator = accumulator + argument;
+        break;
+      case 0xF0:
+        return halt();
+      case 0xF1:
+        accumulator = Logical.not(accumulator);
+        break;
+      case 0xF2:
+        accumulator = Other.rotateRight(accumulator);
+        break;
+      case 0xF3:
+        if (!isAddress(returnAddress)) {
+          return addressFault(returnAddress);
+        }
+        instructionPointer = returnAddress;
+        break;
+      case 0xF4:
+        accumulator = returnAddress;
+        break;
+      case 0xF5:
+        if (!isAddress(accumulator)) {
+          return addressFault(accumulator);
+        }
+        returnAddress = accumulator;
+        break;
+      case 0xF6:
+        accumulator = stackPointer;
+        break;
+      case 0xF7:
+        if (!isAddress(accumulator)) {
+          return addressFault(accumulator);
+        }
+        stackPointer = accumulator;
+        break;
+      case 0xF8:
+        accumulator = framePointer;
+        break;
+      case 0xF9:
+        if (!isAddress(accumulator)) {
+          return addressFault(accumulator);
+        }
+        framePointer = accumulator;
+        break;
+      // The frame relative instructions address relative to the stack pointer as well
+      case 0xFA:
+      case 0xFC: {
+        int address = stackPointer + MemoryFormat.coerceToValue(argument);
+        if (!isReadable(address)) {
+          return readFault(address);
+        }
+        accumulator = read(address);
+        break;
+      }
+      case 0xFB:
+      case 0xFD: {
+        int address = stackPointer + MemoryFormat.coerceToValue(argument);
+        if (!isAddress(address)) {
+          return addressFault(address);
+        }
+        storeWord(address, accumulator);
+        break;
+      }
+      default:
+        throw new IllegalStateException("Unhandled builtin opcode " + opcode);
+    }
+    return ExecutionStatus.RUNNING;
+  }
+
+  private ExecutionStatus executeCustom(Instruction custom, int word) {
+    try {
+      custom.execute(context, DispatchTable.argument(custom.opcode(), word));
+      return ExecutionStatus.RUNNING;
+    } catch (MiMaException e) {
+      faultType = FaultType.INSTRUCTION_ERROR;
+      instructionError = e;
+      return e instanceof ProgramHaltException ? ExecutionStatus.HALTED : ExecutionStatus.FAULT;
+    }
+  }
+
+  private static boolean isAddress(int value) {
+    return (value & ~ADDRESS_MASK) == 0;
+  }
+
+  private boolean isReadable(int address) {
+    return isAddress(address) && isInitialized(address);
+  }
+
+  private ExecutionStatus addressFault(int value) {
+    return fault(FaultType.NUMBER_OVERFLOW, value, MemoryFormat.ADDRESS_LENGTH);
+  }
+
+  private ExecutionStatus readFault(int address) {
+    if (!isAddress(address)) {
+      return addressFault(address);
+    }
+    return fault(FaultType.MEMORY_NOT_INITIALIZED, address, 0);
+  }
+
+  private ExecutionStatus fault(FaultType type, int value, int length) {
+    faultType = type;
+    faultValue = value;
+    faultLength = length;
+    instructionError = null;
+    return ExecutionStatus.FAULT;
+  }
+
+  private ExecutionStatus halt() {
+    faultType = null;
+    instructionError = null;
+    return ExecutionStatus.HALTED;
+  }
+
+  /**
+   * Creates the exception a {@link MiMa} would have thrown for the last HALT or fault reported
+   * by {@link #tryStep()} or {@link #tryRun(long)}.
+   *
+   * @return the exception
+   */
+  public MiMaException createException() {
+    if (faultType == null) {
+      return new ProgramHaltException();
+    }
+    switch (faultType) {
+      case INSTRUCTION_NOT_FOUND:
+        return new InstructionNotFoundException(faultValue);
+      case MEMORY_NOT_INITIALIZED:
+        return new MemoryNotInitializedException(faultValue);
+      case NUMBER_OVERFLOW:
+        return new NumberOverflowException(faultValue, faultLength);
+      case INSTRUCTION_ERROR:
+        return instructionError;
+      default:
+        throw new IllegalStateException("Unknown fault type " + faultType);
+    }
+  }
+
+  /**
+   * Returns the type of the last fault.
+   *
+   * @return the type of the last fault reported by {@link #tryStep()} or {@link #tryRun(long)} or
+   *     null, if the last reported status was a regular HALT
+   */
+  public FaultType getFaultType() {
+    return faultType;
+  }
+
+  /**
+   * Returns the value describing the last fault, as documented in {@link FaultType}.
+   *
+   * @return the value describing the last fault
+   */
+  public int getFaultValue() {
+    return faultValue;
+  }
+
+  /**
+   * Returns the length describing the last fault, as documented in {@link FaultType}.
+   *
+   * @return the length describing the last fault
+   */
+  public int getFaultLength() {
+    return faultLength;
+  }
+
+  /**
+   * Writes a value to memory and invalidates everything decoded or compiled from the address.
+   *
+   * @param address the address, in range
+   * @param value the value
+   */
+  void storeWord(int address, int value) {
+    int page = address >>> MemoryImage.PAGE_BITS;
+    int offset = address & MemoryImage.PAGE_MASK;
+    if (!ownedPages[page]) {
+      copyPage(page);
+    }
+
+    memory[page][offset] = MemoryFormat.coerceToValue(value);
+    initialized[page][offset] = true;
+    if (decoded[page] != null) {
+      decoded[page][offset] = NOT_DECODED;
+    }
+    long[] blockBitmap = blockAddresses[page];
+    if (blockBitmap != null && (blockBitmap[offset >>> 6] & 1L << address) != 0) {
+      invalidateBlocks(address);
+    }
+    long[] dirtyBitmap = dirtyAddresses[page];
+    if (dirtyBitmap == null || (dirtyBitmap[offset >>> 6] & 1L << address) == 0) {
+      markDirty(address);
+    }
+  }
+
+  private void recordUndo(int address) {
+    if (undoCount == undoLog.length) {
+      undoLog = Arrays.copyOf(undoLog, undoCount * 2);
+    }
+    undoLog[undoCount++] = address;
+    undoLog[undoCount++] = read(address);
+    undoLog[undoCount++] = isInitialized(address) ? 1 : 0;
+  }
+
+  private void copyPage(int page) {
+    memory[page] = memory[page].clone();
+    initialized[page] = initialized[page].clone();
+    ownedPages[page] = true;
+    markUsed(page);
+  }
+
+  private void markDirty(int address) {
+    long[] bitmap = dirtyAddresses[address >>> MemoryImage.PAGE_BITS];
+    if (bitmap == null) {
+      bitmap = new long[BITMAP_PAGE_SIZE];
+      dirtyAddresses[address >>> MemoryImage.PAGE_BITS] = bitmap;
+      markUsed(address >>> MemoryImage.PAGE_BITS);
+    }
+    bitmap[(address & MemoryImage.PAGE_MASK) >>> 6] |= 1L << address;
+    if (dirtyCount == dirtyList.length) {
+      dirtyList = Arrays.copyOf(dirtyList, dirtyCount * 2);
+    }
+    dirtyList[dirtyCount++] = address;
+  }
+
+  private void clearDirty() {
+    for (int i = 0; i < dirtyCount; i++) {
+      int address = dirtyList[i];
+      long[] bitmap = dirtyAddresses[address >>> MemoryImage.PAGE_BITS];
+      bitmap[(address & MemoryImage.PAGE_MASK) >>> 6] = 0;
+    }
+    dirtyCount = 0;
+  }
+
+  private void markUsed(int page) {
+    if ((usedPageBits[page >>> 6] & 1L << page) != 0) {
+      return;
+    }
+    usedPageBits[page >>> 6] |= 1L << page;
+    if (usedPageCount == usedPages.length) {
+      usedPages = Arrays.copyOf(usedPages, usedPageCount * 2);
+    }
+    usedPages[usedPageCount++] = page;
+  }
+
+  private void resetUsedPages() {
+    for (int i = 0; i < usedPageCount; i++) {
+      int page = usedPages[i];
+      decoded[page] = null;
+      blocks[page] = null;
+      blockAddresses[page] = null;
+      dirtyAddresses[page] = null;
+      ownedPages[page] = false;
+    }
+    Arrays.fill(usedPageBits, 0);
+    usedPageCount = 0;
+    dirtyCount = 0;
+  }
+
+  /**
+   * Replaces the whole state of this MiMa with the given one.
+   *
+   * <p>If both the new memory and the memory of the last snapshot are tries, only the addresses
+   * differing from the current memory are written, which keeps everything decoded or compiled
+   * from the rest. Otherwise the image of the new memory is loaded.</p>
+   *
+   * @param state the state to load
+   */
+  public void load(State state) {
+    MainMemory newMemory = state.memory();
+    if (newMemory == snapshotMemory
+        || snapshotMemory != null && snapshotMemory.isTrieBuilt() && newMemory.isTrieBuilt()) {
+      loadDifference(newMemory);
+    } else {
+      resetUsedPages();
+      newMemory.toImage().sharePages(memory, initialized);
+    }
+    undoCount = 0;
+    snapshotMemory = newMemory;
+
+    accumulator = state.registers().accumulator();
+    aluInputLeft = state.registers().aluInputLeft();
+    aluInputRight = state.registers().aluInputRight();
+    instruction = state.registers().instruction();
+    instructionPointer = state.registers().instructionPointer();
+    returnAddress = state.registers().returnAddress();
+    stackPointer = state.registers().stackPointer();
+    framePointer = state.registers().framePointer();
+  }
+
+  /**
+   * Converts the current state of this MiMa to an immutable {@link State}.
+   *
+   * <p>The memory shares its structure with the previous snapshot (or loaded state), so the cost
+   * only depends on the number of addresses written in between.</p>
+   *
+   * @return the current state
+   */
+  public State toState() {
+    // Only addresses written since the last snapshot are copied, the rest is shared with it
+    MainMemory.Builder builder = snapshotMemory.toBuilder();
+    boolean uninitialized = false;
+    try {
+      for (int i = 0; i < dirtyCount; i++) {
+        if (isInitialized(dirtyList[i])) {
+          builder.set(dirtyList[i], read(dirtyList[i]));
+        } else {
+          uninitialized = true;
+        }
+      }
+    } catch (NumberOverflowException e) {
+      throw new IllegalStateException("Dirty address out of range", e);
+    }
+    MainMemory mainMemory = builder.build();
+    // Only a reverted write leaves a dirty address uninitialized
+    if (uninitialized) {
+      mainMemory = unsetUninitialized(mainMemory);
+    }
+    snapshotMemory = mainMemory;
+    clearDirty();
+    return ImmutableState.builder()
+        .memory(mainMemory)
+        .registers(
+            ImmutableRegisters.builder()
+                .accumulator(accumulator)
+                .aluInputLeft(aluInputLeft)
+                .aluInputRight(aluInputRight)
+                .instruction(instruction)
+                .instructionPointer(instructionPointer)
+                .returnAddress(returnAddress)
+                .stackPointer(stackPointer)
+                .framePointer(framePointer)
+                .build()
+        )
+        .build();
+  }
+
+  /**
+   * Writes every address of the new memory, that might differ from the current memory. These are
+   * the addresses written since the last snapshot and the differences between the snapshot and
+   * the new memory.
+   *
+   * @param newMemory the memory to load
+   */
+  private void loadDifference(MainMemory newMemory) {
+    // Writes append to the dirty list, but those addresses are already covered by the snapshot
+    int writtenCount = dirtyCount;
+    for (int i = 0; i < writtenCount; i++) {
+      loadAddress(newMemory, dirtyList[i]);
+    }
+    if (newMemory != snapshotMemory) {
+      snapshotMemory.forEachDifference(newMemory, address -> loadAddress(newMemory, address));
+    }
+    clearDirty();
+  }
+
+  private void loadAddress(MainMemory newMemory, int address) {
+    try {
+      boolean newInitialized = newMemory.isInitialized(address);
+      int value = newInitialized ? newMemory.get(address) : 0;
+      if (isInitialized(address) == newInitialized && (!newInitialized || read(address) == value)) {
+        return;
+      }
+      storeWord(address, value);
+      if (!newInitialized) {
+        initialized[address >>> MemoryImage.PAGE_BITS][address & MemoryImage.PAGE_MASK] = false;
+      }
+    } catch (MemoryNotInitializedException | NumberOverflowException e) {
+      throw new IllegalStateException("Address changed while loading it", e);
+    }
+  }
+
+  private MainMemory unsetUninitialized(MainMemory mainMemory) {
+    MainMemory result = mainMemory;
+    try {
+      for (int i = 0; i < dirtyCount; i++) {
+        if (!isInitialized(dirtyList[i])) {
+          result = result.unset(dirtyList[i]);
+        }
+      }
+    } catch (NumberOverflowException e) {
+      throw new IllegalStateException("Dirty address out of range", e);
+    }
+    return result;
+  }
+
+  /**
+   * Returns the value at a given memory address.
+   *
+   * @param address the address to read from
+   * @return the value at this address
+   * @throws MemoryNotInitializedException if the memory is not yet initialized
+   * @throws NumberOverflowException if the value does not fit into an address
+   */
+  public int getMemoryValue(int address)
+      throws MemoryNotInitializedException, NumberOverflowException {
+    int fixedLengthAddress = MemoryFormat.coerceToAddress(address);
+
+    if (!isInitialized(fixedLengthAddress)) {
+      throw new MemoryNotInitializedException(fixedLengthAddress);
+    }
+    return read(fixedLengthAddress);
+  }
+
+  /**
+   * Sets the value at the given address, for example from a debugger.
+   *
+   * @param address the address to write to
+   * @param value the value to write
+   * @throws NumberOverflowException if the address is out of range
+   */
+  public void setMemoryValue(int address, int value) throws NumberOverflowException {
+    storeWord(MemoryFormat.coerceToAddress(address), value);
+  }
+
+  /**
+   * Returns the number of steps this MiMa executed since it was created.
+   *
+   * @return the number of executed steps
+   */
+  public long getStepCount() {
+    return stepCount;
+  }
+
+  /**
+   * Returns the instruction pointer.
+   *
+   * @return the address of the next instruction
+   */
+  public int getInstructionPointer() {
+    return instructionPointer;
+  }
+
+  /**
+   * Returns the accumulator.
+   *
+   * @return the value of the accumulator
+   */
+  public int getAccumulator() {
+    return accumulator;
+  }
+
+  private static Instruction[] builtinInstructions() {
+    Instruction[] result = new Instruction[OPCODE_COUNT];
+    for (Instruction builtin : InstructionSet.getDefaultInstructions()) {
+      result[builtin.opcode()] = builtin;
+    }
+    return result;
+  }
+
+  /**
+   * Reads and writes the registers and memory of the enclosing MiMa directly.
+   */
+  private final class Context implements MachineContext {
+
+    @Override
+    public int getAccumulator() {
+      return accumulator;
+    }
+
+    @Override
+    public void setAccumulator(int accumulator) {
+      FastMiMa.this.accumulator = accumulator;
+    }
+
+    @Override
+    public int getAluInputLeft() {
+      return aluInputLeft;
+    }
+
+    @Override
+    public void setAluInputLeft(int aluInputLeft) {
+      FastMiMa.this.aluInputLeft = aluInputLeft;
+    }
+
+    @Override
+    public int getAluInputRight() {
+      return aluInputRight;
+    }
+
+    @Override
+    public void setAluInputRight(int aluInputRight) {
+      FastMiMa.this.aluInputRight = aluInputRight;
+    }
+
+    @Override
+    public int getInstruction() {
+      return instruction;
+    }
+
+    @Override
+    public void setInstruction(int instruction) {
+      FastMiMa.this.instruction = instruction;
+    }
+
+    @Override
+    public int getInstructionPointer() {
+      return instructionPointer;
+    }
+
+    @Override
+    public void setInstructionPointer(int instructionPointer) {
+      FastMiMa.this.instructionPointer = instructionPointer;
+    }
+
+    @Override
+    public int getReturnAddress() {
+      return returnAddress;
+    }
+
+    @Override
+    public void setReturnAddress(int returnAddress) {
+      FastMiMa.this.returnAddress = returnAddress;
+    }
+
+    @Override
+    public int getStackPointer() {
+      return stackPointer;
+    }
+
+    @Override
+    public void setStackPointer(int stackPointer) {
+      FastMiMa.this.stackPointer = stackPointer;
+    }
+
+    @Override
+    public int getFramePointer() {
+      return framePointer;
+    }
+
+    @Override
+    public void setFramePointer(int framePointer) {
+      FastMiMa.this.framePointer = framePointer;
+    }
+
+    @Override
+    public int getMemory(int address)
+        throws MemoryNotInitializedException, NumberOverflowException {
+      return getMemoryValue(address);
+    }
+
+    @Override
+    public void setMemory(int address, int value) throws NumberOverflowException {
+      int fixedLengthAddress = MemoryFormat.coerceToAddress(address);
+      recordUndo(fixedLengthAddress);
+      storeWord(fixedLengthAddress, value);
+    }
+
+    @Override
+    public State toState() {
+      return FastMiMa.this.toState();
+    }
+
+    @Override
+    public void load(State state) {
+      FastMiMa.this.load(state);
+    }
+  }
+}
@@ -0,0 +1,87 @@
+package me.ialistannen.mimadebugger.machine.instructions;
+
+import java.util.Map;
+import me.ialistannen.mimadebugger.util.MemoryFormat;
+
+/**
+ * A frozen lookup table, that decodes encoded instructions with a single array access.
+ *
+ * <p>The table is indexed by the large (8 bit) opcode of an encoded value. Instructions with a
+ * small (4 bit) opcode are replicated into all 16 slots sharing their upper four bits, and take
+ * precedence over a large opcode in the same slot.</p>
+ *
+ * <p>The decoding methods do not allocate.</p>
+ */
+public final class DispatchTable {
+
+  /**
+   * The opcode returned by {@link #opcode(int)} if the value does not encode a known instruction.
+   */
+  public static final int NO_INSTRUCTION = -1;
+
+  private static final int SIZE = 256;
+
+  private final int[] opcodes;
+  private final Instruction[] instructions;
+
+  /**
+   * Creates a new dispatch table.
+   *
+   * @param instructionMap the instructions by their opcode
+   */
+  DispatchTable(Map<Integer, Instruction> instructionMap) {
+    this.opcodes = new int[SIZE];
+    this.instructions = new Instruction[SIZE];
+
+    for (int largeOpcode = 0; largeOpcode < SIZE; largeOpcode++) {
+      Instruction instruction = instructionMap.get(largeOpcode >>> 4);
+      if (instruction == null) {
+        instruction = instructionMap.get(largeOpcode);
+      }
+
+      instructions[largeOpcode] = instruction;
+      opcodes[largeOpcode] = instruction == null ? NO_INSTRUCTION : instruction.opcode();
+    }
+  }
+
+  /**
+   * Returns the opcode of the instruction encoded in the given value.
+   *
+   * @param value the encoded value
+   * @return the opcode of the instruction or {@link #NO_INSTRUCTION} if it is not known
+   */
+  public int opcode(int value) {
+    return opcodes[MemoryFormat.extractLargeOpcode(value)];
+  }
+
+  /**
+   * Returns the instruction encoded in the given value.
+   *
+   * @param value the encoded value
+   * @return the instruction or null if it is not known
+   */
+  public Instruction instruction(int value) {
+    return instructions[MemoryFormat.extractLargeOpcode(value)];
+  }
+
+  /**
+   * Returns the argument encoded in the given value.
+   *
+   * @param value the encoded value
+   * @return the argument, only valid if {@link #opcode(int)} found an instruction
+   */
+  public int argument(int value) {
+    return argument(opcode(value), value);
+  }
+
+  /**
+   * Returns the argument encoded in the given value, for an already decoded opcode.
+   *
+   * @param opcode the opcode, as returned by {@link #opcode(int)}
+   * @param value the encoded value
+   * @return the argument
+   */
+  public static int argument(int opcode, int value) {
+    return opcode > 0xF ? value & 0xffff : value & 0xfffff;
+  }
+}
@@ -1,8 +1,10 @@
 package me.ialistannen.mimadebugger.machine.instructions;
 
 import java.util.Optional;
+import java.util.stream.IntStream;
 import me.ialistannen.mimadebugger.exceptions.MiMaException;
 import me.ialistannen.mimadebugger.machine.State;
+import me.ialistannen.mimadebugger.machine.memory.Registers;
 import org.immutables.value.Value;
 
 /**
@@ -45,6 +47,18 @@ public abstract class Instruction {
     return opcode() >= 0xF ? 16 : 20;
   }
 
+  /**
+   * Returns whether the instruction only reads and writes the MiMa, without any effect outside
+   * of it like talking to a device. Such an instruction may be executed ahead of time or on a copy
+   * of the MiMa. The default instructions are treated as side effect free regardless.
+   *
+   * @return true if executing the instruction has no side effects
+   */
+  @Value.Default
+  public boolean sideEffectFree() {
+    return false;
+  }
+
   /**
    * A short description of the instruction.
    *
@@ -53,11 +67,28 @@ public abstract class Instruction {
   public abstract Optional<String> description();
 
   /**
-   * The action this instruction executes.
+   * The state based action this instruction executes, if it was registered with one.
    *
    * @return the action this instruction executes
    */
-  abstract InstructionAction action();
+  abstract Optional<InstructionAction> action();
+
+  /**
+   * The {@link MachineContext} based action this instruction executes, if it was registered with
+   * one.
+   *
+   * @return the action this instruction executes
+   */
+  abstract Optional<MachineAction> machineAction();
+
+  @Value.Check
+  void checkAction() {
+    if (action().isPresent() == machineAction().isPresent()) {
+      throw new IllegalStateException(
+          "Instruction '" + name() + "' needs exactly one of action and machineAction"
+      );
+    }
+  }
 
   /**
    * Applies this instruction to the given {@link State}.
@@ -68,7 +99,55 @@ public abstract class Instruction {
    * @throws MiMaException if an error occurs
    */
   public State apply(State state, int argument) throws MiMaException {
-    return action().apply(state, argument);
+    if (action().isPresent()) {
+      return action().get().apply(state, argument);
+    }
+    StateContext context = new StateContext(state);
+    machineAction().get().execute(context, argument);
+    return context.toState();
+  }
+
+  /**
+   * Executes this instruction on the given {@link MachineContext}. Instructions with a state based
+   * action are applied to a snapshot of the context. Its registers and the changed memory
+   * addresses are then written back, so the context keeps everything derived from the rest.
+   *
+   * @param context the machine to execute it on
+   * @param argument the instruction argument
+   * @throws MiMaException if an error occurs. The context is unchanged, unless the action
+   *     itself modified it before failing
+   */
+  public void execute(MachineContext context, int argument) throws MiMaException {
+    if (machineAction().isPresent()) {
+      machineAction().get().execute(context, argument);
+      return;
+    }
+    State before = context.toState();
+    State after = action().get().apply(before, argument);
+
+    IntStream.Builder changedAddresses = IntStream.builder();
+    before.memory().forEachDifference(after.memory(), changedAddresses::add);
+    int[] addresses = changedAddresses.build().toArray();
+    for (int address : addresses) {
+      // The context can not clear an address, the rare action doing so replaces the whole machine
+      if (!after.memory().isInitialized(address)) {
+        context.load(after);
+        return;
+      }
+    }
+    for (int address : addresses) {
+      context.setMemory(address, after.memory().get(address));
+    }
+
+    Registers registers = after.registers();
+    context.setAccumulator(registers.accumulator());
+    context.setAluInputLeft(registers.aluInputLeft());
+    context.setAluInputRight(registers.aluInputRight());
+    context.setInstruction(registers.instruction());
+    context.setInstructionPointer(registers.instructionPointer());
+    context.setReturnAddress(registers.returnAddress());
+    context.setStackPointer(registers.stackPointer());
+    context.setFramePointer(registers.framePointer());
   }
 
   /**
@@ -85,4 +164,22 @@ public abstract class Instruction {
      */
     State apply(State state, Integer address) throws MiMaException;
   }
+
+  /**
+   * Executes an instruction by modifying a {@link MachineContext} in place.
+   *
+   * <p>An action should perform everything that can fail before it modifies the context, so a
+   * failing instruction leaves no partial changes behind.</p>
+   */
+  public interface MachineAction {
+
+    /**
+     * Executes the instruction.
+     *
+     * @param context the machine to modify
+     * @param argument the argument or address
+     * @throws MiMaException if an error occurs
+     */
+    void execute(MachineContext context, int argument) throws MiMaException;
+  }
 }
@@ -1,11 +1,13 @@
 package me.ialistannen.mimadebugger.machine.instructions;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import me.ialistannen.mimadebugger.exceptions.NumberOverflowException;
+import java.util.Set;
 import me.ialistannen.mimadebugger.machine.instructions.defaultinstructions.Arithmetic;
 import me.ialistannen.mimadebugger.machine.instructions.defaultinstructions.Equality;
 import me.ialistannen.mimadebugger.machine.instructions.defaultinstructions.Functions;
@@ -16,28 +18,65 @@ import me.ialistannen.mimadebugger.machine.instructions.defaultinstructions.Othe
 import me.ialistannen.mimadebugger.machine.instructions.defaultinstructions.Special;
 import me.ialistannen.mimadebugger.machine.instructions.defaultinstructions.Stack;
 import me.ialistannen.mimadebugger.machine.instructions.defaultinstructions.Store;
-import me.ialistannen.mimadebugger.util.MemoryFormat;
 
 /**
  * Contains all {@link Instruction}s the MiMa knows about.
  */
 public class InstructionSet {
 
+  private static final List<Instruction> DEFAULT_INSTRUCTIONS = defaultInstructions();
+  private static final Set<Instruction> DEFAULT_INSTRUCTION_SET = identitySet(DEFAULT_INSTRUCTIONS);
+
   private Map<Integer, Instruction> instructionMap;
+  private DispatchTable dispatchTable;
 
   public InstructionSet() {
     this.instructionMap = new HashMap<>();
+    this.dispatchTable = new DispatchTable(instructionMap);
 
-    Load.getInstructions().forEach(this::registerInstruction);
-    Store.getInstructions().forEach(this::registerInstruction);
-    Arithmetic.getInstructions().forEach(this::registerInstruction);
-    Logical.getInstructions().forEach(this::registerInstruction);
-    Equality.getInstructions().forEach(this::registerInstruction);
-    Jump.getInstructions().forEach(this::registerInstruction);
-    Special.getInstructions().forEach(this::registerInstruction);
-    Other.getInstructions().forEach(this::registerInstruction);
-    Stack.getInstructions().forEach(this::registerInstruction);
-    Functions.getInstructions().forEach(this::registerInstruction);
+    DEFAULT_INSTRUCTIONS.forEach(this::registerInstruction);
+  }
+
+  /**
+   * Returns the default instructions, that every instruction set contains.
+   *
+   * @return the default instructions
+   */
+  public static List<Instruction> getDefaultInstructions() {
+    return DEFAULT_INSTRUCTIONS;
+  }
+
+  /**
+   * Checks whether an instruction is one of the {@link #getDefaultInstructions() default
+   * instructions}. The instances are compared by identity, so an equal custom instruction is no
+   * default instruction.
+   *
+   * @param instruction the instruction to check
+   * @return true if it is a default instruction
+   */
+  public static boolean isDefaultInstruction(Instruction instruction) {
+    return DEFAULT_INSTRUCTION_SET.contains(instruction);
+  }
+
+  /**
+   * Checks whether an instruction has no side effects, i.e. whether it is a default instruction
+   * or {@link Instruction#sideEffectFree() marked} as such.
+   *
+   * @param instruction the instruction to check
+   * @return true if executing it has no side effects
+   */
+  public static boolean isSideEffectFree(Instruction instruction) {
+    return isDefaultInstruction(instruction) || instruction.sideEffectFree();
+  }
+
+  /**
+   * Checks whether none of the registered instructions have side effects.
+   *
+   * @return true if all registered instructions are {@link #isSideEffectFree(Instruction) side
+   *     effect free}
+   */
+  public boolean isSideEffectFree() {
+    return instructionMap.values().stream().allMatch(InstructionSet::isSideEffectFree);
   }
 
   /**
@@ -53,6 +92,7 @@ public class InstructionSet {
     if (instructionMap.put(instruction.opcode(), instruction) != null) {
       throw new IllegalArgumentException("Opcode " + instruction.opcode() + " already registered!");
     }
+    dispatchTable = new DispatchTable(instructionMap);
   }
 
   /**
@@ -85,31 +125,30 @@ public class InstructionSet {
    * @return the instruction call or an empty optional, if the opcode was not found
    */
   public Optional<InstructionCall> forEncodedValue(int value) {
-    try {
-      int opcode = MemoryFormat.extractOpcode(value);
-      int argument = MemoryFormat.extractArgument(value);
-
-      // check for small opcode first
-      if (!instructionMap.containsKey(opcode)) {
-        if (instructionMap.containsKey(MemoryFormat.extractLargeOpcode(value))) {
-          opcode = MemoryFormat.extractLargeOpcode(value);
-          argument = MemoryFormat.extractArgumentLargeOpcode(value);
-        } else {
-          return Optional.empty();
-        }
-      }
-
-      Instruction instruction = instructionMap.get(opcode);
-
-      return Optional.of(
-          ImmutableInstructionCall.builder()
-              .argument(argument)
-              .command(instruction)
-              .build()
-      );
-    } catch (NumberOverflowException e) {
+    Instruction instruction = dispatchTable.instruction(value);
+
+    if (instruction == null) {
       return Optional.empty();
     }
+
+    return Optional.of(
+        ImmutableInstructionCall.builder()
+            .argument(DispatchTable.argument(instruction.opcode(), value))
+            .command(instruction)
+            .build()
+    );
+  }
+
+  /**
+   * Returns the {@link DispatchTable} for the currently registered instructions.
+   *
+   * <p>The table is frozen, instructions registered later are only contained in tables returned
+   * by subsequent calls.</p>
+   *
+   * @return the dispatch table
+   */
+  public DispatchTable getDispatchTable() {
+    return dispatchTable;
   }
 
   /**
@@ -120,4 +159,25 @@ public class InstructionSet {
   public List<Instruction> getAll() {
     return new ArrayList<>(instructionMap.values());
   }
+
+  private static List<Instruction> defaultInstructions() {
+    List<Instruction> all = new ArrayList<>();
+    all.addAll(Load.getInstructions());
+    all.addAll(Store.getInstructions());
+    all.addAll(Arithmetic.getInstructions());
+    all.addAll(Logical.getInstructions());
+    all.addAll(Equality.getInstructions());
+    all.addAll(Jump.getInstructions());
+    all.addAll(Special.getInstructions());
+    all.addAll(Other.getInstructions());
+    all.addAll(Stack.getInstructions());
+    all.addAll(Functions.getInstructions());
+    return Collections.unmodifiableList(all);
+  }
+
+  private static Set<Instruction> identitySet(List<Instruction> instructions) {
+    Set<Instruction> set = Collections.newSetFromMap(new IdentityHashMap<>());
+    set.addAll(instructions);
+    return Collections.unmodifiableSet(set);
+  }
 }
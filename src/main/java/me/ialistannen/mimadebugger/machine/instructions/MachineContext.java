@@ -0,0 +1,131 @@
+package me.ialistannen.mimadebugger.machine.instructions;
+
+import me.ialistannen.mimadebugger.exceptions.MemoryNotInitializedException;
+import me.ialistannen.mimadebugger.exceptions.NumberOverflowException;
+import me.ialistannen.mimadebugger.machine.MiMaRegister;
+import me.ialistannen.mimadebugger.machine.State;
+
+/**
+ * The mutable machine a {@link Instruction.MachineAction} is executed on.
+ *
+ * <p>Register setters store the value as is, an action needs to coerce it itself. Memory access
+ * behaves like the {@link me.ialistannen.mimadebugger.machine.memory.MainMemory}.</p>
+ */
+public interface MachineContext {
+
+  /**
+   * Returns the value of a register.
+   *
+   * @param register the register
+   * @return its value
+   */
+  default int getRegister(MiMaRegister register) {
+    switch (register) {
+      case INSTRUCTION_ADDRESS_REGISTER:
+        return getInstructionPointer();
+      case ACCUMULATOR:
+        return getAccumulator();
+      case STACK_POINTER:
+        return getStackPointer();
+      case FRAME_POINTER:
+        return getFramePointer();
+      case RETURN_ADDRESS_REGISTER:
+        return getReturnAddress();
+      default:
+        throw new IllegalArgumentException("Unknown register " + register);
+    }
+  }
+
+  /**
+   * Sets the value of a register.
+   *
+   * @param register the register
+   * @param value the new value
+   */
+  default void setRegister(MiMaRegister register, int value) {
+    switch (register) {
+      case INSTRUCTION_ADDRESS_REGISTER:
+        setInstructionPointer(value);
+        break;
+      case ACCUMULATOR:
+        setAccumulator(value);
+        break;
+      case STACK_POINTER:
+        setStackPointer(value);
+        break;
+      case FRAME_POINTER:
+        setFramePointer(value);
+        break;
+      case RETURN_ADDRESS_REGISTER:
+        setReturnAddress(value);
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown register " + register);
+    }
+  }
+
+  int getAccumulator();
+
+  void setAccumulator(int accumulator);
+
+  int getAluInputLeft();
+
+  void setAluInputLeft(int aluInputLeft);
+
+  int getAluInputRight();
+
+  void setAluInputRight(int aluInputRight);
+
+  int getInstruction();
+
+  void setInstruction(int instruction);
+
+  int getInstructionPointer();
+
+  void setInstructionPointer(int instructionPointer);
+
+  int getReturnAddress();
+
+  void setReturnAddress(int returnAddress);
+
+  int getStackPointer();
+
+  void setStackPointer(int stackPointer);
+
+  int getFramePointer();
+
+  void setFramePointer(int framePointer);
+
+  /**
+   * Returns the value at a given memory address.
+   *
+   * @param address the address to read from
+   * @return the value at this address
+   * @throws MemoryNotInitializedException if the memory is not yet initialized
+   * @throws NumberOverflowException if the address does not fit into an address
+   */
+  int getMemory(int address) throws MemoryNotInitializedException, NumberOverflowException;
+
+  /**
+   * Sets the value at the given address.
+   *
+   * @param address the address to write to
+   * @param value the value to write. Coerced to a value
+   * @throws NumberOverflowException if the address does not fit into an address
+   */
+  void setMemory(int address, int value) throws NumberOverflowException;
+
+  /**
+   * Returns the current state of the machine.
+   *
+   * @return the current state
+   */
+  State toState();
+
+  /**
+   * Replaces the whole machine with the given state.
+   *
+   * @param state the state to load
+   */
+  void load(State state);
+}
@@ -0,0 +1,138 @@
+package me.ialistannen.mimadebugger.machine.instructions;
+
+import me.ialistannen.mimadebugger.exceptions.MemoryNotInitializedException;
+import me.ialistannen.mimadebugger.exceptions.NumberOverflowException;
+import me.ialistannen.mimadebugger.machine.ImmutableState;
+import me.ialistannen.mimadebugger.machine.MiMaRegister;
+import me.ialistannen.mimadebugger.machine.State;
+import me.ialistannen.mimadebugger.machine.memory.MainMemory;
+import me.ialistannen.mimadebugger.machine.memory.RegisterFile;
+
+/**
+ * A {@link MachineContext} backed by a {@link State}, used to apply a
+ * {@link Instruction.MachineAction} to an immutable state.
+ */
+final class StateContext implements MachineContext {
+
+  private final RegisterFile registers;
+  private MainMemory memory;
+
+  StateContext(State state) {
+    this.registers = new RegisterFile(state.registers());
+    this.memory = state.memory();
+  }
+
+  @Override
+  public int getRegister(MiMaRegister register) {
+    return registers.get(register);
+  }
+
+  @Override
+  public void setRegister(MiMaRegister register, int value) {
+    registers.set(register, value);
+  }
+
+  @Override
+  public int getAccumulator() {
+    return registers.get(MiMaRegister.ACCUMULATOR);
+  }
+
+  @Override
+  public void setAccumulator(int accumulator) {
+    registers.set(MiMaRegister.ACCUMULATOR, accumulator);
+  }
+
+  @Override
+  public int getAluInputLeft() {
+    return registers.getAluInputLeft();
+  }
+
+  @Override
+  public void setAluInputLeft(int aluInputLeft) {
+    registers.setAluInputLeft(aluInputLeft);
+  }
+
+  @Override
+  public int getAluInputRight() {
+    return registers.getAluInputRight();
+  }
+
+  @Override
+  public void setAluInputRight(int aluInputRight) {
+    registers.setAluInputRight(aluInputRight);
+  }
+
+  @Override
+  public int getInstruction() {
+    return registers.getInstruction();
+  }
+
+  @Override
+  public void setInstruction(int instruction) {
+    registers.setInstruction(instruction);
+  }
+
+  @Override
+  public int getInstructionPointer() {
+    return registers.get(MiMaRegister.INSTRUCTION_ADDRESS_REGISTER);
+  }
+
+  @Override
+  public void setInstructionPointer(int instructionPointer) {
+    registers.set(MiMaRegister.INSTRUCTION_ADDRESS_REGISTER, instructionPointer);
+  }
+
+  @Override
+  public int getReturnAddress() {
+    return registers.get(MiMaRegister.RETURN_ADDRESS_REGISTER);
+  }
+
+  @Override
+  public void setReturnAddress(int returnAddress) {
+    registers.set(MiMaRegister.RETURN_ADDRESS_REGISTER, returnAddress);
+  }
+
+  @Override
+  public int getStackPointer() {
+    return registers.get(MiMaRegister.STACK_POINTER);
+  }
+
+  @Override
+  public void setStackPointer(int stackPointer) {
+    registers.set(MiMaRegister.STACK_POINTER, stackPointer);
+  }
+
+  @Override
+  public int getFramePointer() {
+    return registers.get(MiMaRegister.FRAME_POINTER);
+  }
+
+  @Override
+  public void setFramePointer(int framePointer) {
+    registers.set(MiMaRegister.FRAME_POINTER, framePointer);
+  }
+
+  @Override
+  public int getMemory(int address) throws MemoryNotInitializedException, NumberOverflowException {
+    return memory.get(address);
+  }
+
+  @Override
+  public void setMemory(int address, int value) throws NumberOverflowException {
+    memory = memory.set(address, value);
+  }
+
+  @Override
+  public State toState() {
+    return ImmutableState.builder()
+        .memory(memory)
+        .registers(registers.toRegisters())
+        .build();
+  }
+
+  @Override
+  public void load(State state) {
+    registers.load(state.registers());
+    memory = state.memory();
+  }
+}
@@ -16,19 +16,15 @@ public class Arithmetic {
       .opcode(3)
       .name("ADD")
       .description("memory[argument] + Accumulator -> Accumulator")
-      .action((state, address) -> state.copy()
-          .withRegisters(
-              state.registers().copy()
-                  .withAccumulator(
-                      // Underflow properly
-                      MemoryFormat.coerceToValue(
-                          state.registers().accumulator() + state.memory().get(address)
-                      )
-                  )
-                  .withAluInputLeft(state.registers().accumulator())
-                  .withAluInputRight(state.memory().get(address))
-          )
-      )
+      .machineAction((context, address) -> {
+        int accumulator = context.getAccumulator();
+        int value = context.getMemory(address);
+
+        // Underflow properly
+        context.setAccumulator(MemoryFormat.coerceToValue(accumulator + value));
+        context.setAluInputLeft(accumulator);
+        context.setAluInputRight(value);
+      })
       .build();
 
 
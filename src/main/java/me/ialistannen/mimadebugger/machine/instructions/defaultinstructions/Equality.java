@@ -16,14 +16,9 @@ public class Equality {
       .opcode(7)
       .name("EQL")
       .description("Accumulator == memory[argument] ? -1 : 0")
-      .action((state, address) -> state.copy()
-          .withRegisters(
-              state.registers().copy()
-                  .withAccumulator(MemoryFormat.coerceToValue(
-                      state.registers().accumulator() == state.memory().get(address) ? -1 : 0
-                  ))
-          )
-      )
+      .machineAction((context, address) -> context.setAccumulator(MemoryFormat.coerceToValue(
+          context.getAccumulator() == context.getMemory(address) ? -1 : 0
+      )))
       .build();
 
 
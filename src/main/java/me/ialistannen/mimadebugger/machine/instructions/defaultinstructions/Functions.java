@@ -20,13 +20,12 @@ public class Functions {
       .name("CALL")
       .description("IAR -> RA ; argument -> IAR")
       .hasArgument(true)
-      .action((state, address) ->
-          state.copy().withRegisters(
-              state.registers().copy()
-                  .withReturnAddress(state.registers().instructionPointer())
-                  .withInstructionPointer(MemoryFormat.coerceToAddress(address))
-          )
-      )
+      .machineAction((context, address) -> {
+        int target = MemoryFormat.coerceToAddress(address);
+
+        context.setReturnAddress(context.getInstructionPointer());
+        context.setInstructionPointer(target);
+      })
       .build();
 
   public static final Instruction RET = ImmutableInstruction.builder()
@@ -34,14 +33,9 @@ public class Functions {
       .name("RET")
       .description("RA -> IAR")
       .hasArgument(false)
-      .action((state, address) ->
-          state.copy().withRegisters(
-              state.registers().copy()
-                  .withInstructionPointer(MemoryFormat.coerceToAddress(
-                      state.registers().returnAddress()
-                  ))
-          )
-      )
+      .machineAction((context, address) -> context.setInstructionPointer(
+          MemoryFormat.coerceToAddress(context.getReturnAddress())
+      ))
       .build();
 
   public static final Instruction LDRA = ImmutableInstruction.builder()
@@ -49,11 +43,7 @@ public class Functions {
       .name("LDRA")
       .description("RA -> Accumulator")
       .hasArgument(false)
-      .action((state, address) -> state.copy().withRegisters(
-          state.registers().copy().withAccumulator(
-              state.registers().returnAddress()
-          )
-      ))
+      .machineAction((context, address) -> context.setAccumulator(context.getReturnAddress()))
       .build();
 
   public static final Instruction STRA = ImmutableInstruction.builder()
@@ -61,10 +51,8 @@ public class Functions {
       .name("STRA")
       .description("Accumulator -> RA")
       .hasArgument(false)
-      .action((state, address) -> state.copy().withRegisters(
-          state.registers().copy().withReturnAddress(
-              MemoryFormat.coerceToAddress(state.registers().accumulator())
-          )
+      .machineAction((context, address) -> context.setReturnAddress(
+          MemoryFormat.coerceToAddress(context.getAccumulator())
       ))
       .build();
 }
@@ -16,28 +16,22 @@ public class Jump {
       .opcode(8)
       .name("JMP")
       .description("argument -> IAR")
-      .action((state, address) -> state.copy()
-          .withRegisters(
-              state.registers().copy()
-                  .withInstructionPointer(MemoryFormat.coerceToAddress(address))
-          )
-      )
+      .machineAction((context, address) -> context.setInstructionPointer(
+          MemoryFormat.coerceToAddress(address)
+      ))
       .build();
 
   public static final Instruction JUMP_IF_NEGATIVE = ImmutableInstruction.builder()
       .opcode(9)
       .name("JMN")
       .description("Accumulator < 0 ? address -> IAR")
-      .action((state, address) -> state.copy()
-          .withRegisters(
-              state.registers().copy()
-                  .withInstructionPointer(MemoryFormat.coerceToAddress(
-                      state.registers().accumulator() < 0
-                          ? address
-                          : state.registers().instructionPointer()
-                  ))
+      .machineAction((context, address) -> context.setInstructionPointer(
+          MemoryFormat.coerceToAddress(
+              context.getAccumulator() < 0
+                  ? address
+                  : context.getInstructionPointer()
           )
-      )
+      ))
       .build();
 
 
@@ -16,36 +16,25 @@ public class Load {
       .opcode(0)
       .name("LDC")
       .description("argument -> Accumulator")
-      .action((state, argument) -> state.copy()
-          .withRegisters(
-              state.registers().copy()
-                  .withAccumulator(MemoryFormat.coerceToAddress(argument))
-          )
-      )
+      .machineAction((context, argument) -> context.setAccumulator(
+          MemoryFormat.coerceToAddress(argument)
+      ))
       .build();
 
   public static final Instruction LOAD_FROM_ADDRESS = ImmutableInstruction.builder()
       .opcode(1)
       .name("LDV")
       .description("memory[argument] -> Accumulator")
-      .action((state, argument) -> state.copy()
-          .withRegisters(
-              state.registers().copy()
-                  .withAccumulator(state.memory().get(argument))
-          )
-      )
+      .machineAction((context, argument) -> context.setAccumulator(context.getMemory(argument)))
       .build();
 
   public static final Instruction LOAD_INDIRECT_FROM_ADDRESS = ImmutableInstruction.builder()
       .opcode(10)
       .name("LDIV")
       .description("memory[ memory[argument] ] -> Accumulator")
-      .action((state, argument) -> state.copy()
-          .withRegisters(
-              state.registers().copy()
-                  .withAccumulator(state.memory().get(state.memory().get(argument)))
-          )
-      )
+      .machineAction((context, argument) -> context.setAccumulator(
+          context.getMemory(context.getMemory(argument))
+      ))
       .build();
 
   public static List<Instruction> getInstructions() {
@@ -16,42 +16,27 @@ public class Logical {
       .opcode(4)
       .name("AND")
       .description("Accumulator & memory[argument] -> Accumulator")
-      .action((state, address) -> state.copy()
-          .withRegisters(
-              state.registers().copy()
-                  .withAccumulator(MemoryFormat.coerceToValue(
-                      state.registers().accumulator() & state.memory().get(address)
-                  ))
-          )
-      )
+      .machineAction((context, address) -> context.setAccumulator(MemoryFormat.coerceToValue(
+          context.getAccumulator() & context.getMemory(address)
+      )))
       .build();
 
   public static final Instruction OR = ImmutableInstruction.builder()
       .opcode(5)
       .name("OR")
       .description("Accumulator | memory[argument] -> Accumulator")
-      .action((state, address) -> state.copy()
-          .withRegisters(
-              state.registers().copy()
-                  .withAccumulator(MemoryFormat.coerceToValue(
-                      state.registers().accumulator() | state.memory().get(address)
-                  ))
-          )
-      )
+      .machineAction((context, address) -> context.setAccumulator(MemoryFormat.coerceToValue(
+          context.getAccumulator() | context.getMemory(address)
+      )))
       .build();
 
   public static final Instruction XOR = ImmutableInstruction.builder()
       .opcode(6)
       .name("XOR")
       .description("Accumulator ^ memory[argument] -> Accumulator")
-      .action((state, address) -> state.copy()
-          .withRegisters(
-              state.registers().copy()
-                  .withAccumulator(MemoryFormat.coerceToValue(
-                      state.registers().accumulator() ^ state.memory().get(address)
-                  ))
-          )
-      )
+      .machineAction((context, address) -> context.setAccumulator(MemoryFormat.coerceToValue(
+          context.getAccumulator() ^ context.getMemory(address)
+      )))
       .build();
 
   public static final Instruction NOT = ImmutableInstruction.builder()
@@ -59,16 +44,17 @@ public class Logical {
       .name("NOT")
       .description("~Accumulator -> Accumulator")
       .hasArgument(false)
-      .action((state, ignored) -> state.copy()
-          .withRegisters(
-              state.registers().copy()
-                  .withAccumulator(not(state.registers().accumulator()))
-          )
-      )
+      .machineAction((context, ignored) -> context.setAccumulator(not(context.getAccumulator())))
       .build();
 
 
-  private static int not(int value) {
+  /**
+   * Computes the ones' complement of a value, preserving its sign on 32 bits.
+   *
+   * @param value the value to negate
+   * @return the bitwise negation of the value
+   */
+  public static int not(int value) {
     int masked = MemoryFormat.maskToValue(~value);
 
     // expand the sign if the complement is negative, to preserve it on 32 bits
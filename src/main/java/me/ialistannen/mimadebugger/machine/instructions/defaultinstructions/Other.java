@@ -23,17 +23,18 @@ public class Other {
       .opcode(0xF2)
       .description("Accumulator rotated right by argument -> Accumulator")
       .hasArgument(false)
-      .action((state, ignored) -> {
-        int accumulator = state.registers().accumulator();
-        int result = rotateRight(accumulator);
-
-        return state.copy().withRegisters(
-            state.registers().copy().withAccumulator(result)
-        );
-      })
+      .machineAction((context, ignored) -> context.setAccumulator(
+          rotateRight(context.getAccumulator())
+      ))
       .build();
 
-  private static int rotateRight(int value) {
+  /**
+   * Rotates a value right by one bit, wrapping the lowest bit into the sign bit of the value.
+   *
+   * @param value the value to rotate
+   * @return the rotated value
+   */
+  public static int rotateRight(int value) {
     int result = value >>> 1;
     result = MemoryFormat.coerceToValue(result);
     result = MemoryFormat.setBit(
@@ -50,10 +51,8 @@ public class Other {
       .name("ADC")
       .description("Accumulator + argument -> Accumulator")
       .hasArgument(true)
-      .action((state, address) -> state.copy().withRegisters(
-          state.registers().copy().withAccumulator(
-              state.registers().accumulator() + MemoryFormat.coerceToLargeOpcodeArgument(address)
-          )
+      .machineAction((context, address) -> context.setAccumulator(
+          context.getAccumulator() + MemoryFormat.coerceToLargeOpcodeArgument(address)
       ))
       .build();
 }
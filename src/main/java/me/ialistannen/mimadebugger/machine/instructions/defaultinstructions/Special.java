@@ -17,7 +17,7 @@ public class Special {
       .name("HALT")
       .description("Stops execution")
       .hasArgument(false)
-      .action((state, address) -> {
+      .machineAction((context, address) -> {
         throw new ProgramHaltException();
       })
       .build();
@@ -20,12 +20,9 @@ public class Stack {
       .description("SP + argument -> Accumulator")
       .hasArgument(true)
       .argumentWidth(16)
-      .action((state, address) -> state.copy().withRegisters(
-          state.registers().copy()
-              .withAccumulator(state.memory().get(
-                  state.registers().stackPointer() + MemoryFormat.coerceToValue(address)
-              ))
-      ))
+      .machineAction((context, address) -> context.setAccumulator(context.getMemory(
+          context.getStackPointer() + MemoryFormat.coerceToValue(address)
+      )))
       .build();
 
   public static final Instruction STRS = ImmutableInstruction.builder()
@@ -34,11 +31,9 @@ public class Stack {
       .description("Accumulator -> memory[SP + argument]")
       .hasArgument(true)
       .argumentWidth(16)
-      .action((state, address) -> state.copy().withMemory(
-          state.memory().set(
-              state.registers().stackPointer() + MemoryFormat.coerceToValue(address),
-              state.registers().accumulator()
-          )
+      .machineAction((context, address) -> context.setMemory(
+          context.getStackPointer() + MemoryFormat.coerceToValue(address),
+          context.getAccumulator()
       ))
       .build();
 
@@ -48,12 +43,9 @@ public class Stack {
       .description("FP + argument -> Accumulator")
       .hasArgument(true)
       .argumentWidth(16)
-      .action((state, address) -> state.copy().withRegisters(
-          state.registers().copy()
-              .withAccumulator(state.memory().get(
-                  state.registers().stackPointer() + MemoryFormat.coerceToValue(address)
-              ))
-      ))
+      .machineAction((context, address) -> context.setAccumulator(context.getMemory(
+          context.getStackPointer() + MemoryFormat.coerceToValue(address)
+      )))
       .build();
 
   public static final Instruction STRF = ImmutableInstruction.builder()
@@ -62,11 +54,9 @@ public class Stack {
       .description("Accumulator -> memory[FP + argument]")
       .hasArgument(true)
       .argumentWidth(16)
-      .action((state, address) -> state.copy().withMemory(
-          state.memory().set(
-              state.registers().stackPointer() + MemoryFormat.coerceToValue(address),
-              state.registers().accumulator()
-          )
+      .machineAction((context, address) -> context.setMemory(
+          context.getStackPointer() + MemoryFormat.coerceToValue(address),
+          context.getAccumulator()
       ))
       .build();
 
@@ -75,11 +65,7 @@ public class Stack {
       .name("LDSP")
       .description("SP -> Accumulator")
       .hasArgument(false)
-      .action((state, address) -> state.copy().withRegisters(
-          state.registers().copy().withAccumulator(
-              state.registers().stackPointer()
-          )
-      ))
+      .machineAction((context, address) -> context.setAccumulator(context.getStackPointer()))
       .build();
 
   public static final Instruction STSP = ImmutableInstruction.builder()
@@ -87,10 +73,8 @@ public class Stack {
       .name("STSP")
       .description("Accumulator -> SP")
       .hasArgument(false)
-      .action((state, address) -> state.copy().withRegisters(
-          state.registers().copy().withStackPointer(
-              MemoryFormat.coerceToAddress(state.registers().accumulator())
-          )
+      .machineAction((context, address) -> context.setStackPointer(
+          MemoryFormat.coerceToAddress(context.getAccumulator())
       ))
       .build();
 
@@ -99,11 +83,7 @@ public class Stack {
       .name("LDFP")
       .description("FP -> Accumulator")
       .hasArgument(false)
-      .action((state, address) -> state.copy().withRegisters(
-          state.registers().copy().withAccumulator(
-              state.registers().framePointer()
-          )
-      ))
+      .machineAction((context, address) -> context.setAccumulator(context.getFramePointer()))
       .build();
 
   public static final Instruction STFP = ImmutableInstruction.builder()
@@ -111,10 +91,8 @@ public class Stack {
       .name("STFP")
       .description("Accumulator -> FP")
       .hasArgument(false)
-      .action((state, address) -> state.copy().withRegisters(
-          state.registers().copy().withFramePointer(
-              MemoryFormat.coerceToAddress(state.registers().accumulator())
-          )
+      .machineAction((context, address) -> context.setFramePointer(
+          MemoryFormat.coerceToAddress(context.getAccumulator())
       ))
       .build();
 
@@ -15,24 +15,16 @@ public class Store {
       .opcode(2)
       .name("STV")
       .description("Accumulator -> memory[argument]")
-      .action((state, address) -> state.copy()
-          .withMemory(
-              state.memory()
-                  .set(address, state.registers().accumulator())
-          )
-      )
+      .machineAction((context, address) -> context.setMemory(address, context.getAccumulator()))
       .build();
 
   public static final Instruction STORE_INDIRECT = ImmutableInstruction.builder()
       .opcode(11)
       .name("STIV")
       .description("Accumulator -> memory[ memory[argument] ]")
-      .action((state, address) -> state.copy()
-          .withMemory(
-              state.memory()
-                  .set(state.memory().get(address), state.registers().accumulator())
-          )
-      )
+      .machineAction((context, address) -> context.setMemory(
+          context.getMemory(address), context.getAccumulator()
+      ))
       .build();
 
   public static List<Instruction> getInstructions() {
@@ -0,0 +1,16 @@
+package me.ialistannen.mimadebugger.machine.memory;
+
+/**
+ * Accepts an address and the value stored at it, without boxing either.
+ */
+@FunctionalInterface
+public interface IntIntConsumer {
+
+  /**
+   * Performs this operation on the given arguments.
+   *
+   * @param address the address
+   * @param value the value at the address
+   */
+  void accept(int address, int value);
+}
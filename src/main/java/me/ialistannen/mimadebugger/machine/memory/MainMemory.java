@@ -1,29 +1,57 @@
 package me.ialistannen.mimadebugger.machine.memory;
 
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Objects;
-import java.util.stream.Collectors;
+import java.util.function.IntConsumer;
 import me.ialistannen.mimadebugger.exceptions.MemoryNotInitializedException;
 import me.ialistannen.mimadebugger.exceptions.NumberOverflowException;
 import me.ialistannen.mimadebugger.gui.state.MemoryValue;
 import me.ialistannen.mimadebugger.parser.util.DoUnchecked;
 import me.ialistannen.mimadebugger.util.MemoryFormat;
-import org.pcollections.HashTreePMap;
-import org.pcollections.PMap;
 
 /**
  * Represents the main memory of the machine.
+ *
+ * <p>The memory is a persistent radix trie, so a modified copy shares everything but the path to
+ * the changed address with the original. Its hash code is maintained on every write, so hashing
+ * and comparing memories does not need to look at every address.</p>
+ *
+ * <p>A memory created {@link #fromImage(MemoryImage) from an image} reads from the image and only
+ * builds its trie when it is first needed.</p>
  */
 public class MainMemory {
 
-  private PMap<Integer, Integer> data;
+  private static final MainMemory EMPTY = new MainMemory(MemoryTrie.EMPTY);
 
-  private MainMemory(PMap<Integer, Integer> data) {
+  /**
+   * The contents of this memory. Built from the {@link #image} on first use, if the memory was
+   * created from an image.
+   */
+  private volatile MemoryTrie data;
+  /**
+   * The image of this memory, built on first use.
+   */
+  private volatile MemoryImage image;
+
+  private MainMemory(MemoryTrie data) {
     this.data = data;
   }
 
+  private MainMemory(MemoryImage image) {
+    this.image = image;
+  }
+
+  private MemoryTrie data() {
+    MemoryTrie result = data;
+    if (result == null) {
+      result = image.toTrie();
+      data = result;
+    }
+    return result;
+  }
+
   /**
    * Returns the value at a given memory address.
    *
@@ -35,10 +63,38 @@ public class MainMemory {
   public int get(int address) throws MemoryNotInitializedException, NumberOverflowException {
     int fixedLengthAddress = MemoryFormat.coerceToAddress(address);
 
-    if (!data.containsKey(fixedLengthAddress)) {
-      throw new MemoryNotInitializedException(fixedLengthAddress);
+    MemoryTrie current = data;
+    if (current == null) {
+      if (!image.isInitialized(fixedLengthAddress)) {
+        throw new MemoryNotInitializedException(fixedLengthAddress);
+      }
+      return image.get(fixedLengthAddress);
+    }
+    return current.getInitialized(fixedLengthAddress);
+  }
+
+  /**
+   * Checks whether an address is initialized.
+   *
+   * @param address the address
+   * @return true if the address is in range and initialized
+   */
+  public boolean isInitialized(int address) {
+    if (address < 0 || address >= 1 << MemoryFormat.ADDRESS_LENGTH) {
+      return false;
     }
-    return data.get(fixedLengthAddress);
+    MemoryTrie current = data;
+    return current == null ? image.isInitialized(address) : current.containsKey(address);
+  }
+
+  /**
+   * Returns the number of initialized addresses, i.e. how much memory the program touched.
+   *
+   * @return the number of initialized addresses
+   */
+  public int getInitializedCount() {
+    MemoryTrie current = data;
+    return current == null ? image.getInitializedCount() : current.size();
   }
 
   /**
@@ -53,53 +109,220 @@ public class MainMemory {
   public MainMemory set(int address, int value) throws NumberOverflowException {
     int fixedLengthAddress = MemoryFormat.coerceToAddress(address);
 
-    return new MainMemory(data.plus(fixedLengthAddress, MemoryFormat.coerceToValue(value)));
+    MemoryTrie current = data();
+    MemoryTrie result = current.put(fixedLengthAddress, MemoryFormat.coerceToValue(value));
+    return result == current ? this : new MainMemory(result);
+  }
+
+  /**
+   * Marks the given address as not initialized again.
+   *
+   * @param address the address to clear
+   * @return the resulting MainMemory object
+   * @throws NumberOverflowException if the value does not fit into an address
+   */
+  public MainMemory unset(int address) throws NumberOverflowException {
+    int fixedLengthAddress = MemoryFormat.coerceToAddress(address);
+
+    MemoryTrie current = data();
+    MemoryTrie result = current.remove(fixedLengthAddress);
+    if (result == current) {
+      return this;
+    }
+    return of(result);
+  }
+
+  /**
+   * Passes every initialized address and its value to the consumer, in ascending order.
+   *
+   * @param consumer the consumer
+   */
+  public void forEach(IntIntConsumer consumer) {
+    data().forEach(consumer);
+  }
+
+  /**
+   * Passes every initialized address in the range and its value to the consumer, in ascending
+   * order. This takes time proportional to the size of the range, not of the whole memory.
+   *
+   * @param from the first address, inclusive
+   * @param to the last address, exclusive
+   * @param consumer the consumer
+   * @throws IllegalArgumentException if the range is not part of the address space
+   */
+  public void forEachInRange(int from, int to, IntIntConsumer consumer) {
+    checkRange(from, to);
+    data().forEachInRange(from, to, consumer);
+  }
+
+  /**
+   * Copies the values in the range into an array. Uninitialized addresses are copied as 0.
+   *
+   * @param from the first address, inclusive
+   * @param to the last address, exclusive
+   * @param target the array to copy to, starting at index 0. At least {@code to - from} long
+   * @throws IllegalArgumentException if the range is not part of the address space
+   * @throws IndexOutOfBoundsException if the array is too short
+   */
+  public void copyRange(int from, int to, int[] target) {
+    checkRange(from, to);
+    Arrays.fill(target, 0, to - from, 0);
+    data().forEachInRange(from, to, (address, value) -> target[address - from] = value);
+  }
+
+  /**
+   * Returns the highest initialized address.
+   *
+   * @return the highest initialized address or -1, if no address is initialized
+   */
+  public int highestInitializedAddress() {
+    return data().highestAddress();
+  }
+
+  private static void checkRange(int from, int to) {
+    if (from < 0 || from > to || to > 1 << MemoryFormat.ADDRESS_LENGTH) {
+      throw new IllegalArgumentException("Invalid address range: [" + from + ", " + to + ")");
+    }
+  }
+
+  /**
+   * Passes every address whose value differs between this and the other memory to the consumer,
+   * in ascending order. Addresses only initialized in one of them differ as well.
+   *
+   * <p>Parts of the memory shared by both are skipped, so this takes time proportional to the
+   * number of writes separating the memories, if one was derived from the other.</p>
+   *
+   * @param other the memory to compare with
+   * @param consumer the consumer
+   */
+  public void forEachDifference(MainMemory other, IntConsumer consumer) {
+    data().forEachDifference(other.data(), consumer);
+  }
+
+  /**
+   * Passes every maximal run of consecutive initialized addresses to the consumer, in ascending
+   * order.
+   *
+   * @param consumer the consumer, accepting the start (inclusive) and end (exclusive) of a run
+   */
+  public void forEachInitializedRange(IntIntConsumer consumer) {
+    data().forEachRange(consumer);
+  }
+
+  /**
+   * Checks whether the trie of this memory is built, i.e. whether operations like
+   * {@link #forEachDifference(MainMemory, IntConsumer)} work on it without reading the whole
+   * {@link MemoryImage} first.
+   *
+   * @return true if the trie is built
+   */
+  public boolean isTrieBuilt() {
+    return data != null;
   }
 
+  /**
+   * Returns an unmodifiable view of the memory, ordered by address.
+   *
+   * @return all initialized addresses and their values
+   */
   public Map<Integer, Integer> getMemory() {
-    return data;
+    return data().asMap();
+  }
+
+  /**
+   * Returns a paged image of this memory. It is built once and then shared by every machine
+   * executing this memory.
+   *
+   * @return the image of this memory
+   */
+  public MemoryImage toImage() {
+    MemoryImage result = image;
+    if (result == null) {
+      result = MemoryImage.of(data());
+      image = result;
+    }
+    return result;
   }
 
   @Override
   public String toString() {
     StringBuilder stringBuilder = new StringBuilder();
 
-    data.entrySet().stream().sorted(Entry.comparingByKey())
-        .forEach(entry ->
-            stringBuilder.append(String.format(
-                "%24s (%8d)  |  %24s (%4d %8d)",
-                MemoryFormat.toString(entry.getKey(), 24, true),
-                entry.getKey(),
-                MemoryFormat.toString(entry.getValue(), 24, true),
-                MemoryFormat.extractLargeOpcode(entry.getValue()),
-                DoUnchecked.doIt(() -> MemoryFormat.extractArgument(entry.getValue()))
-            ))
-                .append(System.lineSeparator())
-        );
+    data().forEach((address, value) ->
+        stringBuilder.append(String.format(
+            "%24s (%8d)  |  %24s (%4d %8d)",
+            MemoryFormat.toString(address, 24, true),
+            address,
+            MemoryFormat.toString(value, 24, true),
+            MemoryFormat.extractLargeOpcode(value),
+            DoUnchecked.doIt(() -> MemoryFormat.extractArgument(value))
+        ))
+            .append(System.lineSeparator())
+    );
 
     return stringBuilder.toString();
   }
 
+  static MainMemory of(MemoryTrie data) {
+    return data == MemoryTrie.EMPTY ? EMPTY : new MainMemory(data);
+  }
+
+  /**
+   * Creates a memory with the contents of an image. The image is used as is, the trie holding the
+   * memory is only built once an operation needs it.
+   *
+   * @param image the image
+   * @return the new MainMemory instance
+   */
+  public static MainMemory fromImage(MemoryImage image) {
+    return new MainMemory(image);
+  }
+
   /**
    * Creates a new MainMemory instance.
    *
    * @return the new MainMemory instance
    */
   public static MainMemory create() {
-    return new MainMemory(HashTreePMap.empty());
+    return EMPTY;
   }
 
   /**
    * Creates a new MainMemory instance.
    *
-   * @param values the values to store in it
+   * @param values the values to store in it. Later values overwrite earlier ones at the same
+   *     address
    * @return the new MainMemory instance
+   * @throws IllegalArgumentException if an address is out of range
    */
   public static MainMemory create(List<MemoryValue> values) {
-    return new MainMemory(HashTreePMap.from(
-        values.stream()
-            .collect(Collectors.toMap(MemoryValue::address, MemoryValue::representation))
-    ));
+    MemoryTrie.Builder data = MemoryTrie.EMPTY.toBuilder();
+    for (MemoryValue value : values) {
+      int address = value.address();
+      if (address < 0 || address >= 1 << MemoryFormat.ADDRESS_LENGTH) {
+        throw new IllegalArgumentException("Address out of range: " + address);
+      }
+      data.put(address, value.representation());
+    }
+    return of(data.build());
+  }
+
+  /**
+   * Creates a builder for a new, empty memory.
+   *
+   * @return the new builder
+   */
+  public static Builder builder() {
+    return EMPTY.toBuilder();
+  }
+
+  /**
+   * Creates a builder starting out with the contents of this memory.
+   *
+   * @return the new builder
+   */
+  public Builder toBuilder() {
+    return new Builder(this);
   }
 
   @Override
@@ -111,11 +334,53 @@ public class MainMemory {
       return false;
     }
     MainMemory memory = (MainMemory) o;
-    return Objects.equals(data, memory.data);
+    return Objects.equals(data(), memory.data());
   }
 
   @Override
   public int hashCode() {
-    return Objects.hash(data);
+    MemoryTrie current = data;
+    return current == null ? image.contentHash() : current.hashCode();
+  }
+
+  /**
+   * Collects many writes and turns them into a single {@link MainMemory}, without creating a new
+   * memory for every write.
+   *
+   * <p>A builder can only be built once.</p>
+   */
+  public static final class Builder {
+
+    private final MainMemory base;
+    private final MemoryTrie.Builder data;
+
+    private Builder(MainMemory base) {
+      this.base = base;
+      this.data = base.data().toBuilder();
+    }
+
+    /**
+     * Sets the value at the given address.
+     *
+     * @param address the address to write to
+     * @param value the value to write
+     * @return this builder
+     * @throws NumberOverflowException if the value does not fit into an address
+     * @throws IllegalStateException if the memory was already built
+     */
+    public Builder set(int address, int value) throws NumberOverflowException {
+      data.put(MemoryFormat.coerceToAddress(address), MemoryFormat.coerceToValue(value));
+      return this;
+    }
+
+    /**
+     * Builds the memory.
+     *
+     * @return the built memory
+     */
+    public MainMemory build() {
+      MemoryTrie result = data.build();
+      return result == base.data() ? base : of(result);
+    }
   }
 }
@@ -0,0 +1,244 @@
+package me.ialistannen.mimadebugger.machine.memory;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import me.ialistannen.mimadebugger.util.MemoryFormat;
+
+/**
+ * A flat, paged copy of a {@link MainMemory}, that machines executing it share.
+ *
+ * <p>The address space is split into {@link #PAGE_COUNT} pages of {@link #PAGE_SIZE} words. Pages
+ * without any initialized address all refer to the same empty page. The pages are never modified:
+ * a machine has to copy a page before its first write to it.</p>
+ *
+ * <p>An image of packed words decodes a page on its first access, so creating it does not read
+ * the words at all.</p>
+ */
+public final class MemoryImage {
+
+  public static final int PAGE_BITS = 10;
+  public static final int PAGE_SIZE = 1 << PAGE_BITS;
+  public static final int PAGE_MASK = PAGE_SIZE - 1;
+  public static final int PAGE_COUNT = 1 << (MemoryFormat.ADDRESS_LENGTH - PAGE_BITS);
+
+  private static final int[] EMPTY_VALUES = new int[PAGE_SIZE];
+  private static final boolean[] EMPTY_INITIALIZED = new boolean[PAGE_SIZE];
+  private static final boolean[] FULL_INITIALIZED = new boolean[PAGE_SIZE];
+
+  static {
+    Arrays.fill(FULL_INITIALIZED, true);
+  }
+
+  /**
+   * The value pages. A page of a packed image is null until it is decoded.
+   */
+  private final AtomicReferenceArray<int[]> values;
+  private final boolean[][] initialized;
+  private final int initializedBound;
+  private final int initializedCount;
+  /**
+   * The packed words pages are decoded from, null if all pages are decoded already.
+   */
+  private final ByteBuffer packedWords;
+  private final int packedOffset;
+
+  private volatile boolean contentHashed;
+  private int contentHash;
+
+  private MemoryImage(int[][] values, boolean[][] initialized, int initializedBound,
+      int initializedCount, ByteBuffer packedWords, int packedOffset) {
+    this.values = new AtomicReferenceArray<>(values);
+    this.initialized = initialized;
+    this.initializedBound = initializedBound;
+    this.initializedCount = initializedCount;
+    this.packedWords = packedWords;
+    this.packedOffset = packedOffset;
+  }
+
+  /**
+   * Builds the image of the given memory.
+   *
+   * @param data the memory contents
+   * @return the image
+   */
+  static MemoryImage of(MemoryTrie data) {
+    int[][] values = new int[PAGE_COUNT][];
+    boolean[][] initialized = new boolean[PAGE_COUNT][];
+    int[] bound = new int[1];
+
+    data.forEach((address, value) -> {
+      int page = address >>> PAGE_BITS;
+      if (values[page] == null) {
+        values[page] = new int[PAGE_SIZE];
+        initialized[page] = new boolean[PAGE_SIZE];
+      }
+      values[page][address & PAGE_MASK] = value;
+      initialized[page][address & PAGE_MASK] = true;
+      bound[0] = address + 1;
+    });
+
+    fillEmptyPages(values, initialized);
+
+    MemoryImage image = new MemoryImage(values, initialized, bound[0], data.size(), null, 0);
+    // the trie maintains the same hash, so it never has to be computed from the pages
+    image.contentHash = data.hashCode();
+    image.contentHashed = true;
+    return image;
+  }
+
+  /**
+   * Builds the image of a dense memory, stored as 3 big endian bytes per word in the layout of the
+   * {@link me.ialistannen.mimadebugger.fileio.MimaBinaryFormat}. The words are decoded a page at a
+   * time with absolute reads when the page is first accessed, so the buffer can be a read only
+   * mapping of a file. It must not be modified afterwards.
+   *
+   * @param words the buffer holding the words
+   * @param offset the offset of the first word (address 0) in the buffer
+   * @param count the number of words, all of them initialized
+   * @return the image
+   * @throws IllegalArgumentException if the words do not fit into the address space
+   */
+  public static MemoryImage ofPacked(ByteBuffer words, int offset, int count) {
+    if (count < 0 || count > PAGE_COUNT * PAGE_SIZE) {
+      throw new IllegalArgumentException("Invalid number of words: " + count);
+    }
+    int[][] values = new int[PAGE_COUNT][];
+    boolean[][] initialized = new boolean[PAGE_COUNT][];
+
+    for (int page = 0; page * PAGE_SIZE < count; page++) {
+      int length = Math.min(PAGE_SIZE, count - page * PAGE_SIZE);
+      if (length == PAGE_SIZE) {
+        initialized[page] = FULL_INITIALIZED;
+      } else {
+        initialized[page] = new boolean[PAGE_SIZE];
+        Arrays.fill(initialized[page], 0, length, true);
+      }
+    }
+
+    fillEmptyPages(values, initialized);
+
+    return new MemoryImage(values, initialized, count, count, words, offset);
+  }
+
+  private int[] page(int page) {
+    int[] result = values.get(page);
+    if (result == null) {
+      // decoding a page twice in concurrent calls is harmless, both results are equal
+      result = decodePage(page);
+      values.set(page, result);
+    }
+    return result;
+  }
+
+  private int[] decodePage(int page) {
+    int length = Math.min(PAGE_SIZE, initializedBound - page * PAGE_SIZE);
+    int[] pageValues = new int[PAGE_SIZE];
+    int position = packedOffset + page * PAGE_SIZE * 3;
+
+    for (int i = 0; i < length; i++, position += 3) {
+      int word = (packedWords.get(position) & 0xFF) << 16
+          | (packedWords.get(position + 1) & 0xFF) << 8
+          | packedWords.get(position + 2) & 0xFF;
+      // sign extend the 24 bit word
+      pageValues[i] = word << Byte.SIZE >> Byte.SIZE;
+    }
+    return pageValues;
+  }
+
+  private static void fillEmptyPages(int[][] values, boolean[][] initialized) {
+    for (int page = 0; page < PAGE_COUNT; page++) {
+      if (initialized[page] == null) {
+        values[page] = EMPTY_VALUES;
+        initialized[page] = EMPTY_INITIALIZED;
+      }
+    }
+  }
+
+  /**
+   * Copies the references to all pages into the given page tables, decoding the pages that were
+   * not accessed yet. The pages themselves are shared and must not be modified.
+   *
+   * @param values the page table for the values, {@link #PAGE_COUNT} long
+   * @param initialized the page table for the initialized flags, {@link #PAGE_COUNT} long
+   */
+  public void sharePages(int[][] values, boolean[][] initialized) {
+    for (int page = 0; page < PAGE_COUNT; page++) {
+      values[page] = page(page);
+    }
+    System.arraycopy(this.initialized, 0, initialized, 0, PAGE_COUNT);
+  }
+
+  /**
+   * Returns the bound of all initialized addresses.
+   *
+   * @return the highest initialized address plus one or 0, if the memory is empty
+   */
+  public int getInitializedBound() {
+    return initializedBound;
+  }
+
+  /**
+   * Returns the number of initialized addresses.
+   *
+   * @return the number of initialized addresses
+   */
+  int getInitializedCount() {
+    return initializedCount;
+  }
+
+  /**
+   * Checks whether an address is initialized.
+   *
+   * @param address the address, in range
+   * @return true if the address is initialized
+   */
+  boolean isInitialized(int address) {
+    return initialized[address >>> PAGE_BITS][address & PAGE_MASK];
+  }
+
+  /**
+   * Returns the value at an address.
+   *
+   * @param address the address, in range
+   * @return the value or 0, if the address is not initialized
+   */
+  int get(int address) {
+    return page(address >>> PAGE_BITS)[address & PAGE_MASK];
+  }
+
+  /**
+   * Builds the trie holding the contents of this image.
+   *
+   * @return the trie
+   */
+  MemoryTrie toTrie() {
+    MemoryTrie.Builder builder = MemoryTrie.EMPTY.toBuilder();
+    for (int address = 0; address < initializedBound; address++) {
+      if (isInitialized(address)) {
+        builder.put(address, get(address));
+      }
+    }
+    return builder.build();
+  }
+
+  /**
+   * Returns the hash of the contents, equal to the hash code of the trie with the same contents.
+   * It is computed on the first call.
+   *
+   * @return the hash of the contents
+   */
+  int contentHash() {
+    if (!contentHashed) {
+      long hash = 0;
+      for (int address = 0; address < initializedBound; address++) {
+        if (isInitialized(address)) {
+          hash ^= MemoryTrie.entryHash(address, get(address));
+        }
+      }
+      contentHash = Long.hashCode(hash);
+      contentHashed = true;
+    }
+    return contentHash;
+  }
+}
@@ -0,0 +1,707 @@
+package me.ialistannen.mimadebugger.machine.memory;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.IntConsumer;
+import me.ialistannen.mimadebugger.exceptions.MemoryNotInitializedException;
+import me.ialistannen.mimadebugger.util.MemoryFormat;
+
+/**
+ * A persistent map from addresses to values, stored in a radix trie.
+ *
+ * <p>The trie has four levels of 16-way inner nodes and leaves of 16 values, covering the whole
+ * address space. Lookups walk a fixed number of nodes and {@link #put(int, int)} only copies the
+ * nodes on the path to the changed address, sharing everything else with the original trie.
+ * Iteration is ordered by address.</p>
+ *
+ * <p>Every leaf keeps a bitmap of its initialized addresses, so checking an address is a single
+ * bit test in the leaf that also holds its value.</p>
+ *
+ * <p>The hash code is updated with every write, and comparing two tries skips all subtrees they
+ * share.</p>
+ */
+final class MemoryTrie {
+
+  private static final int BITS = 4;
+  private static final int WIDTH = 1 << BITS;
+  private static final int MASK = WIDTH - 1;
+  /**
+   * The shift of the index into the root node.
+   */
+  private static final int ROOT_SHIFT = MemoryFormat.ADDRESS_LENGTH - BITS;
+
+  static final MemoryTrie EMPTY = new MemoryTrie(null, 0, 0);
+
+  /**
+   * The root node. Inner nodes hold {@code Object[]} children, the last inner level holds
+   * {@link Leaf}s. Empty subtrees are null.
+   */
+  private final Object[] root;
+  private final int size;
+  /**
+   * The XOR of the {@link #entryHash(int, int)} of every entry, updated on every write.
+   */
+  private final long hash;
+
+  private MemoryTrie(Object[] root, int size, long hash) {
+    this.root = root;
+    this.size = size;
+    this.hash = hash;
+  }
+
+  /**
+   * Returns a well mixed key of an entry, so the XOR of all keys (a Zobrist hash) is unlikely to
+   * collide for different contents.
+   *
+   * @param address the address
+   * @param value the value
+   * @return the key of the entry
+   */
+  static long entryHash(int address, int value) {
+    long key = (long) address << 32 | value & 0xFFFFFFFFL;
+    // the finalizer of SplitMix64
+    key = (key ^ key >>> 30) * 0xBF58476D1CE4E5B9L;
+    key = (key ^ key >>> 27) * 0x94D049BB133111EBL;
+    return key ^ key >>> 31;
+  }
+
+  /**
+   * Returns the number of addresses with a value.
+   *
+   * @return the number of addresses with a value
+   */
+  int size() {
+    return size;
+  }
+
+  /**
+   * Checks whether the address has a value.
+   *
+   * @param address the address, in range
+   * @return true if the address has a value
+   */
+  boolean containsKey(int address) {
+    Leaf leaf = leaf(address);
+    return leaf != null && (leaf.mask & 1 << (address & MASK)) != 0;
+  }
+
+  /**
+   * Returns the value at an address.
+   *
+   * @param address the address, in range
+   * @return the value or 0, if the address has no value
+   */
+  int get(int address) {
+    Leaf leaf = leaf(address);
+    return leaf == null ? 0 : leaf.values[address & MASK];
+  }
+
+  /**
+   * Returns the value at an address, walking the trie only once.
+   *
+   * @param address the address, in range
+   * @return the value at the address
+   * @throws MemoryNotInitializedException if the address has no value
+   */
+  int getInitialized(int address) throws MemoryNotInitializedException {
+    Leaf leaf = leaf(address);
+    if (leaf == null || (leaf.mask & 1 << (address & MASK)) == 0) {
+      throw new MemoryNotInitializedException(address);
+    }
+    return leaf.values[address & MASK];
+  }
+
+  private Leaf leaf(int address) {
+    Object[] node = root;
+    for (int shift = ROOT_SHIFT; shift > BITS; shift -= BITS) {
+      if (node == null) {
+        return null;
+      }
+      node = (Object[]) node[address >>> shift & MASK];
+    }
+    return node == null ? null : (Leaf) node[address >>> BITS & MASK];
+  }
+
+  /**
+   * Returns a trie with the given value stored at the address.
+   *
+   * @param address the address, in range
+   * @param value the value
+   * @return the resulting trie, which shares all unchanged nodes with this one
+   */
+  MemoryTrie put(int address, int value) {
+    Leaf leaf = leaf(address);
+    int bit = 1 << (address & MASK);
+    boolean present = leaf != null && (leaf.mask & bit) != 0;
+
+    if (present && leaf.values[address & MASK] == value) {
+      return this;
+    }
+    long newHash = hash ^ entryHash(address, value);
+    if (present) {
+      newHash ^= entryHash(address, leaf.values[address & MASK]);
+    }
+    return new MemoryTrie(
+        put(root, ROOT_SHIFT, address, value), present ? size : size + 1, newHash
+    );
+  }
+
+  private static Object[] put(Object[] node, int shift, int address, int value) {
+    Object[] copy = node == null ? new Object[WIDTH] : node.clone();
+    int index = address >>> shift & MASK;
+
+    if (shift == BITS) {
+      copy[index] = Leaf.with((Leaf) copy[index], address & MASK, value);
+    } else {
+      copy[index] = put((Object[]) copy[index], shift - BITS, address, value);
+    }
+    return copy;
+  }
+
+  /**
+   * Returns a trie without a value at the address.
+   *
+   * @param address the address, in range
+   * @return the resulting trie, which shares all unchanged nodes with this one
+   */
+  MemoryTrie remove(int address) {
+    Leaf leaf = leaf(address);
+    int offset = address & MASK;
+    if (leaf == null || (leaf.mask & 1 << offset) == 0) {
+      return this;
+    }
+    if (size == 1) {
+      return EMPTY;
+    }
+    return new MemoryTrie(
+        remove(root, ROOT_SHIFT, address), size - 1, hash ^ entryHash(address, leaf.values[offset])
+    );
+  }
+
+  private static Object[] remove(Object[] node, int shift, int address) {
+    Object[] copy = node.clone();
+    int index = address >>> shift & MASK;
+
+    if (shift == BITS) {
+      copy[index] = Leaf.without((Leaf) copy[index], address & MASK);
+    } else {
+      copy[index] = remove((Object[]) copy[index], shift - BITS, address);
+    }
+
+    // never keep empty nodes around
+    for (Object child : copy) {
+      if (child != null) {
+        return copy;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns a builder that starts out with the contents of this trie.
+   *
+   * @return a new builder
+   */
+  Builder toBuilder() {
+    return new Builder(this);
+  }
+
+  /**
+   * Passes every address and its value to the consumer, in ascending order of addresses.
+   *
+   * @param consumer the consumer
+   */
+  void forEach(IntIntConsumer consumer) {
+    forEachLeaf((base, leaf) -> {
+      for (int mask = leaf.mask; mask != 0; mask &= mask - 1) {
+        int offset = Integer.numberOfTrailingZeros(mask);
+        consumer.accept(base | offset, leaf.values[offset]);
+      }
+    });
+  }
+
+  /**
+   * Passes every maximal run of consecutive addresses with a value to the consumer, in ascending
+   * order. The consumer receives the first address of the run and the address after its last one.
+   *
+   * @param consumer the consumer, accepting the start (inclusive) and end (exclusive) of a run
+   */
+  void forEachRange(IntIntConsumer consumer) {
+    int[] run = {-1, -1};
+
+    forEachLeaf((base, leaf) -> {
+      int mask = leaf.mask;
+      while (mask != 0) {
+        int start = Integer.numberOfTrailingZeros(mask);
+        int end = start + Integer.numberOfTrailingZeros(~(mask >>> start));
+        mask &= -1 << end;
+
+        if (run[1] == (base | start)) {
+          run[1] = base + end;
+        } else {
+          if (run[0] >= 0) {
+            consumer.accept(run[0], run[1]);
+          }
+          run[0] = base | start;
+          run[1] = base + end;
+        }
+      }
+    });
+
+    if (run[0] >= 0) {
+      consumer.accept(run[0], run[1]);
+    }
+  }
+
+  /**
+   * Passes every address in the range and its value to the consumer, in ascending order. Only the
+   * part of the trie covering the range is visited.
+   *
+   * @param from the first address, inclusive
+   * @param to the last address, exclusive
+   * @param consumer the consumer
+   */
+  void forEachInRange(int from, int to, IntIntConsumer consumer) {
+    if (root != null && from < to) {
+      forEachInRange(root, ROOT_SHIFT, 0, from, to, consumer);
+    }
+  }
+
+  private static void forEachInRange(Object[] node, int shift, int prefix, int from, int to,
+      IntIntConsumer consumer) {
+    int first = Math.max(0, (from - prefix) >> shift);
+    int last = Math.min(MASK, (to - 1 - prefix) >> shift);
+
+    for (int i = first; i <= last; i++) {
+      Object child = node[i];
+      if (child == null) {
+        continue;
+      }
+      int childPrefix = prefix | i << shift;
+
+      if (shift == BITS) {
+        Leaf leaf = (Leaf) child;
+        int low = Math.max(0, from - childPrefix);
+        int high = Math.min(WIDTH, to - childPrefix);
+
+        for (int mask = leaf.mask & -1 << low & (1 << high) - 1; mask != 0; mask &= mask - 1) {
+          int offset = Integer.numberOfTrailingZeros(mask);
+          consumer.accept(childPrefix | offset, leaf.values[offset]);
+        }
+      } else {
+        forEachInRange((Object[]) child, shift - BITS, childPrefix, from, to, consumer);
+      }
+    }
+  }
+
+  /**
+   * Returns the highest address that has a value.
+   *
+   * @return the address or -1, if the trie is empty
+   */
+  int highestAddress() {
+    if (root == null) {
+      return -1;
+    }
+    Object[] node = root;
+    int prefix = 0;
+
+    for (int shift = ROOT_SHIFT; ; shift -= BITS) {
+      int index = lastChild(node);
+      prefix |= index << shift;
+
+      if (shift == BITS) {
+        Leaf leaf = (Leaf) node[index];
+        return prefix | Integer.SIZE - 1 - Integer.numberOfLeadingZeros(leaf.mask);
+      }
+      node = (Object[]) node[index];
+    }
+  }
+
+  private static int lastChild(Object[] node) {
+    // nodes are only created for a write, so they are never empty
+    int index = MASK;
+    while (node[index] == null) {
+      index--;
+    }
+    return index;
+  }
+
+  /**
+   * Passes every address whose value differs between the two tries to the consumer, in ascending
+   * order. An address with a value in only one of them differs as well. Subtrees shared by both
+   * tries are skipped, so the time depends on the size of the difference, not of the tries.
+   *
+   * @param other the trie to compare with
+   * @param consumer the consumer
+   */
+  void forEachDifference(MemoryTrie other, IntConsumer consumer) {
+    if (root != other.root) {
+      forEachDifference(root, other.root, ROOT_SHIFT, 0, consumer);
+    }
+  }
+
+  private static void forEachDifference(Object[] first, Object[] second, int shift, int prefix,
+      IntConsumer consumer) {
+    for (int i = 0; i < WIDTH; i++) {
+      Object firstChild = first == null ? null : first[i];
+      Object secondChild = second == null ? null : second[i];
+      if (firstChild == secondChild) {
+        continue;
+      }
+      int childPrefix = prefix | i << shift;
+
+      if (shift == BITS) {
+        Leaf firstLeaf = (Leaf) firstChild;
+        Leaf secondLeaf = (Leaf) secondChild;
+        int firstMask = firstLeaf == null ? 0 : firstLeaf.mask;
+        int secondMask = secondLeaf == null ? 0 : secondLeaf.mask;
+
+        for (int mask = firstMask | secondMask; mask != 0; mask &= mask - 1) {
+          int offset = Integer.numberOfTrailingZeros(mask);
+          int bit = 1 << offset;
+          boolean differs = (firstMask & bit) != (secondMask & bit)
+              || firstLeaf.values[offset] != secondLeaf.values[offset];
+          if (differs) {
+            consumer.accept(childPrefix | offset);
+          }
+        }
+      } else {
+        forEachDifference(
+            (Object[]) firstChild, (Object[]) secondChild, shift - BITS, childPrefix, consumer
+        );
+      }
+    }
+  }
+
+  private void forEachLeaf(LeafConsumer consumer) {
+    if (root != null) {
+      forEachLeaf(root, ROOT_SHIFT, 0, consumer);
+    }
+  }
+
+  private static void forEachLeaf(Object[] node, int shift, int prefix, LeafConsumer consumer) {
+    for (int i = 0; i < WIDTH; i++) {
+      Object child = node[i];
+      if (child == null) {
+        continue;
+      }
+      int childPrefix = prefix | i << shift;
+
+      if (shift == BITS) {
+        consumer.accept(childPrefix, (Leaf) child);
+      } else {
+        forEachLeaf((Object[]) child, shift - BITS, childPrefix, consumer);
+      }
+    }
+  }
+
+  /**
+   * Returns the smallest address at or above the given one that has a value.
+   *
+   * @param from the address to start at, in range
+   * @return the address or -1, if there is none
+   */
+  int ceilingAddress(int from) {
+    return root == null ? -1 : ceilingAddress(root, ROOT_SHIFT, from);
+  }
+
+  private static int ceilingAddress(Object[] node, int shift, int from) {
+    int start = from >>> shift & MASK;
+    int prefix = from >>> shift + BITS << shift + BITS;
+
+    for (int i = start; i < WIDTH; i++) {
+      Object child = node[i];
+      if (child == null) {
+        continue;
+      }
+      int childPrefix = prefix | i << shift;
+      int childFrom = i == start ? from : childPrefix;
+
+      if (shift == BITS) {
+        int mask = ((Leaf) child).mask & -1 << (childFrom & MASK);
+        if (mask != 0) {
+          return childPrefix | Integer.numberOfTrailingZeros(mask);
+        }
+      } else {
+        int found = ceilingAddress((Object[]) child, shift - BITS, childFrom);
+        if (found >= 0) {
+          return found;
+        }
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Returns an unmodifiable {@link Map} view of this trie, ordered by address.
+   *
+   * @return a map view of this trie
+   */
+  Map<Integer, Integer> asMap() {
+    return new MapView();
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    MemoryTrie other = (MemoryTrie) o;
+    if (size != other.size || hash != other.hash) {
+      return false;
+    }
+    return root == other.root || nodesEqual(root, other.root, ROOT_SHIFT);
+  }
+
+  private static boolean nodesEqual(Object[] first, Object[] second, int shift) {
+    for (int i = 0; i < WIDTH; i++) {
+      Object firstChild = first[i];
+      Object secondChild = second[i];
+
+      // shared subtrees are equal without looking at them
+      if (firstChild == secondChild) {
+        continue;
+      }
+      // nodes are only created for a write, so an empty subtree never equals a node
+      if (firstChild == null || secondChild == null) {
+        return false;
+      }
+
+      if (shift == BITS) {
+        Leaf firstLeaf = (Leaf) firstChild;
+        Leaf secondLeaf = (Leaf) secondChild;
+        if (firstLeaf.mask != secondLeaf.mask
+            || !Arrays.equals(firstLeaf.values, secondLeaf.values)) {
+          return false;
+        }
+      } else if (!nodesEqual((Object[]) firstChild, (Object[]) secondChild, shift - BITS)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public int hashCode() {
+    return Long.hashCode(hash);
+  }
+
+  private int next(int address) {
+    int last = (1 << MemoryFormat.ADDRESS_LENGTH) - 1;
+    return address >= last ? -1 : ceilingAddress(address + 1);
+  }
+
+  /**
+   * The values of 16 consecutive addresses.
+   */
+  private static final class Leaf {
+
+    private final int[] values;
+    /**
+     * One bit per address, set if it has a value. Only modified by the {@link Builder} that
+     * created the leaf, before the leaf is part of a built trie.
+     */
+    private int mask;
+
+    private Leaf(int[] values, int mask) {
+      this.values = values;
+      this.mask = mask;
+    }
+
+    private static Leaf with(Leaf leaf, int offset, int value) {
+      int[] values = leaf == null ? new int[WIDTH] : leaf.values.clone();
+      values[offset] = value;
+      return new Leaf(values, (leaf == null ? 0 : leaf.mask) | 1 << offset);
+    }
+
+    private static Leaf without(Leaf leaf, int offset) {
+      int mask = leaf.mask & ~(1 << offset);
+      if (mask == 0) {
+        return null;
+      }
+      int[] values = leaf.values.clone();
+      // addresses without a value always hold 0
+      values[offset] = 0;
+      return new Leaf(values, mask);
+    }
+  }
+
+  /**
+   * Collects many writes into a trie, modifying its nodes in place instead of copying the path for
+   * every write. Nodes shared with the trie the builder started from are copied on their first
+   * modification.
+   */
+  static final class Builder {
+
+    private final MemoryTrie base;
+    /**
+     * Whether the builder started out empty, so every node it reaches was created by it.
+     */
+    private final boolean fresh;
+    /**
+     * The nodes and leaves created by this builder, which it may modify. Not tracked for a fresh
+     * builder.
+     */
+    private final Set<Object> owned = Collections.newSetFromMap(new IdentityHashMap<>());
+    private Object[] root;
+    private int size;
+    private long hash;
+    private boolean built;
+
+    private Builder(MemoryTrie base) {
+      this.base = base;
+      this.fresh = base.root == null;
+      this.root = base.root;
+      this.size = base.size;
+      this.hash = base.hash;
+    }
+
+    /**
+     * Stores a value at an address.
+     *
+     * @param address the address, in range
+     * @param value the value
+     * @throws IllegalStateException if the trie was already built
+     */
+    void put(int address, int value) {
+      if (built) {
+        throw new IllegalStateException("The trie was already built");
+      }
+      root = ownedNode(root);
+
+      Object[] node = root;
+      for (int shift = ROOT_SHIFT; shift > BITS; shift -= BITS) {
+        int index = address >>> shift & MASK;
+        Object[] child = ownedNode((Object[]) node[index]);
+        node[index] = child;
+        node = child;
+      }
+
+      int index = address >>> BITS & MASK;
+      Leaf leaf = ownedLeaf((Leaf) node[index]);
+      node[index] = leaf;
+
+      int bit = 1 << (address & MASK);
+      if ((leaf.mask & bit) == 0) {
+        leaf.mask |= bit;
+        size++;
+      } else {
+        hash ^= entryHash(address, leaf.values[address & MASK]);
+      }
+      hash ^= entryHash(address, value);
+      leaf.values[address & MASK] = value;
+    }
+
+    private Object[] ownedNode(Object[] node) {
+      if (node != null && (fresh || owned.contains(node))) {
+        return node;
+      }
+      Object[] copy = node == null ? new Object[WIDTH] : node.clone();
+      if (!fresh) {
+        owned.add(copy);
+      }
+      return copy;
+    }
+
+    private Leaf ownedLeaf(Leaf leaf) {
+      if (leaf != null && (fresh || owned.contains(leaf))) {
+        return leaf;
+      }
+      Leaf copy = leaf == null
+          ? new Leaf(new int[WIDTH], 0)
+          : new Leaf(leaf.values.clone(), leaf.mask);
+      if (!fresh) {
+        owned.add(copy);
+      }
+      return copy;
+    }
+
+    /**
+     * Freezes the builder into a trie. The builder can not be used afterwards.
+     *
+     * @return the built trie
+     */
+    MemoryTrie build() {
+      built = true;
+      if (root == base.root) {
+        return base;
+      }
+      return new MemoryTrie(root, size, hash);
+    }
+  }
+
+  private interface LeafConsumer {
+
+    void accept(int base, Leaf leaf);
+  }
+
+  private final class MapView extends AbstractMap<Integer, Integer> {
+
+    @Override
+    public int size() {
+      return size;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+      return key instanceof Integer && isAddress((Integer) key)
+          && MemoryTrie.this.containsKey((Integer) key);
+    }
+
+    @Override
+    public Integer get(Object key) {
+      return containsKey(key) ? MemoryTrie.this.get((Integer) key) : null;
+    }
+
+    @Override
+    public Set<Entry<Integer, Integer>> entrySet() {
+      return new AbstractSet<Entry<Integer, Integer>>() {
+        @Override
+        public Iterator<Entry<Integer, Integer>> iterator() {
+          return new EntryIterator();
+        }
+
+        @Override
+        public int size() {
+          return size;
+        }
+      };
+    }
+
+    private boolean isAddress(int key) {
+      return key >= 0 && key < 1 << MemoryFormat.ADDRESS_LENGTH;
+    }
+  }
+
+  private final class EntryIterator implements Iterator<Map.Entry<Integer, Integer>> {
+
+    private int nextAddress = ceilingAddress(0);
+
+    @Override
+    public boolean hasNext() {
+      return nextAddress >= 0;
+    }
+
+    @Override
+    public Map.Entry<Integer, Integer> next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      int address = nextAddress;
+      nextAddress = MemoryTrie.this.next(address);
+
+      return new AbstractMap.SimpleImmutableEntry<>(address, get(address));
+    }
+  }
+}
@@ -0,0 +1,155 @@
+package me.ialistannen.mimadebugger.machine.memory;
+
+import java.nio.ByteBuffer;
+import me.ialistannen.mimadebugger.exceptions.MemoryNotInitializedException;
+import me.ialistannen.mimadebugger.exceptions.NumberOverflowException;
+import me.ialistannen.mimadebugger.util.MemoryFormat;
+
+/**
+ * A mutable memory covering the whole address space, stored outside of the Java heap.
+ *
+ * <p>Every word is packed into three big endian bytes, the layout of the
+ * {@link me.ialistannen.mimadebugger.fileio.MimaBinaryFormat}, so a full memory takes 3 MiB. A
+ * separate bitmap tracks which words are initialized. This makes it possible to keep the memory of
+ * many machines resident, without putting any pressure on the garbage collector.</p>
+ *
+ * <p>Values are stored as {@value MemoryFormat#VALUE_LENGTH} bit words, so they are coerced to
+ * the value size on every write.</p>
+ */
+public final class PackedMemory {
+
+  private static final int MEMORY_SIZE = 1 << MemoryFormat.ADDRESS_LENGTH;
+  private static final int WORD_BYTES = MemoryFormat.VALUE_LENGTH / Byte.SIZE;
+
+  private final ByteBuffer words;
+  /**
+   * One bit per address, set if it is initialized. Accessed in longs.
+   */
+  private final ByteBuffer initialized;
+  private int initializedCount;
+
+  /**
+   * Creates a new memory without any initialized words.
+   */
+  public PackedMemory() {
+    this.words = ByteBuffer.allocateDirect(MEMORY_SIZE * WORD_BYTES);
+    this.initialized = ByteBuffer.allocateDirect(MEMORY_SIZE / Byte.SIZE);
+  }
+
+  /**
+   * Creates a packed copy of the given memory.
+   *
+   * @param memory the memory to copy
+   * @return the packed memory
+   */
+  public static PackedMemory of(MainMemory memory) {
+    PackedMemory packedMemory = new PackedMemory();
+    memory.forEach(packedMemory::store);
+    return packedMemory;
+  }
+
+  /**
+   * Checks whether an address is initialized.
+   *
+   * @param address the address
+   * @return true if the address is in range and initialized
+   */
+  public boolean isInitialized(int address) {
+    if (address < 0 || address >= MEMORY_SIZE) {
+      return false;
+    }
+    return (bitmapWord(address) & 1L << address) != 0;
+  }
+
+  /**
+   * Returns the value at a given memory address.
+   *
+   * @param address the address to read from
+   * @return the value at this address
+   * @throws MemoryNotInitializedException if the memory is not yet initialized
+   * @throws NumberOverflowException if the address does not fit into an address
+   */
+  public int get(int address) throws MemoryNotInitializedException, NumberOverflowException {
+    int fixedLengthAddress = MemoryFormat.coerceToAddress(address);
+
+    if (!isInitialized(fixedLengthAddress)) {
+      throw new MemoryNotInitializedException(fixedLengthAddress);
+    }
+    return load(fixedLengthAddress);
+  }
+
+  /**
+   * Sets the value at the given address.
+   *
+   * @param address the address to write to
+   * @param value the value to write
+   * @throws NumberOverflowException if the address does not fit into an address
+   */
+  public void set(int address, int value) throws NumberOverflowException {
+    store(MemoryFormat.coerceToAddress(address), value);
+  }
+
+  /**
+   * Returns the number of initialized words.
+   *
+   * @return the number of initialized words
+   */
+  public int getInitializedCount() {
+    return initializedCount;
+  }
+
+  /**
+   * Passes every initialized address and its value to the consumer, in ascending order.
+   *
+   * @param consumer the consumer
+   */
+  public void forEach(IntIntConsumer consumer) {
+    for (int index = 0; index < MEMORY_SIZE / Long.SIZE; index++) {
+      long bits = initialized.getLong(index * Long.BYTES);
+
+      while (bits != 0) {
+        int address = index * Long.SIZE + Long.numberOfTrailingZeros(bits);
+        consumer.accept(address, load(address));
+        bits &= bits - 1;
+      }
+    }
+  }
+
+  /**
+   * Converts this memory to an immutable {@link MainMemory}.
+   *
+   * @return a copy of this memory
+   */
+  public MainMemory toMainMemory() {
+    MemoryTrie.Builder data = MemoryTrie.EMPTY.toBuilder();
+    forEach(data::put);
+    return MainMemory.of(data.build());
+  }
+
+  private int load(int address) {
+    int offset = address * WORD_BYTES;
+    int value = (words.get(offset) & 0xFF) << 16
+        | (words.get(offset + 1) & 0xFF) << 8
+        | words.get(offset + 2) & 0xFF;
+
+    // sign extend the 24 bit word
+    return value << Byte.SIZE >> Byte.SIZE;
+  }
+
+  private void store(int address, int value) {
+    int offset = address * WORD_BYTES;
+    words.put(offset, (byte) (value >>> 16));
+    words.put(offset + 1, (byte) (value >>> 8));
+    words.put(offset + 2, (byte) value);
+
+    long bits = bitmapWord(address);
+    if ((bits & 1L << address) == 0) {
+      initialized.putLong(address / Long.SIZE * Long.BYTES, bits | 1L << address);
+      initializedCount++;
+    }
+  }
+
+  private long bitmapWord(int address) {
+    return initialized.getLong(address / Long.SIZE * Long.BYTES);
+  }
+}
@@ -0,0 +1,149 @@
+package me.ialistannen.mimadebugger.machine.memory;
+
+import me.ialistannen.mimadebugger.machine.MiMaRegister;
+
+/**
+ * A mutable set of all register values, packed into a single array.
+ *
+ * <p>The user visible registers are indexed by their {@link MiMaRegister#ordinal()}, so they can
+ * be read and written without allocating anything. Use {@link #toRegisters()} to get an immutable
+ * {@link Registers} snapshot.</p>
+ */
+public final class RegisterFile {
+
+  private static final int ALU_INPUT_LEFT = MiMaRegister.values().length;
+  private static final int ALU_INPUT_RIGHT = ALU_INPUT_LEFT + 1;
+  private static final int INSTRUCTION = ALU_INPUT_LEFT + 2;
+  private static final int SIZE = ALU_INPUT_LEFT + 3;
+
+  /**
+   * The number of slots, one for every register including the internal ones.
+   */
+  public static final int SLOT_COUNT = SIZE;
+
+  private static final int INSTRUCTION_POINTER =
+      MiMaRegister.INSTRUCTION_ADDRESS_REGISTER.ordinal();
+  private static final int ACCUMULATOR = MiMaRegister.ACCUMULATOR.ordinal();
+  private static final int STACK_POINTER = MiMaRegister.STACK_POINTER.ordinal();
+  private static final int FRAME_POINTER = MiMaRegister.FRAME_POINTER.ordinal();
+  private static final int RETURN_ADDRESS = MiMaRegister.RETURN_ADDRESS_REGISTER.ordinal();
+
+  private final int[] values;
+
+  /**
+   * Creates a new register file with all registers set to zero.
+   */
+  public RegisterFile() {
+    this.values = new int[SIZE];
+  }
+
+  /**
+   * Creates a new register file with the given values.
+   *
+   * @param registers the initial register values
+   */
+  public RegisterFile(Registers registers) {
+    this();
+    load(registers);
+  }
+
+  /**
+   * Returns the value of a register.
+   *
+   * @param register the register
+   * @return its value
+   */
+  public int get(MiMaRegister register) {
+    return values[register.ordinal()];
+  }
+
+  /**
+   * Sets the value of a register.
+   *
+   * @param register the register
+   * @param value the new value
+   */
+  public void set(MiMaRegister register, int value) {
+    values[register.ordinal()] = value;
+  }
+
+  /**
+   * Returns the value in a slot. The first slots are the {@link MiMaRegister}s by ordinal,
+   * followed by the internal registers.
+   *
+   * @param slot the slot, less than {@link #SLOT_COUNT}
+   * @return its value
+   */
+  public int getSlot(int slot) {
+    return values[slot];
+  }
+
+  /**
+   * Sets the value in a slot.
+   *
+   * @param slot the slot, less than {@link #SLOT_COUNT}
+   * @param value the new value
+   * @see #getSlot(int)
+   */
+  public void setSlot(int slot, int value) {
+    values[slot] = value;
+  }
+
+  public int getAluInputLeft() {
+    return values[ALU_INPUT_LEFT];
+  }
+
+  public void setAluInputLeft(int aluInputLeft) {
+    values[ALU_INPUT_LEFT] = aluInputLeft;
+  }
+
+  public int getAluInputRight() {
+    return values[ALU_INPUT_RIGHT];
+  }
+
+  public void setAluInputRight(int aluInputRight) {
+    values[ALU_INPUT_RIGHT] = aluInputRight;
+  }
+
+  public int getInstruction() {
+    return values[INSTRUCTION];
+  }
+
+  public void setInstruction(int instruction) {
+    values[INSTRUCTION] = instruction;
+  }
+
+  /**
+   * Overwrites all registers with the given values.
+   *
+   * @param registers the values to load
+   */
+  public void load(Registers registers) {
+    values[INSTRUCTION_POINTER] = registers.instructionPointer();
+    values[ACCUMULATOR] = registers.accumulator();
+    values[STACK_POINTER] = registers.stackPointer();
+    values[FRAME_POINTER] = registers.framePointer();
+    values[RETURN_ADDRESS] = registers.returnAddress();
+    values[ALU_INPUT_LEFT] = registers.aluInputLeft();
+    values[ALU_INPUT_RIGHT] = registers.aluInputRight();
+    values[INSTRUCTION] = registers.instruction();
+  }
+
+  /**
+   * Converts this register file to an immutable {@link Registers} instance.
+   *
+   * @return the current register values
+   */
+  public Registers toRegisters() {
+    return ImmutableRegisters.builder()
+        .instructionPointer(values[INSTRUCTION_POINTER])
+        .accumulator(values[ACCUMULATOR])
+        .stackPointer(values[STACK_POINTER])
+        .framePointer(values[FRAME_POINTER])
+        .returnAddress(values[RETURN_ADDRESS])
+        .aluInputLeft(values[ALU_INPUT_LEFT])
+        .aluInputRight(values[ALU_INPUT_RIGHT])
+        .instruction(values[INSTRUCTION])
+        .build();
+  }
+}
@@ -1,6 +1,6 @@
 package me.ialistannen.mimadebugger.parser.processing;
 
-import me.ialistannen.mimadebugger.machine.memory.ImmutableRegisters;
+import me.ialistannen.mimadebugger.machine.memory.RegisterFile;
 import me.ialistannen.mimadebugger.machine.memory.Registers;
 import me.ialistannen.mimadebugger.parser.ast.AssemblerDirectiveRegister;
 import me.ialistannen.mimadebugger.parser.ast.NodeVisitor;
@@ -21,17 +21,17 @@ public class ToRegistersConverter {
     ExtractingNodeVisitor nodeVisitor = new ExtractingNodeVisitor();
     root.accept(nodeVisitor);
 
-    return nodeVisitor.registers;
+    return nodeVisitor.registers.toRegisters();
   }
 
   private static class ExtractingNodeVisitor implements NodeVisitor {
 
-    Registers registers = ImmutableRegisters.builder().build();
+    final RegisterFile registers = new RegisterFile();
 
     @Override
     public void visitAssemblerDirectiveRegister(AssemblerDirectiveRegister node) {
       node.getValue()
-          .ifPresent(value -> registers = node.getRegister().set(registers, value.getValue()));
+          .ifPresent(value -> registers.set(node.getRegister(), value.getValue()));
     }
   }
 }
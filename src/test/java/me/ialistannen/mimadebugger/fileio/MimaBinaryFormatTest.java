@@ -0,0 +1,102 @@
+package me.ialistannen.mimadebugger.fileio;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import me.ialistannen.mimadebugger.exceptions.MemoryNotInitializedException;
+import me.ialistannen.mimadebugger.exceptions.MiMaException;
+import me.ialistannen.mimadebugger.machine.ImmutableState;
+import me.ialistannen.mimadebugger.machine.MiMa;
+import me.ialistannen.mimadebugger.machine.State;
+import me.ialistannen.mimadebugger.machine.instructions.ImmutableInstructionCall;
+import me.ialistannen.mimadebugger.machine.instructions.Instruction;
+import me.ialistannen.mimadebugger.machine.instructions.InstructionCall;
+import me.ialistannen.mimadebugger.machine.instructions.InstructionSet;
+import me.ialistannen.mimadebugger.machine.instructions.defaultinstructions.Load;
+import me.ialistannen.mimadebugger.machine.instructions.defaultinstructions.Special;
+import me.ialistannen.mimadebugger.machine.instructions.defaultinstructions.Store;
+import me.ialistannen.mimadebugger.machine.memory.ImmutableRegisters;
+import me.ialistannen.mimadebugger.machine.memory.MainMemory;
+import me.ialistannen.mimadebugger.util.MemoryFormat;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class MimaBinaryFormatTest {
+
+  private final MimaBinaryFormat format = new MimaBinaryFormat();
+
+  @TempDir
+  Path directory;
+
+  @Test
+  void mapReadsTheSameStateAsLoad() throws IOException, MiMaException {
+    MainMemory.Builder memory = MainMemory.builder();
+    for (int i = 0; i < 5_000; i++) {
+      memory.set(i, i * 31 - 70_000);
+    }
+    State state = state(memory.build());
+    byte[] bytes = format.save(state);
+    Path file = write(bytes);
+
+    State mapped = format.map(file);
+    State loaded = format.load(bytes);
+
+    assertThat(mapped.memory().get(4_999)).isEqualTo(loaded.memory().get(4_999));
+    assertThat(mapped.memory().getInitializedCount()).isEqualTo(5_000);
+    assertThat(mapped.memory().hashCode()).isEqualTo(loaded.memory().hashCode());
+    assertThat(mapped).isEqualTo(loaded);
+    assertThatThrownBy(() -> mapped.memory().get(5_000))
+        .isInstanceOf(MemoryNotInitializedException.class);
+  }
+
+  @Test
+  void runsMappedState() throws IOException, MiMaException {
+    MainMemory memory = MainMemory.create()
+        .set(0, MemoryFormat.combineInstruction(toCall(Load.LOAD_CONSTANT, 7)))
+        .set(1, MemoryFormat.combineInstruction(toCall(Store.STORE, 3)))
+        .set(2, MemoryFormat.combineInstruction(toCall(Special.HALT, 0)))
+        .set(3, 0);
+    State mapped = format.map(write(format.save(state(memory))));
+
+    MiMa miMa = new MiMa(mapped, new InstructionSet());
+    miMa.step();
+    State result = miMa.step();
+
+    assertThat(result.memory().get(3)).isEqualTo(7);
+    assertThat(mapped.memory().get(3)).isEqualTo(0);
+  }
+
+  @Test
+  void mapRejectsTruncatedFiles() throws IOException {
+    Path file = write(new byte[]{1, 2, 3, 4});
+
+    assertThatThrownBy(() -> format.map(file))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  private static InstructionCall toCall(Instruction instruction, int argument) {
+    return ImmutableInstructionCall.builder()
+        .command(instruction)
+        .argument(argument)
+        .build();
+  }
+
+  private Path write(byte[] bytes) throws IOException {
+    return Files.write(Files.createTempFile(directory, "image", ".mima"), bytes);
+  }
+
+  private static State state(MainMemory memory) {
+    return ImmutableState.builder()
+        .memory(memory)
+        .registers(
+            ImmutableRegisters.builder()
+                .accumulator(5)
+                .stackPointer(1_000)
+                .build()
+        )
+        .build();
+  }
+}
@@ -3,19 +3,25 @@ package me.ialistannen.mimadebugger.machine;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Deque;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 import me.ialistannen.mimadebugger.exceptions.MiMaException;
 import me.ialistannen.mimadebugger.exceptions.NumberOverflowException;
 import me.ialistannen.mimadebugger.exceptions.ProgramHaltException;
+import me.ialistannen.mimadebugger.machine.instructions.ImmutableInstruction;
 import me.ialistannen.mimadebugger.machine.instructions.ImmutableInstructionCall;
 import me.ialistannen.mimadebugger.machine.instructions.Instruction;
 import me.ialistannen.mimadebugger.machine.instructions.InstructionCall;
 import me.ialistannen.mimadebugger.machine.instructions.InstructionSet;
 import me.ialistannen.mimadebugger.machine.instructions.defaultinstructions.Arithmetic;
+import me.ialistannen.mimadebugger.machine.instructions.defaultinstructions.Jump;
 import me.ialistannen.mimadebugger.machine.instructions.defaultinstructions.Load;
 import me.ialistannen.mimadebugger.machine.instructions.defaultinstructions.Special;
 import me.ialistannen.mimadebugger.machine.instructions.defaultinstructions.Store;
@@ -24,6 +30,7 @@ import me.ialistannen.mimadebugger.machine.memory.MainMemory;
 import me.ialistannen.mimadebugger.util.MemoryFormat;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 class MiMaRunnerTest {
 
@@ -111,6 +118,31 @@ class MiMaRunnerTest {
     assertThat(runner.isFinished()).isFalse();
   }
 
+  @Test
+  void runIsSingleHistoryEntry() {
+    State initialState = miMa.getCurrentState();
+
+    RunResult result = runner.run(100, new BitSet(), StopCondition.NEVER);
+
+    assertThat(result.stopReason()).isEqualTo(StopReason.HALTED);
+    assertThat(runner.getCurrent()).isEqualTo(result.state());
+    assertThat(runner.isFinished()).isTrue();
+    assertThat(runner.previousStep()).isEqualTo(initialState);
+    assertThat(runner.hasPreviousStep()).isFalse();
+  }
+
+  @Test
+  void runStartsAtCurrentStateAfterSteppingBack() throws MiMaException {
+    runner.nextStep();
+    State afterFirst = runner.nextStep();
+    runner.previousStep();
+
+    RunResult result = runner.run(1, new BitSet(), StopCondition.NEVER);
+
+    assertThat(result.state()).isEqualTo(afterFirst);
+    assertThat(runner.hasCachedNextStep()).isFalse();
+  }
+
   @Test
   void testReset() throws MiMaException {
     State initialState = miMa.getCurrentState();
@@ -215,6 +247,236 @@ class MiMaRunnerTest {
     assertThat(miMa.getCurrentState()).isEqualTo(currentMiMaState);
   }
 
+  @Test
+  void historyIsNotLimited() throws MiMaException {
+    MainMemory memory = MainMemory.create()
+        .set(0, MemoryFormat.combineInstruction(toCall(Load.LOAD_FROM_ADDRESS, 10)))
+        .set(1, MemoryFormat.combineInstruction(toCall(Arithmetic.ADD, 11)))
+        .set(2, MemoryFormat.combineInstruction(toCall(Store.STORE, 10)))
+        .set(3, MemoryFormat.combineInstruction(toCall(Jump.JUMP, 0)))
+        .set(10, 0)
+        .set(11, 1);
+    State initialState = ImmutableState.builder()
+        .registers(ImmutableRegisters.builder().build())
+        .memory(memory)
+        .build();
+    MiMaRunner runner = new MiMaRunner(new MiMa(initialState, new InstructionSet()));
+
+    List<State> states = new ArrayList<>();
+    states.add(initialState);
+    for (int i = 0; i < 5_000; i++) {
+      states.add(runner.nextStep());
+    }
+
+    for (int i = states.size() - 2; i >= 0; i--) {
+      assertThat(runner.previousStep()).isEqualTo(states.get(i));
+    }
+    assertThat(runner.hasPreviousStep()).isFalse();
+
+    for (int i = 1; i < states.size(); i++) {
+      assertThat(runner.nextStep()).isEqualTo(states.get(i));
+    }
+    assertThat(runner.hasCachedNextStep()).isFalse();
+  }
+
+  @Test
+  void seekReplaysInsideRun() throws MiMaException {
+    List<State> states = new ArrayList<>();
+    states.add(runner.getCurrent());
+    for (int i = 0; i < 3; i++) {
+      states.add(runner.nextStep());
+    }
+    runner.reset();
+
+    runner.run(2, new BitSet(), StopCondition.NEVER);
+    runner.nextStep();
+
+    assertThat(runner.currentStepIndex()).isEqualTo(3);
+    assertThat(runner.seek(1)).isEqualTo(states.get(1));
+    assertThat(runner.currentStepIndex()).isEqualTo(1);
+    assertThat(runner.nextStep()).isEqualTo(states.get(2));
+    assertThat(runner.seek(0)).isEqualTo(states.get(0));
+    assertThat(runner.seek(3)).isEqualTo(states.get(3));
+    assertThat(runner.currentStepIndex()).isEqualTo(3);
+  }
+
+  @Test
+  void seekExecutesUpToProgramEnd() {
+    runner.seek(100);
+
+    assertThat(runner.currentStepIndex()).isEqualTo(3);
+    assertThat(runner.getRecordedStepCount()).isEqualTo(3);
+    assertThat(runner.isFinished()).isTrue();
+    assertThrows(IllegalArgumentException.class, () -> runner.seek(-1));
+  }
+
+  @Test
+  void stepsBackThroughEvictedHistory() throws MiMaException {
+    State initialState = counterLoop();
+    InstructionSet instructionSet = new InstructionSet();
+    MiMaRunner runner = new MiMaRunner(new MiMa(initialState, instructionSet), 1024 * 1024);
+
+    for (int i = 0; i < 100_000; i++) {
+      runner.nextStep();
+    }
+    assertThat(runner.getHistoryFootprint()).isLessThanOrEqualTo(1024 * 1024);
+
+    State expected = new MiMa(initialState, instructionSet)
+        .run(12_345, StopCondition.NEVER)
+        .state();
+    assertThat(runner.seek(12_345)).isEqualTo(expected);
+    assertThat(runner.currentStepIndex()).isEqualTo(12_345);
+    assertThat(runner.hasCachedNextStep()).isTrue();
+
+    assertThat(runner.previousStep()).isEqualTo(
+        new MiMa(initialState, instructionSet).run(12_344, StopCondition.NEVER).state()
+    );
+    runner.nextStep();
+    assertThat(runner.nextStep()).isEqualTo(
+        new MiMa(initialState, instructionSet).run(12_346, StopCondition.NEVER).state()
+    );
+
+    State last = new MiMa(initialState, instructionSet)
+        .run(100_000, StopCondition.NEVER)
+        .state();
+    runner.run(200_000, new BitSet(), StopCondition.NEVER);
+    assertThat(runner.currentStepIndex()).isEqualTo(212_346);
+    assertThat(runner.seek(100_000)).isEqualTo(last);
+    assertThat(runner.seek(0)).isEqualTo(initialState);
+    assertThat(runner.hasPreviousStep()).isFalse();
+  }
+
+  @Test
+  void replaysEvictedHistoryStepByStep() throws MiMaException {
+    State initialState = counterLoop();
+    InstructionSet instructionSet = new InstructionSet();
+    MiMaRunner runner = new MiMaRunner(new MiMa(initialState, instructionSet), 1024 * 1024);
+    for (int i = 0; i < 100_000; i++) {
+      runner.nextStep();
+    }
+
+    MiMa expected = new MiMa(initialState, instructionSet);
+    expected.run(1_000, StopCondition.NEVER);
+    runner.seek(1_000);
+    for (int i = 0; i < 1_000; i++) {
+      assertThat(runner.nextStep()).isEqualTo(expected.step());
+    }
+    assertThat(runner.currentStepIndex()).isEqualTo(2_000);
+  }
+
+  @Test
+  void pagesEvictedHistoryBackFromTraceFile(@TempDir Path directory)
+      throws MiMaException, IOException {
+    State initialState = counterLoop();
+    InstructionSet instructionSet = new InstructionSet();
+    Path traceFile = directory.resolve("run.trace");
+    MiMaRunner runner = new MiMaRunner(
+        new MiMa(initialState, instructionSet), 1024 * 1024, traceFile
+    );
+
+    for (int i = 0; i < 100_000; i++) {
+      runner.nextStep();
+    }
+    assertThat(runner.getHistoryFootprint()).isLessThanOrEqualTo(1024 * 1024);
+
+    for (int i = 0; i < 99_990; i++) {
+      runner.previousStep();
+    }
+    assertThat(runner.getCurrent()).isEqualTo(
+        new MiMa(initialState, instructionSet).run(10, StopCondition.NEVER).state()
+    );
+    assertThat(runner.seek(54_321)).isEqualTo(
+        new MiMa(initialState, instructionSet).run(54_321, StopCondition.NEVER).state()
+    );
+    runner.seek(10);
+    runner.run(5, new BitSet(), StopCondition.NEVER);
+    runner.nextStep();
+    runner.close();
+
+    MiMaRunner resumed = MiMaRunner.resume(traceFile, instructionSet, 1024 * 1024);
+
+    assertThat(resumed.currentStepIndex()).isEqualTo(16);
+    assertThat(resumed.getCurrent()).isEqualTo(runner.getCurrent());
+    assertThat(resumed.seek(3)).isEqualTo(
+        new MiMa(initialState, instructionSet).run(3, StopCondition.NEVER).state()
+    );
+    assertThat(resumed.seek(0)).isEqualTo(initialState);
+    resumed.close();
+  }
+
+  @Test
+  void stepsExecutedAheadMatchStepsOnDemand() throws MiMaException {
+    State initialState = counterLoop();
+    InstructionSet instructionSet = new InstructionSet();
+    MiMaRunner ahead = new MiMaRunner(new MiMa(initialState, instructionSet));
+    MiMaRunner onDemand = new MiMaRunner(new MiMa(initialState, instructionSet));
+    onDemand.setLookahead(0);
+
+    for (int i = 0; i < 2_000; i++) {
+      assertThat(ahead.nextStep()).isEqualTo(onDemand.nextStep());
+      if (i % 100 == 0) {
+        assertThat(ahead.previousStep()).isEqualTo(onDemand.previousStep());
+      }
+    }
+    assertThat(ahead.isFinished()).isFalse();
+
+    ahead.close();
+    assertThat(ahead.nextStep()).isEqualTo(onDemand.nextStep());
+    assertThat(ahead.reset()).isEqualTo(initialState);
+    assertThat(ahead.nextStep()).isEqualTo(
+        new MiMa(initialState, instructionSet).step()
+    );
+  }
+
+  @Test
+  void executesAheadOnlyWithoutSideEffects() throws MiMaException, InterruptedException {
+    AtomicInteger executions = new AtomicInteger();
+    InstructionSet instructionSet = new InstructionSet();
+    instructionSet.registerInstruction(
+        ImmutableInstruction.builder()
+            .opcode(0xFE)
+            .name("COUNT")
+            .hasArgument(false)
+            .machineAction((context, ignored) -> executions.incrementAndGet())
+            .build()
+    );
+    State initialState = ImmutableState.builder()
+        .registers(ImmutableRegisters.builder().build())
+        .memory(
+            MainMemory.create()
+                .set(0, 0xFE0000)
+                .set(1, MemoryFormat.combineInstruction(toCall(Jump.JUMP, 0)))
+        )
+        .build();
+    MiMaRunner counting = new MiMaRunner(new MiMa(initialState, instructionSet));
+
+    assertThat(counting.getLookahead()).isZero();
+    assertThat(executions).hasValue(0);
+    counting.nextStep();
+    assertThat(executions).hasValue(1);
+
+    counting.setLookahead(4);
+    for (int i = 0; i < 500 && executions.get() == 1; i++) {
+      Thread.sleep(10);
+    }
+    assertThat(executions.get()).isGreaterThan(1);
+    counting.close();
+  }
+
+  private State counterLoop() throws NumberOverflowException {
+    MainMemory memory = MainMemory.create()
+        .set(0, MemoryFormat.combineInstruction(toCall(Load.LOAD_FROM_ADDRESS, 10)))
+        .set(1, MemoryFormat.combineInstruction(toCall(Arithmetic.ADD, 11)))
+        .set(2, MemoryFormat.combineInstruction(toCall(Store.STORE, 10)))
+        .set(3, MemoryFormat.combineInstruction(toCall(Jump.JUMP, 0)))
+        .set(10, 0)
+        .set(11, 1);
+    return ImmutableState.builder()
+        .registers(ImmutableRegisters.builder().build())
+        .memory(memory)
+        .build();
+  }
+
   private InstructionCall toCall(Instruction instruction, int argument) {
     return ImmutableInstructionCall.builder()
         .command(instruction)
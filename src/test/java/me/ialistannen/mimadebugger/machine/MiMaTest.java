@@ -3,10 +3,12 @@ package me.ialistannen.mimadebugger.machine;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
+import java.util.BitSet;
 import me.ialistannen.mimadebugger.exceptions.InstructionNotFoundException;
 import me.ialistannen.mimadebugger.exceptions.MiMaException;
 import me.ialistannen.mimadebugger.exceptions.NumberOverflowException;
 import me.ialistannen.mimadebugger.exceptions.ProgramHaltException;
+import me.ialistannen.mimadebugger.machine.instructions.ImmutableInstruction;
 import me.ialistannen.mimadebugger.machine.instructions.ImmutableInstructionCall;
 import me.ialistannen.mimadebugger.machine.instructions.Instruction;
 import me.ialistannen.mimadebugger.machine.instructions.InstructionCall;
@@ -71,6 +73,40 @@ class MiMaTest {
         .isEqualTo(MemoryFormat.combineInstruction(toCall(Load.LOAD_CONSTANT, 20)));
   }
 
+  @Test
+  void advanceCreatesStateOnlyWhenRequested() throws MiMaException {
+    State afterStep = miMa.copy(initialState).step();
+
+    miMa.advance();
+    State state = miMa.getCurrentState();
+
+    assertThat(state).isEqualTo(afterStep);
+    assertThat(miMa.getCurrentState()).isSameAs(state);
+    // LDC does not touch the memory, which is shared with the initial state
+    assertThat(state.memory()).isSameAs(initialState.memory());
+  }
+
+  @Test
+  void snapshotsAreNotChangedByLaterSteps() throws MiMaException {
+    miMa.step();
+    State beforeStore = miMa.getCurrentState();
+    State afterStore = miMa.step();
+
+    assertThat(beforeStore.memory().getMemory()).doesNotContainKey(20);
+    assertThat(afterStore.memory().getMemory()).containsEntry(20, 20);
+    assertThat(initialState.memory().getMemory()).doesNotContainKey(20);
+  }
+
+  @Test
+  void loadReplacesState() throws MiMaException {
+    miMa.step();
+    miMa.step();
+
+    miMa.load(initialState);
+    assertThat(miMa.getCurrentState()).isSameAs(initialState);
+    assertThat(miMa.step()).isEqualTo(miMa.copy(initialState).step());
+  }
+
   @Test
   void testThrowsHaltExceptionWhenFinished() throws MiMaException {
     miMa.step();
@@ -98,6 +134,133 @@ class MiMaTest {
     );
   }
 
+  @Test
+  void reportsHaltingOnlyBeforeHalt() throws MiMaException {
+    for (int i = 0; i < 3; i++) {
+      assertThat(miMa.isHalting()).isFalse();
+      miMa.step();
+    }
+    State beforeHalt = miMa.getCurrentState();
+
+    assertThat(miMa.isHalting()).isTrue();
+    assertThat(miMa.getCurrentState()).isEqualTo(beforeHalt);
+  }
+
+  @Test
+  void reportsHaltingForCustomInstructions() throws NumberOverflowException {
+    InstructionSet instructionSet = new InstructionSet();
+    instructionSet.registerInstruction(
+        ImmutableInstruction.builder()
+            .opcode(0xFE)
+            .name("STOP")
+            .hasArgument(false)
+            .action((state, ignored) -> {
+              throw new ProgramHaltException();
+            })
+            .build()
+    );
+    State state = ImmutableState.builder()
+        .registers(ImmutableRegisters.builder().build())
+        .memory(MainMemory.create().set(0, 0xFE0000))
+        .build();
+
+    assertThat(new MiMa(state, instructionSet).isHalting()).isTrue();
+  }
+
+  @Test
+  void doesNotReportHaltingForFaults() throws NumberOverflowException {
+    miMa = miMa.copy(
+        ImmutableState.builder()
+            .registers(ImmutableRegisters.builder().instructionPointer(1).build())
+            .memory(MainMemory.create().set(0, 0xFE0000))
+            .build()
+    );
+
+    assertThat(miMa.isHalting()).isFalse();
+  }
+
+  @Test
+  void runStopsAtHaltInLastCompletedState() throws MiMaException {
+    MiMa stepped = miMa.copy(initialState);
+    for (int i = 0; i < 3; i++) {
+      stepped.step();
+    }
+
+    RunResult result = miMa.run(100, StopCondition.NEVER);
+
+    assertThat(result.stopReason()).isEqualTo(StopReason.HALTED);
+    assertThat(result.steps()).isEqualTo(3);
+    assertThat(result.fault()).isEmpty();
+    assertThat(result.elapsedNanos()).isNotNegative();
+    assertThat(result.state()).isEqualTo(stepped.getCurrentState());
+    assertThat(miMa.getCurrentState()).isEqualTo(result.state());
+    assertThat(miMa.isHalting()).isTrue();
+  }
+
+  @Test
+  void runStopsAfterMaxSteps() throws MiMaException {
+    RunResult result = miMa.run(2, StopCondition.NEVER);
+
+    assertThat(result.stopReason()).isEqualTo(StopReason.STEP_LIMIT);
+    assertThat(result.steps()).isEqualTo(2);
+
+    // continues where it stopped
+    miMa.step();
+    assertThat(miMa.getCurrentState().registers().accumulator()).isEqualTo(40);
+  }
+
+  @Test
+  void runStopsAtBreakpoint() {
+    BitSet breakpoints = new BitSet();
+    breakpoints.set(2);
+
+    RunResult result = miMa.run(100, breakpoints, StopCondition.NEVER);
+
+    assertThat(result.stopReason()).isEqualTo(StopReason.BREAKPOINT);
+    assertThat(result.steps()).isEqualTo(2);
+    assertThat(result.state().registers().instructionPointer()).isEqualTo(2);
+  }
+
+  @Test
+  void runStopsAtStopCondition() {
+    RunResult result = miMa.run(100, (instructionPointer, accumulator) -> accumulator == 40);
+
+    assertThat(result.stopReason()).isEqualTo(StopReason.STOP_CONDITION);
+    assertThat(result.steps()).isEqualTo(3);
+  }
+
+  @Test
+  void runStopsAtAccumulatorValueLikeArbitraryCondition() {
+    RunResult expected = miMa.copy(initialState)
+        .run(100, (instructionPointer, accumulator) -> accumulator == 20);
+    RunResult result = miMa.run(100, StopCondition.accumulatorEquals(20));
+
+    assertThat(result.stopReason()).isEqualTo(StopReason.STOP_CONDITION);
+    assertThat(result.steps()).isEqualTo(1).isEqualTo(expected.steps());
+    assertThat(result.state()).isEqualTo(expected.state());
+  }
+
+  @Test
+  void runReportsFaults() throws NumberOverflowException {
+    miMa = miMa.copy(
+        ImmutableState.builder()
+            .registers(ImmutableRegisters.builder().build())
+            .memory(
+                MainMemory.create()
+                    .set(0, MemoryFormat.combineInstruction(toCall(Load.LOAD_CONSTANT, 20)))
+                    .set(1, 0xFE0000)
+            )
+            .build()
+    );
+
+    RunResult result = miMa.run(100, StopCondition.NEVER);
+
+    assertThat(result.stopReason()).isEqualTo(StopReason.FAULT);
+    assertThat(result.steps()).isEqualTo(1);
+    assertThat(result.fault()).containsInstanceOf(InstructionNotFoundException.class);
+    assertThat(result.state().registers().instructionPointer()).isEqualTo(1);
+  }
+
   private InstructionCall toCall(Instruction instruction, int argument) {
     return ImmutableInstructionCall.builder()
         .command(instruction)
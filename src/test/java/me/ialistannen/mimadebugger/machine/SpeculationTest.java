@@ -0,0 +1,106 @@
+package me.ialistannen.mimadebugger.machine;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import me.ialistannen.mimadebugger.exceptions.MiMaException;
+import me.ialistannen.mimadebugger.machine.instructions.ImmutableInstructionCall;
+import me.ialistannen.mimadebugger.machine.instructions.Instruction;
+import me.ialistannen.mimadebugger.machine.instructions.InstructionSet;
+import me.ialistannen.mimadebugger.machine.instructions.defaultinstructions.Load;
+import me.ialistannen.mimadebugger.machine.instructions.defaultinstructions.Special;
+import me.ialistannen.mimadebugger.machine.memory.ImmutableRegisters;
+import me.ialistannen.mimadebugger.machine.memory.MainMemory;
+import me.ialistannen.mimadebugger.util.MemoryFormat;
+import org.junit.jupiter.api.Test;
+
+class SpeculationTest {
+
+  @Test
+  void computesTheNextStatesUpToTheHalt() throws MiMaException, InterruptedException {
+    MiMa miMa = new MiMa(
+        ImmutableState.builder()
+            .registers(ImmutableRegisters.builder().build())
+            .memory(
+                MainMemory.create()
+                    .set(0, instruction(Load.LOAD_CONSTANT, 1))
+                    .set(1, instruction(Load.LOAD_CONSTANT, 2))
+                    .set(2, instruction(Special.HALT, 0))
+            )
+            .build(),
+        new InstructionSet()
+    );
+    State start = miMa.getCurrentState();
+    MiMa reference = miMa.copy(start);
+
+    Speculation speculation = new Speculation(miMa, start, 8);
+
+    List<State> states = new ArrayList<>();
+    State head = start;
+    while (states.size() < 2) {
+      assertThat(speculation.startsAt(head)).isTrue();
+      State next = awaitNext(speculation);
+      states.add(next);
+      head = next;
+    }
+
+    assertThat(states).containsExactly(reference.step(), reference.step());
+    long deadline = System.nanoTime() + 5_000_000_000L;
+    while (!speculation.isHalting(head) && System.nanoTime() < deadline) {
+      Thread.sleep(1);
+    }
+    assertThat(speculation.isHalting(head)).isTrue();
+    assertThat(speculation.isHalting(start)).isFalse();
+    assertThat(speculation.hasNext()).isFalse();
+  }
+
+  @Test
+  void dropsStatesSkippedByTheOwner() throws MiMaException, InterruptedException {
+    MiMa miMa = new MiMa(
+        ImmutableState.builder()
+            .registers(ImmutableRegisters.builder().build())
+            .memory(
+                MainMemory.create()
+                    .set(0, instruction(Load.LOAD_CONSTANT, 1))
+                    .set(1, instruction(Load.LOAD_CONSTANT, 2))
+                    .set(2, instruction(Load.LOAD_CONSTANT, 3))
+                    .set(3, instruction(Load.LOAD_CONSTANT, 4))
+                    .set(4, instruction(Special.HALT, 0))
+            )
+            .build(),
+        new InstructionSet()
+    );
+    State start = miMa.getCurrentState();
+    MiMa reference = miMa.copy(start);
+
+    Speculation speculation = new Speculation(miMa, start, 1);
+    State first = reference.step();
+
+    assertThat(speculation.skip(first)).isTrue();
+    assertThat(speculation.startsAt(first)).isTrue();
+    assertThat(awaitNext(speculation)).isEqualTo(reference.step());
+    assertThat(speculation.skip(reference.step())).isTrue();
+    // the worker fell more than the lookahead behind
+    assertThat(speculation.skip(reference.step())).isFalse();
+  }
+
+  private static State awaitNext(Speculation speculation) throws InterruptedException {
+    long deadline = System.nanoTime() + 5_000_000_000L;
+    State next;
+    while ((next = speculation.take()) == null && System.nanoTime() < deadline) {
+      Thread.sleep(1);
+    }
+    assertThat(next).isNotNull();
+    return next;
+  }
+
+  private static int instruction(Instruction instruction, int argument) {
+    return MemoryFormat.combineInstruction(
+        ImmutableInstructionCall.builder()
+            .command(instruction)
+            .argument(argument)
+            .build()
+    );
+  }
+}
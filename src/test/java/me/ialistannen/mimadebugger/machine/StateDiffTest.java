@@ -0,0 +1,81 @@
+package me.ialistannen.mimadebugger.machine;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import me.ialistannen.mimadebugger.exceptions.NumberOverflowException;
+import me.ialistannen.mimadebugger.machine.memory.ImmutableRegisters;
+import me.ialistannen.mimadebugger.machine.memory.MainMemory;
+import org.junit.jupiter.api.Test;
+
+class StateDiffTest {
+
+  @Test
+  void equalStatesHaveNoChanges() throws NumberOverflowException {
+    State state = state(MainMemory.create().set(1, 1), 0, 0);
+
+    StateDiff diff = StateDiff.between(state, state.copy());
+
+    assertThat(diff.isEmpty()).isTrue();
+    assertThat(diff.getChangedRegisters()).isEmpty();
+    assertThat(diff.getChangedAddresses()).isEmpty();
+  }
+
+  @Test
+  void findsChangedRegisters() throws NumberOverflowException {
+    MainMemory memory = MainMemory.create().set(1, 1);
+
+    StateDiff diff = StateDiff.between(state(memory, 0, 5), state(memory, 1, 5));
+
+    assertThat(diff.getChangedRegisters())
+        .containsExactly(MiMaRegister.INSTRUCTION_ADDRESS_REGISTER);
+    assertThat(diff.getChangedAddresses()).isEmpty();
+  }
+
+  @Test
+  void findsChangedAndAddedAddresses() throws NumberOverflowException {
+    MainMemory.Builder builder = MainMemory.builder();
+    for (int i = 0; i < 50_000; i++) {
+      builder.set(i * 7, i);
+    }
+    MainMemory before = builder.build();
+    MainMemory after = before
+        .set(7, 100)
+        .set(8, 0)
+        .set(21, 3)
+        .set(300_000, 5);
+
+    StateDiff diff = StateDiff.between(state(before, 0, 0), state(after, 0, 0));
+    List<Integer> addresses = new ArrayList<>();
+    diff.forEachChangedAddress(addresses::add);
+
+    // 21 is written with its old value
+    assertThat(diff.getChangedAddresses()).containsExactly(7, 8, 300_000);
+    assertThat(addresses).containsExactly(7, 8, 300_000);
+    assertThat(diff.getChangedRegisters()).isEmpty();
+    assertThat(diff.isEmpty()).isFalse();
+  }
+
+  @Test
+  void addressesOnlyInitializedBeforeAreChanged() throws NumberOverflowException {
+    MainMemory after = MainMemory.create().set(1, 1);
+    MainMemory before = after.set(2, 2);
+
+    StateDiff diff = StateDiff.between(state(before, 0, 0), state(after, 0, 0));
+
+    assertThat(diff.getChangedAddresses()).containsExactly(2);
+  }
+
+  private static State state(MainMemory memory, int instructionPointer, int accumulator) {
+    return ImmutableState.builder()
+        .memory(memory)
+        .registers(
+            ImmutableRegisters.builder()
+                .instructionPointer(instructionPointer)
+                .accumulator(accumulator)
+                .build()
+        )
+        .build();
+  }
+}
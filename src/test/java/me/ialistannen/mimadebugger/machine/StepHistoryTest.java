@@ -0,0 +1,185 @@
+package me.ialistannen.mimadebugger.machine;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import me.ialistannen.mimadebugger.exceptions.NumberOverflowException;
+import me.ialistannen.mimadebugger.machine.memory.ImmutableRegisters;
+import me.ialistannen.mimadebugger.machine.memory.MainMemory;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class StepHistoryTest {
+
+  @Test
+  void restoresUninitializedAddresses() throws NumberOverflowException {
+    State before = state(MainMemory.create().set(1, 1), 0);
+    State after = state(before.memory().set(2, 0).set(3, -5), 1);
+    StepHistory history = new StepHistory(1 << 30);
+
+    history.record(before, after, 1);
+    State restored = history.previous(after);
+
+    assertThat(restored).isEqualTo(before);
+    assertThat(restored.memory().isInitialized(2)).isFalse();
+    assertThat(history.next(restored)).isEqualTo(after);
+  }
+
+  @Test
+  void recordsManyChangesInOneEntry() throws NumberOverflowException {
+    MainMemory.Builder builder = MainMemory.builder();
+    for (int i = 0; i < 100_000; i++) {
+      builder.set(i * 3, i);
+    }
+    State before = state(MainMemory.create().set(0, 7).set(400_000, 1), 0);
+    State after = state(builder.build(), 99);
+    StepHistory history = new StepHistory(1 << 30);
+
+    history.record(before, after, 1);
+
+    assertThat(history.previous(after)).isEqualTo(before);
+  }
+
+  @Test
+  void recordingDiscardsNextEntries() throws NumberOverflowException {
+    State first = state(MainMemory.create(), 0);
+    State second = state(MainMemory.create().set(0, 1), 1);
+    State third = state(MainMemory.create().set(0, 2), 2);
+    StepHistory history = new StepHistory(1 << 30);
+    history.record(first, second, 1);
+    history.record(second, third, 1);
+
+    history.previous(third);
+    history.previous(second);
+    history.record(first, third, 1);
+
+    assertThat(history.hasNext()).isFalse();
+    assertThat(history.previous(third)).isEqualTo(first);
+    assertThatThrownBy(() -> history.previous(first))
+        .isInstanceOf(IllegalStateException.class);
+  }
+
+  @Test
+  void seeksToAnyRecordedStep() throws NumberOverflowException {
+    List<State> states = new ArrayList<>();
+    states.add(state(MainMemory.create(), 0));
+    StepHistory history = new StepHistory(1 << 30);
+    for (int i = 1; i <= 10_000; i++) {
+      State previous = states.get(i - 1);
+      State next = state(previous.memory().set(i % 300, i), i);
+      history.record(previous, next, 1);
+      states.add(next);
+    }
+
+    State current = states.get(states.size() - 1);
+    for (int step : new int[]{0, 4_321, 9_999, 256, 7_000, 10_000, 1}) {
+      current = history.seek(current, step);
+
+      assertThat(current).isEqualTo(states.get(step));
+      assertThat(history.getStepIndex()).isEqualTo(step);
+    }
+    assertThat(history.getRecordedSteps()).isEqualTo(10_000);
+  }
+
+  @Test
+  void seekStopsBeforeMultiStepRecord() throws NumberOverflowException {
+    State first = state(MainMemory.create(), 0);
+    State second = state(MainMemory.create().set(0, 1), 1);
+    State third = state(MainMemory.create().set(0, 2), 2);
+    StepHistory history = new StepHistory(1 << 30);
+    history.record(first, second, 1);
+    history.record(second, third, 5_000_000_000L);
+
+    assertThat(history.getRecordedSteps()).isEqualTo(5_000_000_001L);
+    assertThat(history.seek(third, 4_000_000_000L)).isEqualTo(second);
+    assertThat(history.getStepIndex()).isEqualTo(1);
+    assertThat(history.next(second)).isEqualTo(third);
+    assertThat(history.getStepIndex()).isEqualTo(5_000_000_001L);
+    assertThatThrownBy(() -> history.seek(third, 5_000_000_002L))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test
+  void evictsOldRecordsToCheckpoints() throws NumberOverflowException {
+    long budget = 2 * 1024 * 1024;
+    StepHistory history = new StepHistory(budget);
+    State current = state(MainMemory.create(), 0);
+    State initial = current;
+    for (int i = 1; i <= 200_000; i++) {
+      State next = state(current.memory().set(i % 5_000, i), i);
+      history.record(current, next, 1);
+      current = next;
+    }
+
+    assertThat(history.getFootprint()).isLessThanOrEqualTo(budget);
+    assertThat(history.getFirstStep()).isGreaterThan(0);
+    assertThat(history.floorCheckpoint(10).getKey()).isEqualTo(0);
+    assertThat(history.floorCheckpoint(10).getValue()).isEqualTo(initial);
+    State newest = current;
+    assertThatThrownBy(() -> history.seek(newest, history.getFirstStep() - 1))
+        .isInstanceOf(IllegalArgumentException.class);
+
+    State first = history.seek(newest, history.getFirstStep());
+    assertThat(first.registers().accumulator()).isEqualTo(history.getFirstStep());
+    assertThat(history.hasPrevious()).isFalse();
+  }
+
+  @Test
+  void restoresFromTraceFileWithoutReplaying(@TempDir Path directory)
+      throws IOException, NumberOverflowException {
+    Path path = directory.resolve("trace");
+    State initial = state(MainMemory.create(), 0);
+    StepHistory history = new StepHistory(1 << 30, TraceFile.create(path, initial));
+    Map<Long, State> states = new HashMap<>();
+    states.put(0L, initial);
+    State current = initial;
+    long step = 0;
+    for (int i = 1; i <= 3_000; i++) {
+      MainMemory memory = i % 3 == 0
+          ? current.memory().unset(i % 50)
+          : current.memory().set(i % 50, i);
+      State next = state(memory, i);
+      long steps = i % 1_000 == 0 ? 3 : 1;
+      history.record(current, next, steps);
+      step += steps;
+      states.put(step, next);
+      current = next;
+    }
+    history.close();
+
+    StepHistory restored = new StepHistory(1 << 30, TraceFile.open(path));
+    State last = restored.restore(initial);
+
+    assertThat(last).isEqualTo(current);
+    assertThat(restored.getStepIndex()).isEqualTo(step);
+    assertThat(restored.getRecordedSteps()).isEqualTo(step);
+    for (long target : new long[]{1_500, 0, 2_999, 1_501, 257, step}) {
+      last = restored.seek(last, target);
+
+      assertThat(last).isEqualTo(states.get(target));
+    }
+    State next = state(last.memory().set(7, 7), 7);
+    restored.record(last, next, 1);
+    assertThat(restored.previous(next)).isEqualTo(current);
+    restored.close();
+  }
+
+  private static State state(MainMemory memory, int accumulator) {
+    return ImmutableState.builder()
+        .memory(memory)
+        .registers(
+            ImmutableRegisters.builder()
+                .accumulator(accumulator)
+                .instructionPointer(accumulator)
+                .aluInputLeft(-accumulator)
+                .build()
+        )
+        .build();
+  }
+}
@@ -0,0 +1,66 @@
+package me.ialistannen.mimadebugger.machine.device;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A stand-in for an external device, run as its own process. It answers a number of doorbells,
+ * replacing every word {@code w} of the window with {@code 2 * w + 1}.
+ */
+final class DevicePeer {
+
+  private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(
+      long[].class, ByteOrder.BIG_ENDIAN
+  );
+  private static final long TIMEOUT_NANOS = 30_000_000_000L;
+
+  private DevicePeer() {
+  }
+
+  /**
+   * Runs the peer.
+   *
+   * @param args the shared file and the number of doorbells to answer
+   * @throws IOException if the file could not be mapped
+   */
+  public static void main(String[] args) throws IOException {
+    Path file = Paths.get(args[0]);
+    int rounds = Integer.parseInt(args[1]);
+
+    MappedByteBuffer buffer;
+    try (FileChannel channel = FileChannel.open(
+        file, StandardOpenOption.READ, StandardOpenOption.WRITE
+    )) {
+      buffer = channel.map(MapMode.READ_WRITE, 0, channel.size());
+    }
+    int length = buffer.getInt(DeviceWindow.LENGTH_OFFSET);
+
+    for (int round = 0; round < rounds; round++) {
+      long answer = (long) LONGS.getAcquire(buffer, DeviceWindow.ANSWER_OFFSET);
+      long deadline = System.nanoTime() + TIMEOUT_NANOS;
+
+      long doorbell;
+      while ((doorbell = (long) LONGS.getAcquire(buffer, DeviceWindow.DOORBELL_OFFSET))
+          == answer) {
+        if (System.nanoTime() - deadline > 0) {
+          System.exit(1);
+        }
+        Thread.onSpinWait();
+      }
+
+      for (int i = 0; i < length; i++) {
+        int offset = DeviceWindow.WORDS_OFFSET + i * Integer.BYTES;
+        buffer.putInt(offset, buffer.getInt(offset) * 2 + 1);
+      }
+      LONGS.setRelease(buffer, DeviceWindow.ANSWER_OFFSET, doorbell);
+    }
+  }
+}
@@ -0,0 +1,99 @@
+package me.ialistannen.mimadebugger.machine.device;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import me.ialistannen.mimadebugger.exceptions.MiMaException;
+import me.ialistannen.mimadebugger.exceptions.NamedExecutionError;
+import me.ialistannen.mimadebugger.machine.ImmutableState;
+import me.ialistannen.mimadebugger.machine.MiMa;
+import me.ialistannen.mimadebugger.machine.State;
+import me.ialistannen.mimadebugger.machine.instructions.InstructionSet;
+import me.ialistannen.mimadebugger.machine.memory.ImmutableRegisters;
+import me.ialistannen.mimadebugger.machine.memory.MainMemory;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class DeviceWindowTest {
+
+  private static final int OPCODE = 0xFE;
+
+  @TempDir
+  Path directory;
+
+  @Test
+  void exchangesWordsWithPeerProcess() throws IOException, InterruptedException, MiMaException {
+    Path file = directory.resolve("device");
+    DeviceWindow window = DeviceWindow.open(file, 100, 3, Duration.ofSeconds(30));
+    Process peer = startPeer(file, 2);
+
+    try {
+      InstructionSet instructionSet = new InstructionSet();
+      instructionSet.registerInstruction(window.createInstruction("DEV", OPCODE));
+      MiMa miMa = new MiMa(state(MainMemory.create().set(100, 1).set(101, -3)), instructionSet);
+
+      miMa.step();
+      State state = miMa.step();
+
+      // every exchange maps w to 2 * w + 1, the uninitialized word starts out as 0
+      assertThat(state.memory().get(100)).isEqualTo(7);
+      assertThat(state.memory().get(101)).isEqualTo(-9);
+      assertThat(state.memory().get(102)).isEqualTo(3);
+      assertThat(peer.waitFor(30, TimeUnit.SECONDS)).isTrue();
+      assertThat(peer.exitValue()).isZero();
+    } finally {
+      peer.destroyForcibly();
+    }
+  }
+
+  @Test
+  void failsIfPeerDoesNotAnswer() throws IOException, MiMaException {
+    DeviceWindow window = DeviceWindow.open(
+        directory.resolve("device"), 0, 1, Duration.ofMillis(50)
+    );
+    InstructionSet instructionSet = new InstructionSet();
+    instructionSet.registerInstruction(window.createInstruction("DEV", OPCODE));
+    MiMa miMa = new MiMa(state(MainMemory.create()), instructionSet);
+
+    assertThatThrownBy(miMa::step)
+        .isInstanceOf(NamedExecutionError.class);
+  }
+
+  @Test
+  void rejectsWindowsOutsideTheAddressSpace() {
+    assertThatThrownBy(
+        () -> DeviceWindow.open(directory.resolve("device"), 0xFFFFF, 2, Duration.ZERO)
+    ).isInstanceOf(IllegalArgumentException.class);
+  }
+
+  private static Process startPeer(Path file, int rounds) throws IOException {
+    Path java = Paths.get(System.getProperty("java.home"), "bin", "java");
+
+    return new ProcessBuilder(
+        java.toString(),
+        "-cp", System.getProperty("java.class.path"),
+        DevicePeer.class.getName(),
+        file.toString(),
+        String.valueOf(rounds)
+    )
+        .inheritIO()
+        .start();
+  }
+
+  private static State state(MainMemory memory) throws MiMaException {
+    MainMemory program = memory
+        .set(0, OPCODE << 16)
+        .set(1, OPCODE << 16)
+        .set(2, 0xF00000);
+
+    return ImmutableState.builder()
+        .memory(program)
+        .registers(ImmutableRegisters.builder().build())
+        .build();
+  }
+}
@@ -0,0 +1,851 @@
+package me.ialistannen.mimadebugger.machine.fast;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.OptionalInt;
+import java.util.Random;
+import me.ialistannen.mimadebugger.exceptions.MemoryNotInitializedException;
+import me.ialistannen.mimadebugger.exceptions.MiMaException;
+import me.ialistannen.mimadebugger.exceptions.NumberOverflowException;
+import me.ialistannen.mimadebugger.exceptions.ProgramHaltException;
+import me.ialistannen.mimadebugger.gui.state.MemoryValue;
+import me.ialistannen.mimadebugger.machine.ExecutionStatus;
+import me.ialistannen.mimadebugger.machine.FaultType;
+import me.ialistannen.mimadebugger.machine.ImmutableState;
+import me.ialistannen.mimadebugger.machine.State;
+import me.ialistannen.mimadebugger.machine.instructions.ImmutableInstruction;
+import me.ialistannen.mimadebugger.machine.instructions.ImmutableInstructionCall;
+import me.ialistannen.mimadebugger.machine.instructions.Instruction;
+import me.ialistannen.mimadebugger.machine.instructions.InstructionSet;
+import me.ialistannen.mimadebugger.machine.memory.ImmutableRegisters;
+import me.ialistannen.mimadebugger.machine.memory.MainMemory;
+import me.ialistannen.mimadebugger.parser.MiMaAssemblyParser;
+import me.ialistannen.mimadebugger.parser.ast.SyntaxTreeNode;
+import me.ialistannen.mimadebugger.parser.processing.ToMemoryValueConverter;
+import me.ialistannen.mimadebugger.parser.processing.ToRegistersConverter;
+import me.ialistannen.mimadebugger.util.MemoryFormat;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class FastMiMaTest {
+
+  private static final int TRIALS_PER_INSTRUCTION = 500;
+  private static final int MEMORY_WINDOW = 48;
+  private static final int NEVER_COMPILE = Integer.MAX_VALUE;
+  private static final int ALWAYS_COMPILE = 0;
+
+  static final String SELECTION_SORT = String.join("\n",
+      ".reg IAR init",
+      "9", "8", "7", "6", "5", "4", "3", "2", "1",
+      ".org 0x00040",
+      "  8",
+      ".org 0x00080",
+      "i: .lit 0",
+      "k: .lit 0",
+      "maxIndex: .lit 0",
+      "max: .lit 0",
+      "negOne: .lit -1",
+      "one: .lit 1",
+      "temp: .lit 0",
+      ".org 0x00100",
+      "init: LDV 0x40",
+      "  STV i",
+      "iHead: LDV i",
+      "  JMN end",
+      "  LDV i",
+      "  STV maxIndex",
+      "  LDIV maxIndex",
+      "  STV max",
+      "  LDV i",
+      "  STV k",
+      "kHead: LDV k",
+      "  JMN afterLoop",
+      "  LDV max",
+      "  NOT",
+      "  ADD one",
+      "  STV temp",
+      "  LDIV k",
+      "  ADD temp",
+      "  JMN kAfter",
+      "  LDV k",
+      "  STV maxIndex",
+      "  LDIV maxIndex",
+      "  STV max",
+      "kAfter: LDV k",
+      "  ADD negOne",
+      "  STV k",
+      "  JMP kHead",
+      "afterLoop: LDIV i",
+      "  STV temp",
+      "  LDV max",
+      "  STIV i",
+      "  LDV temp",
+      "  STIV maxIndex",
+      "  LDV i",
+      "  ADD negOne",
+      "  STV i",
+      "  JMP iHead",
+      "end: HALT"
+  );
+
+  static final String FUNCTION_CALLS = String.join("\n",
+      ".reg SP 200",
+      "  LDC 5",
+      "  STRS 0",
+      "  CALL square",
+      "  STV 100",
+      "  LDC 0",
+      "  ADC 30",
+      "  STSP",
+      "  LDSP",
+      "  STFP",
+      "  LDFP",
+      "  RAR",
+      "  RAR",
+      "  XOR 100",
+      "  OR 100",
+      "  AND 100",
+      "  LDRA",
+      "  STRA",
+      "  HALT",
+      "square: LDRS 0",
+      "  STV 101",
+      "  ADD 101",
+      "  RET"
+  );
+
+  static final String SELF_MODIFYING = String.join("\n",
+      "start: LDV counter",
+      "  ADD one",
+      "  STV counter",
+      "  EQL three",
+      "  JMN patch",
+      "  JMP target",
+      "patch: LDV halt",
+      "  STV target",
+      "  JMP start",
+      "target: JMP start",
+      "halt: HALT",
+      "counter: .lit 0",
+      "one: .lit 1",
+      "three: .lit 3"
+  );
+
+  static final String COUNTING_LOOP = String.join("\n",
+      "head: LDV i",
+      "  EQL limit",
+      "  JMN end",
+      "  LDV i",
+      "  ADD one",
+      "  STV i",
+      "  LDC 3",
+      "  ADD sum",
+      "  STV sum",
+      "  LDV negative",
+      "  JMN head",
+      "end: HALT",
+      "i: .lit 0",
+      "one: .lit 1",
+      "sum: .lit 0",
+      "limit: .lit 20",
+      "negative: .lit -1"
+  );
+
+  @ParameterizedTest(name = "{0}")
+  @MethodSource("instructions")
+  void behavesLikeMiMaForSingleInstruction(Instruction instruction) throws NumberOverflowException {
+    InstructionSet instructionSet = new InstructionSet();
+    Random random = new Random(instruction.opcode());
+    FastMiMa fastMiMa = new FastMiMa(getEmptyState(), instructionSet);
+
+    for (int i = 0; i < TRIALS_PER_INSTRUCTION; i++) {
+      State state = randomState(random, instruction);
+
+      fastMiMa.load(state);
+      assertSameStep(state, fastMiMa, instructionSet);
+    }
+  }
+
+  @Test
+  void runsCustomInstructions() throws MiMaException {
+    InstructionSet instructionSet = new InstructionSet();
+    instructionSet.registerInstruction(
+        ImmutableInstruction.builder()
+            .opcode(0xFE)
+            .name("DBL")
+            .hasArgument(false)
+            .action((state, ignored) -> state.copy().withRegisters(
+                state.registers().copy().withAccumulator(state.registers().accumulator() * 2)
+            ))
+            .build()
+    );
+    State state = ImmutableState.builder()
+        .registers(ImmutableRegisters.builder().accumulator(21).build())
+        .memory(MainMemory.create().set(0, 0xFE0000))
+        .build();
+
+    FastMiMa fastMiMa = new FastMiMa(state, instructionSet);
+    fastMiMa.step();
+
+    assertThat(fastMiMa.getAccumulator()).isEqualTo(42);
+    assertThat(fastMiMa.toState()).isEqualTo(new ReferenceMiMa(state, instructionSet).step());
+  }
+
+  @Test
+  void runsCustomMachineActionInstructions() throws MiMaException {
+    InstructionSet instructionSet = new InstructionSet();
+    instructionSet.registerInstruction(
+        ImmutableInstruction.builder()
+            .opcode(0xFE)
+            .name("SWP")
+            .argumentWidth(16)
+            .machineAction((context, address) -> {
+              int value = context.getMemory(address);
+              context.setMemory(address, context.getAccumulator());
+              context.setAccumulator(value);
+            })
+            .build()
+    );
+    State state = ImmutableState.builder()
+        .registers(ImmutableRegisters.builder().accumulator(21).build())
+        .memory(MainMemory.create().set(0, 0xFE0005).set(5, 42))
+        .build();
+
+    FastMiMa fastMiMa = new FastMiMa(state, instructionSet);
+    fastMiMa.step();
+
+    assertThat(fastMiMa.getAccumulator()).isEqualTo(42);
+    assertThat(fastMiMa.getMemoryValue(5)).isEqualTo(21);
+    assertThat(fastMiMa.toState()).isEqualTo(new ReferenceMiMa(state, instructionSet).step());
+  }
+
+  @Test
+  void revertingAFailedCustomInstructionRestoresItsWrites() throws MiMaException {
+    InstructionSet instructionSet = new InstructionSet();
+    instructionSet.registerInstruction(
+        ImmutableInstruction.builder()
+            .opcode(0xFE)
+            .name("BAD")
+            .argumentWidth(16)
+            .machineAction((context, address) -> {
+              context.setMemory(address, 1);
+              context.setMemory(address + 1, 2);
+              context.setMemory(address, 3);
+              throw new NumberOverflowException(address, 16);
+            })
+            .build()
+    );
+    State state = ImmutableState.builder()
+        .registers(ImmutableRegisters.builder().build())
+        .memory(MainMemory.create().set(0, 0xFE0005).set(5, 42))
+        .build();
+
+    FastMiMa fastMiMa = new FastMiMa(state, instructionSet);
+    assertThat(fastMiMa.tryStep()).isEqualTo(ExecutionStatus.FAULT);
+    assertThat(fastMiMa.getMemoryValue(5)).isEqualTo(3);
+
+    fastMiMa.revertIncompleteStep();
+
+    assertThat(fastMiMa.toState()).isEqualTo(state);
+  }
+
+  @Test
+  void writesDoNotAffectMachinesSharingTheImage() throws MiMaException {
+    InstructionSet instructionSet = new InstructionSet();
+    State initialState = parse(SELF_MODIFYING, instructionSet);
+    FastMiMa first = new FastMiMa(initialState, instructionSet);
+    FastMiMa second = new FastMiMa(initialState, instructionSet);
+
+    first.setMemoryValue(0, 42);
+    first.setMemoryValue(5000, 43);
+
+    assertThat(first.getMemoryValue(0)).isEqualTo(42);
+    assertThat(second.getMemoryValue(0)).isEqualTo(initialState.memory().get(0));
+    assertThatThrownBy(() -> second.getMemoryValue(5000))
+        .isInstanceOf(MemoryNotInitializedException.class);
+
+    first.load(initialState);
+    assertThat(first.toState()).isEqualTo(initialState);
+    assertThat(initialState.memory().toImage()).isSameAs(initialState.memory().toImage());
+  }
+
+  @Test
+  void loadingRelatedStatesOnlyWritesTheDifference() throws MiMaException {
+    InstructionSet instructionSet = new InstructionSet();
+    State initialState = parse(SELECTION_SORT, instructionSet);
+    FastMiMa fastMiMa = new FastMiMa(initialState, instructionSet, ALWAYS_COMPILE);
+
+    fastMiMa.run(50);
+    State early = fastMiMa.toState();
+    fastMiMa.run(200);
+    State late = fastMiMa.toState();
+    fastMiMa.setMemoryValue(5000, 1);
+    State written = fastMiMa.toState();
+    fastMiMa.run(10);
+
+    fastMiMa.load(early);
+    assertThat(fastMiMa.toState()).isEqualTo(early);
+    assertThat(fastMiMa.isCompiled(initialState.registers().instructionPointer())).isTrue();
+    fastMiMa.load(written);
+    assertThat(fastMiMa.toState()).isEqualTo(written);
+    fastMiMa.load(late);
+    assertThat(fastMiMa.toState()).isEqualTo(late);
+    assertThatThrownBy(() -> fastMiMa.getMemoryValue(5000))
+        .isInstanceOf(MemoryNotInitializedException.class);
+
+    FastMiMa fresh = new FastMiMa(late, instructionSet);
+    fastMiMa.run(500);
+    fresh.run(500);
+    assertThat(fastMiMa.toState()).isEqualTo(fresh.toState());
+  }
+
+  @Test
+  void loadAndToStateRoundTrip() throws NumberOverflowException {
+    State state = ImmutableState.builder()
+        .registers(
+            ImmutableRegisters.builder()
+                .accumulator(-5)
+                .aluInputLeft(1)
+                .aluInputRight(2)
+                .instruction(3)
+                .instructionPointer(4)
+                .returnAddress(5)
+                .stackPointer(6)
+                .framePointer(7)
+                .build()
+        )
+        .memory(MainMemory.create().set(0, 1).set((1 << MemoryFormat.ADDRESS_LENGTH) - 1, -1))
+        .build();
+
+    assertThat(new FastMiMa(state, new InstructionSet()).toState()).isEqualTo(state);
+  }
+
+  @Test
+  void runsSelectionSortLikeMiMa() throws MiMaException {
+    assertSameRun(SELECTION_SORT);
+  }
+
+  @Test
+  void runsFunctionCallsLikeMiMa() throws MiMaException {
+    assertSameRun(FUNCTION_CALLS);
+  }
+
+  @Test
+  void runsSelfModifyingCodeLikeMiMa() throws MiMaException {
+    assertSameRun(SELF_MODIFYING);
+  }
+
+  @Test
+  void debuggerWriteInvalidatesDecodedInstruction() throws MiMaException {
+    InstructionSet instructionSet = new InstructionSet();
+    FastMiMa fastMiMa = new FastMiMa(parse("LDC 1\nJMP 0", instructionSet), instructionSet);
+
+    // decode and cache both instructions
+    for (int i = 0; i < 4; i++) {
+      fastMiMa.step();
+    }
+    assertThat(fastMiMa.getInstructionPointer()).isZero();
+    assertThat(fastMiMa.getAccumulator()).isEqualTo(1);
+
+    fastMiMa.setMemoryValue(0, fastMiMa.getMemoryValue(0) + 1);
+    fastMiMa.step();
+
+    assertThat(fastMiMa.getAccumulator()).isEqualTo(2);
+  }
+
+  @ParameterizedTest(name = "{index}")
+  @MethodSource("programs")
+  void runBehavesLikeStepping(String program) {
+    InstructionSet instructionSet = new InstructionSet();
+    State initialState = parse(program, instructionSet);
+
+    assertSameBlockRun(initialState, instructionSet, Long.MAX_VALUE, NEVER_COMPILE);
+  }
+
+  @ParameterizedTest(name = "{index}")
+  @MethodSource("programs")
+  void runBehavesLikeSteppingWhenCompiled(String program) {
+    InstructionSet instructionSet = new InstructionSet();
+    State initialState = parse(program, instructionSet);
+
+    assertSameBlockRun(initialState, instructionSet, Long.MAX_VALUE, ALWAYS_COMPILE);
+  }
+
+  @Test
+  void reloadedMachinesReuseCompiledBlocks() throws MiMaException {
+    InstructionSet instructionSet = new InstructionSet();
+    State initialState = parse(
+        String.join("\n",
+            "loop: LDV counter",
+            "  ADD one",
+            "  STV counter",
+            "  JMP loop",
+            "counter: .lit 0",
+            "one: .lit 1"
+        ),
+        instructionSet
+    );
+    FastMiMa fastMiMa = new FastMiMa(initialState, instructionSet, ALWAYS_COMPILE);
+
+    for (int i = 0; i <= BlockCompiler.MAX_GENERATED_CLASSES; i++) {
+      fastMiMa.load(initialState);
+      fastMiMa.run(8);
+
+      assertThat(fastMiMa.isCompiled(0)).isTrue();
+    }
+    FastMiMa copy = new FastMiMa(initialState, instructionSet, ALWAYS_COMPILE);
+    copy.run(8);
+    assertThat(copy.isCompiled(0)).isTrue();
+  }
+
+  @Test
+  void stateBasedInstructionsKeepCompiledBlocks() throws MiMaException {
+    InstructionSet instructionSet = new InstructionSet();
+    instructionSet.registerInstruction(
+        ImmutableInstruction.builder()
+            .opcode(0xFE)
+            .name("CPY")
+            .argumentWidth(16)
+            .action((state, address) -> state.copy().withMemory(
+                state.memory().set(address, state.registers().accumulator())
+            ))
+            .build()
+    );
+    State initialState = parse(
+        String.join("\n",
+            "loop: LDV counter",
+            "  ADD one",
+            "  STV counter",
+            "  CPY copy",
+            "  JMP loop",
+            "counter: .lit 0",
+            "one: .lit 1",
+            "copy: .lit 0"
+        ),
+        instructionSet
+    );
+    FastMiMa fastMiMa = new FastMiMa(initialState, instructionSet, ALWAYS_COMPILE);
+    ReferenceMiMa referenceMiMa = new ReferenceMiMa(initialState, instructionSet);
+
+    fastMiMa.run(4);
+    State expected = initialState;
+    for (int i = 0; i < 4; i++) {
+      expected = referenceMiMa.step();
+    }
+
+    assertThat(fastMiMa.isCompiled(0)).isTrue();
+    assertThat(fastMiMa.toState()).isEqualTo(expected);
+  }
+
+  @ParameterizedTest(name = "compile threshold {0}")
+  @ValueSource(ints = {NEVER_COMPILE, ALWAYS_COMPILE, 3})
+  void runStopsAfterMaxSteps(int compileThreshold) {
+    InstructionSet instructionSet = new InstructionSet();
+    State initialState = parse(SELECTION_SORT, instructionSet);
+
+    for (int maxSteps = 0; maxSteps < 120; maxSteps++) {
+      assertSameBlockRun(initialState, instructionSet, maxSteps, compileThreshold);
+    }
+  }
+
+  @Test
+  void compiledLoopRunsManySteps() throws MiMaException {
+    InstructionSet instructionSet = new InstructionSet();
+    State initialState = parse(
+        String.join("\n",
+            "loop: LDV counter",
+            "  ADD one",
+            "  STV counter",
+            "  JMP loop",
+            "counter: .lit 0",
+            "one: .lit 1"
+        ),
+        instructionSet
+    );
+    FastMiMa fastMiMa = new FastMiMa(initialState, instructionSet, ALWAYS_COMPILE);
+
+    fastMiMa.run(4_000_002);
+
+    assertThat(fastMiMa.getStepCount()).isEqualTo(4_000_002);
+    assertThat(fastMiMa.getMemoryValue(4)).isEqualTo(1_000_000);
+    assertThat(fastMiMa.getInstructionPointer()).isEqualTo(2);
+    assertThat(fastMiMa.getAccumulator()).isEqualTo(1_000_001);
+  }
+
+  @ParameterizedTest(name = "compile threshold {0}")
+  @ValueSource(ints = {NEVER_COMPILE, ALWAYS_COMPILE})
+  void runLeavesBlockAfterOverwritingIt(int compileThreshold) throws MiMaException {
+    InstructionSet instructionSet = new InstructionSet();
+    State initialState = parse(
+        String.join("\n",
+            "  LDV patch",
+            "  STV target",
+            "target: LDC 1",
+            "  HALT",
+            "patch: LDC 2"
+        ),
+        instructionSet
+    );
+    FastMiMa fastMiMa = new FastMiMa(initialState, instructionSet, compileThreshold);
+
+    fastMiMa.run(3);
+
+    assertThat(fastMiMa.getAccumulator()).isEqualTo(2);
+    assertThat(fastMiMa.getStepCount()).isEqualTo(3);
+  }
+
+  @ParameterizedTest(name = "compile threshold {0}")
+  @ValueSource(ints = {NEVER_COMPILE, ALWAYS_COMPILE})
+  void runBehavesLikeSteppingForRandomPrograms(int compileThreshold)
+      throws NumberOverflowException {
+    InstructionSet instructionSet = new InstructionSet();
+    List<Instruction> instructions = instructionSet.getAll();
+    Random random = new Random(42);
+    // every compiled block defines a class, so compiled runs are sampled less
+    int trials = compileThreshold == ALWAYS_COMPILE ? 100 : TRIALS_PER_INSTRUCTION;
+
+    for (int i = 0; i < trials; i++) {
+      MainMemory memory = MainMemory.create();
+      for (int address = 0; address < MEMORY_WINDOW; address++) {
+        if (random.nextInt(10) < 3) {
+          memory = memory.set(address, randomValue(random));
+          continue;
+        }
+        Instruction instruction = instructions.get(random.nextInt(instructions.size()));
+        memory = memory.set(
+            address,
+            MemoryFormat.combineInstruction(
+                ImmutableInstructionCall.builder()
+                    .command(instruction)
+                    .argument(randomArgument(random, instruction))
+                    .build()
+            )
+        );
+      }
+      State state = ImmutableState.builder()
+          .memory(memory)
+          .registers(
+              ImmutableRegisters.builder()
+                  .accumulator(randomValue(random))
+                  .stackPointer(randomRegister(random))
+                  .build()
+          )
+          .build();
+
+      assertSameBlockRun(state, instructionSet, 200, compileThreshold);
+    }
+  }
+
+  @ParameterizedTest(name = "compile threshold {0}")
+  @ValueSource(ints = {NEVER_COMPILE, ALWAYS_COMPILE, 3})
+  void runStopsLikeSteppingAtStopValues(int compileThreshold) {
+    InstructionSet instructionSet = new InstructionSet();
+
+    for (String program : programs()) {
+      State initialState = parse(program, instructionSet);
+      for (int stop : new int[]{-1, 0, 1, 3, 6, 7, 9, 15}) {
+        assertSameStoppingRun(
+            initialState, instructionSet, compileThreshold, new BitSet(), OptionalInt.of(stop)
+        );
+      }
+    }
+  }
+
+  @ParameterizedTest(name = "compile threshold {0}")
+  @ValueSource(ints = {NEVER_COMPILE, ALWAYS_COMPILE, 3})
+  void runStopsLikeSteppingAtBreakpoints(int compileThreshold) {
+    InstructionSet instructionSet = new InstructionSet();
+
+    for (String program : programs()) {
+      State initialState = parse(program, instructionSet);
+      for (int address = 0; address < 24; address++) {
+        BitSet breakpoints = new BitSet();
+        breakpoints.set(address);
+        assertSameStoppingRun(
+            initialState, instructionSet, compileThreshold, breakpoints, OptionalInt.empty()
+        );
+      }
+    }
+  }
+
+  @Test
+  void tryRunReportsHaltAsStatus() throws MiMaException {
+    InstructionSet instructionSet = new InstructionSet();
+    State initialState = parse(SELECTION_SORT, instructionSet);
+    FastMiMa fastMiMa = new FastMiMa(initialState, instructionSet);
+
+    assertThat(fastMiMa.tryRun(Long.MAX_VALUE)).isEqualTo(ExecutionStatus.HALTED);
+    assertThat(fastMiMa.getFaultType()).isNull();
+    assertThat(fastMiMa.createException()).isInstanceOf(ProgramHaltException.class);
+
+    ReferenceMiMa miMa = new ReferenceMiMa(initialState, instructionSet);
+    assertThatThrownBy(() -> {
+      while (true) {
+        miMa.step();
+      }
+    }).isInstanceOf(ProgramHaltException.class);
+    assertThat(fastMiMa.toState()).isEqualTo(miMa.getCurrentState());
+  }
+
+  @Test
+  void tryStepReportsFaultAsStatus() {
+    InstructionSet instructionSet = new InstructionSet();
+    FastMiMa fastMiMa = new FastMiMa(parse("LDC 1\nLDV 100", instructionSet), instructionSet);
+
+    assertThat(fastMiMa.tryStep()).isEqualTo(ExecutionStatus.RUNNING);
+    assertThat(fastMiMa.tryStep()).isEqualTo(ExecutionStatus.FAULT);
+    assertThat(fastMiMa.getFaultType()).isEqualTo(FaultType.MEMORY_NOT_INITIALIZED);
+    assertThat(fastMiMa.getFaultValue()).isEqualTo(100);
+    assertThat(fastMiMa.getStepCount()).isEqualTo(1);
+
+    assertThat(fastMiMa.createException())
+        .isInstanceOf(MemoryNotInitializedException.class)
+        .hasMessage(new MemoryNotInitializedException(100).getMessage());
+  }
+
+  @Test
+  void tryStepReportsCustomInstructionErrors() throws NumberOverflowException {
+    InstructionSet instructionSet = new InstructionSet();
+    MiMaException error = new MiMaException("custom");
+    instructionSet.registerInstruction(
+        ImmutableInstruction.builder()
+            .opcode(0xFE)
+            .name("FAIL")
+            .hasArgument(false)
+            .action((state, ignored) -> {
+              throw error;
+            })
+            .build()
+    );
+    State state = ImmutableState.builder()
+        .registers(ImmutableRegisters.builder().build())
+        .memory(MainMemory.create().set(0, 0xFE0000))
+        .build();
+    FastMiMa fastMiMa = new FastMiMa(state, instructionSet);
+
+    assertThat(fastMiMa.tryStep()).isEqualTo(ExecutionStatus.FAULT);
+    assertThat(fastMiMa.getFaultType()).isEqualTo(FaultType.INSTRUCTION_ERROR);
+    assertThat(fastMiMa.createException()).isSameAs(error);
+  }
+
+  private static void assertSameBlockRun(State initialState, InstructionSet instructionSet,
+      long maxSteps, int compileThreshold) {
+    ReferenceMiMa miMa = new ReferenceMiMa(initialState, instructionSet);
+    FastMiMa fastMiMa = new FastMiMa(initialState, instructionSet, compileThreshold);
+
+    MiMaException expected = null;
+    MiMaException actual = null;
+    long steps = 0;
+    try {
+      while (steps < maxSteps) {
+        miMa.step();
+        steps++;
+      }
+    } catch (MiMaException e) {
+      expected = e;
+    }
+    try {
+      fastMiMa.run(maxSteps);
+    } catch (MiMaException e) {
+      actual = e;
+    }
+
+    assertSameException(expected, actual);
+    assertThat(fastMiMa.getStepCount()).isEqualTo(steps);
+    assertThat(fastMiMa.toState())
+        .describedAs("State after running %s", initialState)
+        .isEqualTo(miMa.getCurrentState());
+  }
+
+  /**
+   * Runs a program repeatedly until it stops, comparing every stop with stepping a single
+   * instruction at a time and checking after every step.
+   */
+  private static void assertSameStoppingRun(State initialState, InstructionSet instructionSet,
+      int compileThreshold, BitSet breakpoints, OptionalInt stopAccumulator) {
+    FastMiMa stepping = new FastMiMa(initialState, instructionSet, NEVER_COMPILE);
+    FastMiMa fastMiMa = new FastMiMa(initialState, instructionSet, compileThreshold);
+
+    for (int run = 0; run < 50; run++) {
+      ExecutionStatus expected = ExecutionStatus.RUNNING;
+      for (long steps = 0; steps < 5_000; steps++) {
+        expected = stepping.tryStep();
+        int instructionPointer = stepping.getInstructionPointer();
+        if (expected != ExecutionStatus.RUNNING
+            || stopAccumulator.isPresent()
+            && stepping.getAccumulator() == stopAccumulator.getAsInt()
+            || instructionPointer >= 0 && breakpoints.get(instructionPointer)) {
+          break;
+        }
+      }
+      ExecutionStatus actual = fastMiMa.tryRun(5_000, breakpoints, stopAccumulator);
+
+      assertThat(actual).isEqualTo(expected);
+      assertThat(fastMiMa.getStepCount()).isEqualTo(stepping.getStepCount());
+      assertThat(fastMiMa.toState())
+          .describedAs("State after run %s with stop %s", run, stopAccumulator)
+          .isEqualTo(stepping.toState());
+      if (expected != ExecutionStatus.RUNNING) {
+        return;
+      }
+    }
+  }
+
+  private static void assertSameRun(String program) throws MiMaException {
+    InstructionSet instructionSet = new InstructionSet();
+    State initialState = parse(program, instructionSet);
+
+    ReferenceMiMa miMa = new ReferenceMiMa(initialState, instructionSet);
+    FastMiMa fastMiMa = new FastMiMa(initialState, instructionSet);
+
+    int steps = 0;
+    while (true) {
+      MiMaException expected = null;
+      MiMaException actual = null;
+      try {
+        miMa.step();
+      } catch (MiMaException e) {
+        expected = e;
+      }
+      try {
+        fastMiMa.step();
+      } catch (MiMaException e) {
+        actual = e;
+      }
+
+      assertSameException(expected, actual);
+      if (expected != null) {
+        assertThat(expected).isInstanceOf(ProgramHaltException.class);
+        break;
+      }
+      steps++;
+    }
+
+    assertThat(steps).isGreaterThan(10);
+    assertThat(fastMiMa.toState()).isEqualTo(miMa.getCurrentState());
+  }
+
+  static void assertSameStep(State state, FastMiMa fastMiMa, InstructionSet instructionSet) {
+    ReferenceMiMa miMa = new ReferenceMiMa(state, instructionSet);
+
+    MiMaException expected = null;
+    MiMaException actual = null;
+    try {
+      miMa.step();
+    } catch (MiMaException e) {
+      expected = e;
+    }
+    try {
+      fastMiMa.step();
+    } catch (MiMaException e) {
+      actual = e;
+    }
+
+    assertSameException(expected, actual);
+    assertThat(fastMiMa.toState())
+        .describedAs("State after executing %s", state)
+        .isEqualTo(miMa.getCurrentState());
+  }
+
+  static void assertSameException(MiMaException expected, MiMaException actual) {
+    if (expected == null) {
+      assertThat(actual).isNull();
+      return;
+    }
+    assertThat(actual).isNotNull();
+    assertThat(actual.getClass()).isEqualTo(expected.getClass());
+    assertThat(actual.getMessage()).isEqualTo(expected.getMessage());
+  }
+
+  static State getEmptyState() {
+    return ImmutableState.builder()
+        .registers(ImmutableRegisters.builder().build())
+        .memory(MainMemory.create())
+        .build();
+  }
+
+  static State randomState(Random random, Instruction instruction)
+      throws NumberOverflowException {
+    MainMemory memory = MainMemory.create();
+    for (int address = 0; address < MEMORY_WINDOW; address++) {
+      if (random.nextInt(10) < 7) {
+        memory = memory.set(address, randomValue(random));
+      }
+    }
+
+    int instructionPointer = random.nextInt(MEMORY_WINDOW);
+    memory = memory.set(
+        instructionPointer,
+        MemoryFormat.combineInstruction(
+            ImmutableInstructionCall.builder()
+                .command(instruction)
+                .argument(randomArgument(random, instruction))
+                .build()
+        )
+    );
+
+    return ImmutableState.builder()
+        .memory(memory)
+        .registers(
+            ImmutableRegisters.builder()
+                .accumulator(randomValue(random))
+                .instructionPointer(instructionPointer)
+                .returnAddress(randomRegister(random))
+                .stackPointer(randomRegister(random))
+                .framePointer(randomRegister(random))
+                .build()
+        )
+        .build();
+  }
+
+  private static int randomValue(Random random) {
+    switch (random.nextInt(4)) {
+      case 0:
+        return random.nextInt(MemoryFormat.VALUE_MAXIMUM - MemoryFormat.VALUE_MINIMUM)
+            + MemoryFormat.VALUE_MINIMUM;
+      case 1:
+        return random.nextBoolean() ? MemoryFormat.VALUE_MAXIMUM : MemoryFormat.VALUE_MINIMUM;
+      default:
+        return random.nextInt(MEMORY_WINDOW + 8) - 4;
+    }
+  }
+
+  private static int randomRegister(Random random) {
+    if (random.nextInt(10) == 0) {
+      return random.nextBoolean() ? (1 << MemoryFormat.ADDRESS_LENGTH) - 1 : -1;
+    }
+    return random.nextInt(MEMORY_WINDOW);
+  }
+
+  private static int randomArgument(Random random, Instruction instruction) {
+    if (random.nextInt(10) == 0) {
+      return instruction.opcode() > 0xF ? 0xffff : 0xfffff;
+    }
+    return random.nextInt(MEMORY_WINDOW + 4);
+  }
+
+  static State parse(String program, InstructionSet instructionSet) {
+    SyntaxTreeNode root = new MiMaAssemblyParser(instructionSet)
+        .parseProgramToValidatedTree(program);
+    List<MemoryValue> values = new ToMemoryValueConverter().process(root)
+        .orElseThrow(() -> new IllegalArgumentException(root.getAllParsingProblems().toString()));
+
+    return ImmutableState.builder()
+        .memory(MainMemory.create(values))
+        .registers(new ToRegistersConverter().toRegisters(root))
+        .build();
+  }
+
+  private static List<String> programs() {
+    return List.of(SELECTION_SORT, FUNCTION_CALLS, SELF_MODIFYING, COUNTING_LOOP);
+  }
+
+  private static List<Instruction> instructions() {
+    return new InstructionSet().getAll();
+  }
+}
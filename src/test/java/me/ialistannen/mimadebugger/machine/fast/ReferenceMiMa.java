@@ -0,0 +1,61 @@
+package me.ialistannen.mimadebugger.machine.fast;
+
+import java.util.Optional;
+import me.ialistannen.mimadebugger.exceptions.InstructionNotFoundException;
+import me.ialistannen.mimadebugger.exceptions.MiMaException;
+import me.ialistannen.mimadebugger.machine.State;
+import me.ialistannen.mimadebugger.machine.instructions.Instruction;
+import me.ialistannen.mimadebugger.machine.instructions.InstructionSet;
+import me.ialistannen.mimadebugger.util.MemoryFormat;
+
+/**
+ * A straightforward MiMa working on immutable {@link State}s, which the {@link FastMiMa} is
+ * compared against.
+ */
+class ReferenceMiMa {
+
+  private final InstructionSet instructionSet;
+  private State currentState;
+
+  ReferenceMiMa(State initialState, InstructionSet instructionSet) {
+    this.currentState = initialState;
+    this.instructionSet = instructionSet;
+  }
+
+  State step() throws MiMaException {
+    int currentInstruction = currentState.memory()
+        .get(currentState.registers().instructionPointer());
+    currentState = currentState.copy()
+        .withRegisters(currentState.registers().copy().withInstruction(currentInstruction));
+
+    // decode like the original MiMa did, without the dispatch table the engine uses
+    int opcode = MemoryFormat.extractOpcode(currentInstruction);
+    int argument = MemoryFormat.extractArgument(currentInstruction);
+    Optional<Instruction> instruction = instructionSet.forOpcode(opcode);
+
+    if (!instruction.isPresent()) {
+      opcode = MemoryFormat.extractLargeOpcode(currentInstruction);
+      argument = MemoryFormat.extractArgumentLargeOpcode(currentInstruction);
+      instruction = instructionSet.forOpcode(opcode);
+    }
+    if (!instruction.isPresent()) {
+      throw new InstructionNotFoundException(currentInstruction);
+    }
+
+    currentState = currentState.copy()
+        .withRegisters(
+            currentState.registers().copy()
+                .withInstructionPointer(currentState.registers().instructionPointer() + 1)
+                .withAluInputLeft(0)
+                .withAluInputRight(0)
+        );
+
+    currentState = instruction.get().apply(currentState, argument);
+
+    return currentState;
+  }
+
+  State getCurrentState() {
+    return currentState;
+  }
+}
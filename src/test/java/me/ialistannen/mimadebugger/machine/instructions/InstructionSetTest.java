@@ -100,4 +100,88 @@ class InstructionSetTest {
     assertThat(instructionSet.forEncodedValue(0xFF0000)).isEqualTo(Optional.empty());
   }
 
+  @Test
+  void testDispatchTableDecodesAllInstructions() {
+    DispatchTable dispatchTable = instructionSet.getDispatchTable();
+
+    for (Instruction instruction : instructionSet.getAll()) {
+      ImmutableInstructionCall call = ImmutableInstructionCall.builder()
+          .command(instruction)
+          .argument(20)
+          .build();
+      int encoded = MemoryFormat.combineInstruction(call);
+
+      assertThat(dispatchTable.opcode(encoded)).isEqualTo(instruction.opcode());
+      assertThat(dispatchTable.instruction(encoded)).isSameAs(instruction);
+      assertThat(dispatchTable.argument(encoded)).isEqualTo(20);
+    }
+  }
+
+  @Test
+  void testDispatchTableReplicatesSmallOpcodes() {
+    DispatchTable dispatchTable = instructionSet.getDispatchTable();
+
+    for (int lowerBits = 0; lowerBits < 16; lowerBits++) {
+      // sign extended, like a value read from memory
+      int encoded = MemoryFormat.coerceToValue(0xB00000 | lowerBits << 16 | 0xffff);
+
+      assertThat(dispatchTable.opcode(encoded)).isEqualTo(0xB);
+      assertThat(dispatchTable.argument(encoded)).isEqualTo(lowerBits << 16 | 0xffff);
+    }
+  }
+
+  @Test
+  void testDispatchTableUnknownInstruction() {
+    DispatchTable dispatchTable = instructionSet.getDispatchTable();
+
+    assertThat(dispatchTable.opcode(0xFF0000)).isEqualTo(DispatchTable.NO_INSTRUCTION);
+    assertThat(dispatchTable.instruction(0xFF0000)).isNull();
+    assertThat(dispatchTable.opcode(0xE12345)).isEqualTo(DispatchTable.NO_INSTRUCTION);
+  }
+
+  @Test
+  void testDispatchTableIsFrozen() {
+    DispatchTable before = instructionSet.getDispatchTable();
+    instructionSet.registerInstruction(
+        ImmutableInstruction.copyOf(Load.LOAD_CONSTANT)
+            .withName("NEW")
+            .withOpcode(0xFF)
+    );
+
+    assertThat(before.opcode(0xFF0000)).isEqualTo(DispatchTable.NO_INSTRUCTION);
+    assertThat(instructionSet.getDispatchTable().opcode(0xFF0000)).isEqualTo(0xFF);
+    assertThat(instructionSet.forEncodedValue(0xFF0012).map(InstructionCall::argument))
+        .contains(0x12);
+  }
+
+  @Test
+  void testIsDefaultInstructionComparesIdentity() {
+    assertThat(InstructionSet.isDefaultInstruction(Load.LOAD_CONSTANT)).isTrue();
+    Instruction equalCopy = ImmutableInstruction.builder()
+        .from(Load.LOAD_CONSTANT)
+        .build();
+
+    assertThat(equalCopy).isEqualTo(Load.LOAD_CONSTANT);
+    assertThat(InstructionSet.isDefaultInstruction(equalCopy)).isFalse();
+  }
+
+  @Test
+  void testIsSideEffectFree() {
+    assertThat(instructionSet.isSideEffectFree()).isTrue();
+
+    Instruction pure = ImmutableInstruction.copyOf(Load.LOAD_CONSTANT)
+        .withName("PURE")
+        .withOpcode(0xFE)
+        .withSideEffectFree(true);
+    instructionSet.registerInstruction(pure);
+    assertThat(instructionSet.isSideEffectFree()).isTrue();
+
+    Instruction device = ImmutableInstruction.copyOf(Load.LOAD_CONSTANT)
+        .withName("DEVICE")
+        .withOpcode(0xFF);
+    instructionSet.registerInstruction(device);
+    assertThat(InstructionSet.isSideEffectFree(device)).isFalse();
+    assertThat(instructionSet.isSideEffectFree()).isFalse();
+  }
+
 }
@@ -0,0 +1,83 @@
+package me.ialistannen.mimadebugger.machine.instructions;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import me.ialistannen.mimadebugger.exceptions.MemoryNotInitializedException;
+import me.ialistannen.mimadebugger.exceptions.MiMaException;
+import me.ialistannen.mimadebugger.machine.ImmutableState;
+import me.ialistannen.mimadebugger.machine.State;
+import me.ialistannen.mimadebugger.machine.instructions.defaultinstructions.Load;
+import me.ialistannen.mimadebugger.machine.memory.ImmutableRegisters;
+import me.ialistannen.mimadebugger.machine.memory.MainMemory;
+import org.junit.jupiter.api.Test;
+
+class InstructionTest {
+
+  @Test
+  void machineActionIsAppliedToState() throws MiMaException {
+    State state = state(7, MainMemory.create().set(3, 42));
+
+    State result = Load.LOAD_FROM_ADDRESS.apply(state, 3);
+
+    assertThat(result.registers().accumulator()).isEqualTo(42);
+    assertThat(result.registers().instructionPointer()).isEqualTo(7);
+    assertThat(result.memory()).isSameAs(state.memory());
+  }
+
+  @Test
+  void machineActionErrorsArePropagated() {
+    State state = state(7, MainMemory.create());
+
+    assertThatThrownBy(() -> Load.LOAD_FROM_ADDRESS.apply(state, 3))
+        .isInstanceOf(MemoryNotInitializedException.class);
+  }
+
+  @Test
+  void stateActionIsExecutedOnContext() throws MiMaException {
+    Instruction instruction = ImmutableInstruction.builder()
+        .opcode(0xFE)
+        .name("INC")
+        .hasArgument(false)
+        .action((state, ignored) -> state.copy().withRegisters(
+            state.registers().copy().withAccumulator(state.registers().accumulator() + 1)
+        ))
+        .build();
+    StateContext context = new StateContext(state(7, MainMemory.create()));
+    context.setAccumulator(41);
+
+    instruction.execute(context, 0);
+
+    assertThat(context.getAccumulator()).isEqualTo(42);
+    assertThat(context.getInstructionPointer()).isEqualTo(7);
+  }
+
+  @Test
+  void needsExactlyOneAction() {
+    assertThatThrownBy(
+        () -> ImmutableInstruction.builder()
+            .opcode(0xFE)
+            .name("NONE")
+            .build()
+    )
+        .isInstanceOf(IllegalStateException.class);
+
+    assertThatThrownBy(
+        () -> ImmutableInstruction.builder()
+            .opcode(0xFE)
+            .name("BOTH")
+            .action((state, ignored) -> state)
+            .machineAction((context, ignored) -> {
+            })
+            .build()
+    )
+        .isInstanceOf(IllegalStateException.class);
+  }
+
+  private static State state(int instructionPointer, MainMemory memory) {
+    return ImmutableState.builder()
+        .registers(ImmutableRegisters.builder().instructionPointer(instructionPointer).build())
+        .memory(memory)
+        .build();
+  }
+}
@@ -3,7 +3,10 @@ package me.ialistannen.mimadebugger.machine.memory;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ThreadLocalRandom;
 import me.ialistannen.mimadebugger.exceptions.MemoryNotInitializedException;
@@ -14,6 +17,8 @@ import org.junit.jupiter.api.Test;
 
 class MainMemoryTest {
 
+  private static final int VALUE_OVERFLOW = 0x1234567;
+
   private MainMemory memory;
 
   @BeforeEach
@@ -97,6 +102,56 @@ class MainMemoryTest {
         .isEqualTo(map);
   }
 
+  @Test
+  void testInitializedCount() throws NumberOverflowException {
+    MainMemory result = memory.set(2, 20).set(5, 30).set(2, 21);
+
+    assertThat(result.getInitializedCount()).isEqualTo(2);
+    assertThat(result.isInitialized(5)).isTrue();
+    assertThat(result.isInitialized(4)).isFalse();
+    assertThat(result.isInitialized(-1)).isFalse();
+  }
+
+  @Test
+  void testForEachInitializedRange() throws NumberOverflowException {
+    MainMemory result = memory.set(14, 0).set(15, 0).set(16, 0).set(17, 0)
+        .set(20, 0)
+        .set(0xFFFFF, 0);
+    List<String> ranges = new ArrayList<>();
+
+    result.forEachInitializedRange((start, end) -> ranges.add(start + "-" + end));
+
+    assertThat(ranges).containsExactly("14-18", "20-21", "1048575-1048576");
+  }
+
+  @Test
+  void testBuilder() throws NumberOverflowException {
+    MainMemory original = memory.set(1, 1);
+    MainMemory built = original.toBuilder()
+        .set(1, 2)
+        .set(3, VALUE_OVERFLOW)
+        .build();
+
+    assertThat(built).isEqualTo(original.set(1, 2).set(3, VALUE_OVERFLOW));
+    assertThat(original).isEqualTo(MainMemory.create().set(1, 1));
+    assertThrows(
+        NumberOverflowException.class,
+        () -> MainMemory.builder().set(-1, 0)
+    );
+  }
+
+  @Test
+  void testCopyRange() throws NumberOverflowException {
+    MainMemory result = memory.set(3, 30).set(5, 50).set(6, 60);
+    int[] target = {-1, -1, -1, -1};
+
+    result.copyRange(3, 6, target);
+
+    assertThat(target).containsExactly(30, 0, 50, -1);
+    assertThat(result.highestInitializedAddress()).isEqualTo(6);
+    assertThrows(IllegalArgumentException.class, () -> result.copyRange(6, 3, target));
+  }
+
   @Test
   void testHashcodeSimple() throws NumberOverflowException {
     MainMemory first = MainMemory.create()
@@ -108,6 +163,32 @@ class MainMemoryTest {
         .isEqualTo(second.hashCode());
   }
 
+  @Test
+  void testPackedImageDecodesAndHashesLazily()
+      throws NumberOverflowException, MemoryNotInitializedException {
+    int count = 3 * MemoryImage.PAGE_SIZE + 5;
+    ByteBuffer words = ByteBuffer.allocate(count * 3);
+    MainMemory.Builder expected = MainMemory.builder();
+    for (int address = 0; address < count; address++) {
+      int value = address * 31 - 1000;
+      words.put((byte) (value >> 16)).put((byte) (value >> 8)).put((byte) value);
+      expected.set(address, value);
+    }
+    MainMemory packed = MainMemory.fromImage(MemoryImage.ofPacked(words, 0, count));
+
+    // a page is decoded from the words on its first access, and only then
+    words.put(3, (byte) 0).put(4, (byte) 0).put(5, (byte) 7);
+    assertThat(packed.get(1)).isEqualTo(7);
+    words.put(5, (byte) 8);
+    assertThat(packed.get(1)).isEqualTo(7);
+    MainMemory fixed = expected.build().set(1, 7);
+
+    assertThat(packed.hashCode()).isEqualTo(fixed.hashCode());
+    assertThat(packed.hashCode()).isEqualTo(fixed.hashCode());
+    assertThat(packed.isTrieBuilt()).isFalse();
+    assertThat(packed).isEqualTo(fixed);
+  }
+
   @Test
   void testEqualsNull() {
     assertThat(memory).isNotNull();
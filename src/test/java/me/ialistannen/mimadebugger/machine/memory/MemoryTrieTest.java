@@ -0,0 +1,222 @@
+package me.ialistannen.mimadebugger.machine.memory;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import me.ialistannen.mimadebugger.util.MemoryFormat;
+import org.junit.jupiter.api.Test;
+
+class MemoryTrieTest {
+
+  private static final int MEMORY_SIZE = 1 << MemoryFormat.ADDRESS_LENGTH;
+
+  @Test
+  void behavesLikeSortedMap() {
+    Random random = new Random(42);
+    MemoryTrie trie = MemoryTrie.EMPTY;
+    TreeMap<Integer, Integer> expected = new TreeMap<>();
+
+    for (int i = 0; i < 5_000; i++) {
+      // cluster some addresses, so leaves are filled and overwritten
+      int address = random.nextBoolean()
+          ? random.nextInt(MEMORY_SIZE)
+          : random.nextInt(64);
+      int value = random.nextInt();
+
+      trie = trie.put(address, value);
+      expected.put(address, value);
+    }
+
+    assertThat(trie.size()).isEqualTo(expected.size());
+    assertThat(trie.asMap()).isEqualTo(expected);
+    assertThat(new ArrayList<>(trie.asMap().keySet()))
+        .containsExactlyElementsOf(expected.keySet());
+
+    for (int i = 0; i < 1_000; i++) {
+      int address = random.nextInt(MEMORY_SIZE);
+      Integer ceiling = expected.ceilingKey(address);
+
+      assertThat(trie.containsKey(address)).isEqualTo(expected.containsKey(address));
+      assertThat(trie.ceilingAddress(address)).isEqualTo(ceiling == null ? -1 : ceiling);
+    }
+  }
+
+  @Test
+  void forEachIsOrdered() {
+    MemoryTrie trie = MemoryTrie.EMPTY
+        .put(MEMORY_SIZE - 1, 3)
+        .put(17, 2)
+        .put(0, 1);
+    List<Integer> addresses = new ArrayList<>();
+    List<Integer> values = new ArrayList<>();
+
+    trie.forEach((address, value) -> {
+      addresses.add(address);
+      values.add(value);
+    });
+
+    assertThat(addresses).containsExactly(0, 17, MEMORY_SIZE - 1);
+    assertThat(values).containsExactly(1, 2, 3);
+  }
+
+  @Test
+  void putDoesNotModifyOriginal() {
+    MemoryTrie original = MemoryTrie.EMPTY.put(5, 1);
+    MemoryTrie modified = original.put(5, 2).put(6, 3);
+
+    assertThat(original.asMap()).containsExactly(Map.entry(5, 1));
+    assertThat(modified.asMap()).containsExactly(Map.entry(5, 2), Map.entry(6, 3));
+  }
+
+  @Test
+  void putOfSameValueReturnsSameTrie() {
+    MemoryTrie trie = MemoryTrie.EMPTY.put(5, 1);
+
+    assertThat(trie.put(5, 1)).isSameAs(trie);
+  }
+
+  @Test
+  void equalsIgnoresStructure() {
+    MemoryTrie first = MemoryTrie.EMPTY.put(1, 1).put(2, 2);
+    MemoryTrie second = MemoryTrie.EMPTY.put(2, 2).put(1, 1);
+    Map<Integer, Integer> map = new HashMap<>();
+    map.put(1, 1);
+    map.put(2, 2);
+
+    assertThat(first).isEqualTo(second);
+    assertThat(first.hashCode()).isEqualTo(second.hashCode());
+    assertThat(first).isNotEqualTo(second.put(2, 3));
+    assertThat(map).isEqualTo(first.asMap());
+    assertThat(first.asMap().get(-1)).isNull();
+  }
+
+  @Test
+  void builderBehavesLikePut() {
+    Random random = new Random(7);
+    MemoryTrie base = MemoryTrie.EMPTY;
+    for (int i = 0; i < 500; i++) {
+      base = base.put(random.nextInt(256), random.nextInt());
+    }
+    Map<Integer, Integer> baseContents = new TreeMap<>(base.asMap());
+
+    MemoryTrie expected = base;
+    MemoryTrie.Builder builder = base.toBuilder();
+    for (int i = 0; i < 2_000; i++) {
+      int address = random.nextBoolean() ? random.nextInt(MEMORY_SIZE) : random.nextInt(512);
+      int value = random.nextInt();
+
+      expected = expected.put(address, value);
+      builder.put(address, value);
+    }
+    MemoryTrie built = builder.build();
+
+    assertThat(built).isEqualTo(expected);
+    assertThat(built.size()).isEqualTo(expected.size());
+    assertThat(base.asMap()).isEqualTo(baseContents);
+  }
+
+  @Test
+  void builderCanOnlyBeBuiltOnce() {
+    MemoryTrie.Builder builder = MemoryTrie.EMPTY.toBuilder();
+    builder.put(1, 1);
+    builder.build();
+
+    assertThatThrownBy(() -> builder.put(2, 2))
+        .isInstanceOf(IllegalStateException.class);
+  }
+
+  @Test
+  void emptyBuilderReturnsBase() {
+    MemoryTrie base = MemoryTrie.EMPTY.put(1, 1);
+
+    assertThat(base.toBuilder().build()).isSameAs(base);
+  }
+
+  @Test
+  void forEachInRangeBehavesLikeSubMap() {
+    Random random = new Random(3);
+    MemoryTrie trie = MemoryTrie.EMPTY;
+    TreeMap<Integer, Integer> expected = new TreeMap<>();
+
+    for (int i = 0; i < 2_000; i++) {
+      int address = random.nextInt(MEMORY_SIZE);
+      trie = trie.put(address, i);
+      expected.put(address, i);
+    }
+
+    for (int i = 0; i < 200; i++) {
+      int from = random.nextInt(MEMORY_SIZE);
+      int to = from + random.nextInt(Math.min(MEMORY_SIZE - from, 1 << 17) + 1);
+      Map<Integer, Integer> actual = new TreeMap<>();
+
+      trie.forEachInRange(from, to, actual::put);
+
+      assertThat(actual).isEqualTo(expected.subMap(from, to));
+    }
+    assertThat(trie.highestAddress()).isEqualTo(expected.lastKey());
+  }
+
+  @Test
+  void highestAddressOfEmptyTrie() {
+    assertThat(MemoryTrie.EMPTY.highestAddress()).isEqualTo(-1);
+    assertThat(MemoryTrie.EMPTY.put(0, 1).highestAddress()).isEqualTo(0);
+  }
+
+  @Test
+  void hashDependsOnlyOnContents() {
+    MemoryTrie first = MemoryTrie.EMPTY.put(1, 1).put(70_000, 2);
+    MemoryTrie.Builder builder = MemoryTrie.EMPTY.toBuilder();
+    builder.put(70_000, 5);
+    builder.put(1, 1);
+    builder.put(70_000, 2);
+    MemoryTrie second = builder.build();
+
+    assertThat(second.hashCode()).isEqualTo(first.hashCode());
+    assertThat(second).isEqualTo(first);
+    // overwriting and restoring a value yields the original hash
+    assertThat(first.put(1, 9).put(1, 1).hashCode()).isEqualTo(first.hashCode());
+    // swapping values between addresses changes the hash
+    assertThat(MemoryTrie.EMPTY.put(1, 2).put(2, 1).hashCode())
+        .isNotEqualTo(MemoryTrie.EMPTY.put(1, 1).put(2, 2).hashCode());
+  }
+
+  @Test
+  void equalsComparesSharedTries() {
+    MemoryTrie base = MemoryTrie.EMPTY.put(1, 1).put(100, 2).put(200_000, 3);
+
+    assertThat(base.put(100, 5)).isNotEqualTo(base.put(100, 6));
+    assertThat(base.put(100, 5)).isEqualTo(base.put(100, 5));
+  }
+
+  @Test
+  void removeBehavesLikeMapRemove() {
+    Random random = new Random(11);
+    MemoryTrie trie = MemoryTrie.EMPTY;
+    TreeMap<Integer, Integer> expected = new TreeMap<>();
+    for (int i = 0; i < 1_000; i++) {
+      int address = random.nextInt(4_096);
+      trie = trie.put(address, i);
+      expected.put(address, i);
+    }
+    MemoryTrie full = trie;
+
+    for (int address : new ArrayList<>(expected.keySet())) {
+      trie = trie.remove(address);
+      expected.remove(address);
+
+      assertThat(trie.size()).isEqualTo(expected.size());
+    }
+
+    assertThat(trie).isEqualTo(MemoryTrie.EMPTY);
+    assertThat(trie.hashCode()).isEqualTo(MemoryTrie.EMPTY.hashCode());
+    assertThat(full.remove(5_000)).isSameAs(full);
+    assertThat(full.put(5_000, 1).remove(5_000)).isEqualTo(full);
+    assertThat(full.put(5_000, 1).remove(5_000).highestAddress()).isEqualTo(full.highestAddress());
+  }
+}
@@ -0,0 +1,78 @@
+package me.ialistannen.mimadebugger.machine.memory;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.ArrayList;
+import java.util.List;
+import me.ialistannen.mimadebugger.exceptions.MemoryNotInitializedException;
+import me.ialistannen.mimadebugger.exceptions.MiMaException;
+import me.ialistannen.mimadebugger.exceptions.NumberOverflowException;
+import org.junit.jupiter.api.Test;
+
+class PackedMemoryTest {
+
+  @Test
+  void roundTripsMainMemory() throws MiMaException {
+    MainMemory memory = MainMemory.create()
+        .set(0, 20)
+        .set(5, -1)
+        .set(1023, 0x7FFFFF)
+        .set(0xFFFFF, -0x800000);
+
+    PackedMemory packedMemory = PackedMemory.of(memory);
+
+    assertThat(packedMemory.getInitializedCount()).isEqualTo(4);
+    assertThat(packedMemory.get(5)).isEqualTo(-1);
+    assertThat(packedMemory.get(0xFFFFF)).isEqualTo(-0x800000);
+    assertThat(packedMemory.toMainMemory()).isEqualTo(memory);
+  }
+
+  @Test
+  void coercesValuesLikeMainMemory() throws MiMaException {
+    PackedMemory packedMemory = new PackedMemory();
+    packedMemory.set(1, 0x800000);
+    packedMemory.set(2, 0x12345678);
+
+    assertThat(packedMemory.get(1))
+        .isEqualTo(MainMemory.create().set(1, 0x800000).get(1));
+    assertThat(packedMemory.get(2))
+        .isEqualTo(MainMemory.create().set(2, 0x12345678).get(2));
+  }
+
+  @Test
+  void overwritingDoesNotChangeCount() throws NumberOverflowException {
+    PackedMemory packedMemory = new PackedMemory();
+    packedMemory.set(64, 1);
+    packedMemory.set(64, 2);
+
+    assertThat(packedMemory.getInitializedCount()).isEqualTo(1);
+  }
+
+  @Test
+  void rejectsUninitializedAndInvalidAddresses() throws NumberOverflowException {
+    PackedMemory packedMemory = new PackedMemory();
+    packedMemory.set(3, 3);
+
+    assertThat(packedMemory.isInitialized(2)).isFalse();
+    assertThatThrownBy(() -> packedMemory.get(2))
+        .isInstanceOf(MemoryNotInitializedException.class);
+    assertThatThrownBy(() -> packedMemory.get(-1))
+        .isInstanceOf(NumberOverflowException.class);
+    assertThatThrownBy(() -> packedMemory.set(1 << 20, 0))
+        .isInstanceOf(NumberOverflowException.class);
+  }
+
+  @Test
+  void iteratesInAddressOrder() throws NumberOverflowException {
+    PackedMemory packedMemory = new PackedMemory();
+    packedMemory.set(200_000, 3);
+    packedMemory.set(63, 2);
+    packedMemory.set(0, 1);
+
+    List<Integer> addresses = new ArrayList<>();
+    packedMemory.forEach((address, value) -> addresses.add(address));
+
+    assertThat(addresses).containsExactly(0, 63, 200_000);
+  }
+}
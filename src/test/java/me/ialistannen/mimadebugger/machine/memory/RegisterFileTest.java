@@ -0,0 +1,42 @@
+package me.ialistannen.mimadebugger.machine.memory;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import me.ialistannen.mimadebugger.machine.MiMaRegister;
+import org.junit.jupiter.api.Test;
+
+class RegisterFileTest {
+
+  @Test
+  void roundTripsRegisters() {
+    Registers registers = ImmutableRegisters.builder()
+        .accumulator(1)
+        .aluInputLeft(2)
+        .aluInputRight(3)
+        .instruction(4)
+        .instructionPointer(5)
+        .returnAddress(6)
+        .stackPointer(7)
+        .framePointer(8)
+        .build();
+
+    assertThat(new RegisterFile(registers).toRegisters()).isEqualTo(registers);
+  }
+
+  @Test
+  void setsRegistersByName() {
+    RegisterFile registerFile = new RegisterFile();
+    Registers registers = ImmutableRegisters.builder().build();
+
+    int value = 1;
+    for (MiMaRegister register : MiMaRegister.values()) {
+      registerFile.set(register, value);
+      registers = register.set(registers, value);
+
+      assertThat(registerFile.get(register)).isEqualTo(value);
+      value++;
+    }
+
+    assertThat(registerFile.toRegisters()).isEqualTo(registers);
+  }
+}